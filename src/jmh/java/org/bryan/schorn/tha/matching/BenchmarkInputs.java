@@ -0,0 +1,112 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.product.ProductFeed;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.bryan.schorn.tha.matching.util.CommandLineArgs;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Loads the same inputs (application.properties, symbols.csv, orders.csv)
+ * that MEService uses so the benchmarks run against the real data set.
+ *
+ * The input files are resolved against the 'resources.dir' system property
+ * (default: src/main/resources) so the benchmarks can be launched from the
+ * project directory.
+ */
+public class BenchmarkInputs {
+
+    static public final String RESOURCES_DIR = System.getProperty("resources.dir", "src/main/resources");
+
+    /**
+     * Application properties with the input files resolved against RESOURCES_DIR
+     *
+     * @return
+     */
+    static public Properties properties() {
+        Properties properties = CommandLineArgs.create(
+                new String[] { "--properties-file", "/application.properties" }).getProperties();
+        for (String key : new String[] { "ProductFile", "OrderFile" }) {
+            properties.setProperty(key, Paths.get(RESOURCES_DIR, properties.getProperty(key)).toString());
+        }
+        return properties;
+    }
+
+    /**
+     * Loads the products into Products
+     *
+     * @param properties
+     * @throws Exception
+     */
+    static public void loadProducts(Properties properties) throws Exception {
+        ProductFeed productFeed = ProductFeed.create(properties);
+        productFeed.connect();
+        Products.setFeed(productFeed);
+    }
+
+    /**
+     * Reads and parses the complete order file (the feed runs in its own
+     * thread since its channel to the reader is bounded)
+     *
+     * @param properties
+     * @return
+     * @throws Exception
+     */
+    static public List<Order> loadOrders(Properties properties) throws Exception {
+        OrderFeed orderFeed = OrderFeed.create(properties);
+        orderFeed.connect();
+        List<Order> orders = new ArrayList<>();
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> records = executorService.submit(orderFeed);
+            while (!records.isDone()) {
+                drain(orderFeed, orders);
+            }
+            records.get();
+            drain(orderFeed, orders);
+        } finally {
+            executorService.shutdown();
+        }
+        return orders;
+    }
+
+    static private void drain(OrderFeed orderFeed, List<Order> orders) {
+        for (Order order = orderFeed.get(); order != null; order = orderFeed.get()) {
+            orders.add(order);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.BenchmarkInputs;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.util.AsciiBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Encoder Benchmark
+ *
+ * Trade and Reject records built with the Encoder (into a reusable
+ * AsciiBuffer) against toString() turned into bytes, which is what the
+ * ActivityLog did before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class EncoderBenchmark {
+
+    private Trade[] trades;
+    private Order.Reject[] rejects;
+    private Encoder<Trade> tradeEncoder;
+    private Encoder<Order.Reject> rejectEncoder;
+    private final AsciiBuffer buffer = new AsciiBuffer(256);
+    private int index = 0;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        Properties properties = BenchmarkInputs.properties();
+        BenchmarkInputs.loadProducts(properties);
+        List<Order> orders = BenchmarkInputs.loadOrders(properties);
+        this.trades = new Trade[orders.size()];
+        this.rejects = new Order.Reject[orders.size()];
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            this.trades[i] = Trade.create(order.symbol(), 1, order.price(), order.timestamp());
+            this.rejects[i] = Order.reject(order, "no-match");
+        }
+        this.tradeEncoder = Encoder.create(Trade.class, properties.getProperty("TradeFileHeader"));
+        this.rejectEncoder = Encoder.create(Order.Reject.class, properties.getProperty("RejectedFileHeader"));
+    }
+
+    private int next() {
+        if (++this.index == this.trades.length) {
+            this.index = 0;
+        }
+        return this.index;
+    }
+
+    @Benchmark
+    public int encodeTrade() {
+        this.buffer.clear();
+        this.tradeEncoder.encode(this.trades[next()], this.buffer);
+        return this.buffer.length();
+    }
+
+    @Benchmark
+    public int toStringTrade() {
+        return this.trades[next()].toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Benchmark
+    public int encodeReject() {
+        this.buffer.clear();
+        this.rejectEncoder.encode(this.rejects[next()], this.buffer);
+        return this.buffer.length();
+    }
+
+    @Benchmark
+    public int toStringReject() {
+        return this.rejects[next()].toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.BenchmarkInputs;
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.OrderThrottleRule;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.order.Orders;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Engine Benchmark
+ *
+ * End-to-end Engine.call() over inputs/orders.csv (pre-parsed once per
+ * trial so the file parsing is not measured). Each invocation replays the
+ * whole file through a new Engine with the same rules as MEService.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class EngineBenchmark {
+
+    @Param({"TreeOrderBook", "LadderOrderBook"})
+    String bookType;
+
+    private Properties properties;
+    private List<Order> orders;
+    private Engine engine;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        this.properties = BenchmarkInputs.properties();
+        this.properties.setProperty(OrderBook.class.getSimpleName(),
+                OrderBook.class.getPackageName() + "." + this.bookType);
+        BenchmarkInputs.loadProducts(this.properties);
+        this.orders = BenchmarkInputs.loadOrders(this.properties);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws Exception {
+        this.engine = new Engine(Products.findAll(), this.properties);
+        this.engine.addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
+        this.engine.addRule(ProductHalted.PRODUCTED_HALTED);
+        // the throttle rule keeps state so every replay needs a fresh one
+        this.engine.addRule(new OrderThrottleRule(3, 1000));
+        Orders.setFeed(new ReplayFeed(this.orders, this.engine));
+    }
+
+    @Benchmark
+    public Integer call() {
+        return this.engine.call();
+    }
+
+    /**
+     * Replays pre-parsed orders and stops the Engine once they run out.
+     */
+    static class ReplayFeed implements OrderFeed {
+        private final List<Order> orders;
+        private final Engine engine;
+        private int index = 0;
+        ReplayFeed(List<Order> orders, Engine engine) {
+            this.orders = orders;
+            this.engine = engine;
+        }
+        @Override
+        public Order get() {
+            if (this.index < this.orders.size()) {
+                return this.orders.get(this.index++);
+            }
+            this.engine.stop();
+            return null;
+        }
+        @Override
+        public void connect() {
+        }
+        @Override
+        public Integer call() {
+            return this.orders.size();
+        }
+    }
+}
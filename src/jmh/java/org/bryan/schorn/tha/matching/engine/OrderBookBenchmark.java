@@ -0,0 +1,146 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * OrderBook Benchmarks
+ *
+ * The book is pre-filled with 'depth' sell price levels (one order each)
+ * starting at BEST_OFFER and one tick apart.
+ *
+ * accept       - rest one order (prices cycle through the 'depth' levels).
+ *                The book is recycled every RECYCLE_EVERY accepts so it does
+ *                not grow for the length of the iteration.
+ * takeShallow  - take 1 from the best level (then put the order back).
+ * takeDeep     - sweep all 'depth' levels with a market take (then put the
+ *                orders back).
+ *
+ * The take benchmarks have to restore the book to keep it in the same state
+ * for every invocation, so they include the cost of re-accepting the taken
+ * orders; subtract the accept score to isolate take.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class OrderBookBenchmark {
+
+    // 100.01 and 0.01 in ticks of the default price scale
+    static private final long BEST_OFFER = 10001L;
+    static private final long TICK = 1L;
+    static private final int RECYCLE_EVERY = 1 << 14;
+
+    @Param({"1", "10", "100"})
+    int depth;
+
+    @Param({"TreeOrderBook", "LadderOrderBook"})
+    String bookType;
+
+    private OrderBook orderBook;
+    private Order[] restingOrders;
+    private Order[] acceptOrders;
+    private final List<Order> retaken = new ArrayList<>();
+    private int acceptIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        Product product = Product.create("BENCH");
+        product.setHalted(false);
+        Properties properties = new Properties();
+        properties.setProperty(OrderBook.class.getSimpleName(),
+                OrderBook.class.getPackageName() + "." + this.bookType);
+        this.orderBook = OrderBook.create(product, properties);
+        Instant timestamp = Instant.ofEpochSecond(1608917400);
+        this.restingOrders = new Order[this.depth];
+        for (int i = 0; i < this.depth; i++) {
+            this.restingOrders[i] = Order.create(timestamp, product.symbol(),
+                    Side.SELL, OrderType.LIMIT, BEST_OFFER + i * TICK, product.priceScale(), 1);
+        }
+        this.acceptOrders = new Order[RECYCLE_EVERY];
+        for (int i = 0; i < RECYCLE_EVERY; i++) {
+            this.acceptOrders[i] = Order.create(timestamp.plusNanos(i), product.symbol(),
+                    Side.SELL, OrderType.LIMIT, BEST_OFFER + (i % this.depth) * TICK, product.priceScale(), 1);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        this.orderBook.recycle();
+        for (Order order : this.restingOrders) {
+            this.orderBook.accept(order);
+        }
+        this.acceptIndex = 0;
+    }
+
+    @Benchmark
+    public void accept() {
+        this.orderBook.accept(this.acceptOrders[this.acceptIndex]);
+        if (++this.acceptIndex == RECYCLE_EVERY) {
+            this.acceptIndex = 0;
+            setupIteration();
+        }
+    }
+
+    @Benchmark
+    public void takeShallow(Blackhole blackhole) {
+        blackhole.consume(restore(this.orderBook.take(Side.SELL, 1, BEST_OFFER)));
+    }
+
+    @Benchmark
+    public void takeDeep(Blackhole blackhole) {
+        blackhole.consume(restore(this.orderBook.take(Side.SELL, this.depth, 0)));
+    }
+
+    /**
+     * Puts the taken orders back so the next invocation sees the same book.
+     */
+    private int restore(List<OrderBook.Fill> taken) {
+        this.retaken.clear();
+        for (int i = 0; i < taken.size(); i++) {
+            this.retaken.add(taken.get(i).order());
+        }
+        for (Order order : this.retaken) {
+            this.orderBook.accept(order);
+        }
+        return this.retaken.size();
+    }
+}
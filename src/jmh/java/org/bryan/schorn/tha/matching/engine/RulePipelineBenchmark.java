@@ -0,0 +1,124 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.BenchmarkInputs;
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.OrderThrottleRule;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * RulePipeline Benchmark
+ *
+ * The orders of inputs/orders.csv through the built-in rules as the
+ * RulePipeline calls them (a switch on the rule's kind) against the same
+ * rules behind a wrapper, which the pipeline has to call through the
+ * Engine.Rule interface (one call site for all three classes). The pipeline
+ * is replaced every time the orders wrap around so the throttle never sees
+ * time going backwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class RulePipelineBenchmark {
+
+    @Param({"kinds", "interface"})
+    String calls;
+
+    private RulePipeline pipeline;
+    private Order[] orders;
+    private int index = 0;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        Properties properties = BenchmarkInputs.properties();
+        BenchmarkInputs.loadProducts(properties);
+        this.orders = BenchmarkInputs.loadOrders(properties).toArray(new Order[0]);
+        this.pipeline = newPipeline();
+    }
+
+    @Benchmark
+    public Engine.Rule check() {
+        Engine.Rule rule = this.pipeline.check(this.orders[this.index]);
+        if (++this.index == this.orders.length) {
+            this.index = 0;
+            this.pipeline = newPipeline();
+        }
+        return rule;
+    }
+
+    private RulePipeline newPipeline() {
+        Engine.Rule[] rules = {
+                CheckRequiredFields.CHECK_REQUIRED_FIELDS,
+                ProductHalted.PRODUCTED_HALTED,
+                new OrderThrottleRule(3, 1000)
+        };
+        RulePipeline pipeline = new RulePipeline();
+        for (Engine.Rule rule : rules) {
+            pipeline.add(this.calls.equals("interface") ? new Wrapper(rule) : rule);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Hides the rule's class from the pipeline
+     */
+    static private final class Wrapper implements Engine.Rule {
+        private final Engine.Rule rule;
+        Wrapper(Engine.Rule rule) {
+            this.rule = rule;
+        }
+        @Override
+        public boolean test(Order order) {
+            return this.rule.test(order);
+        }
+        @Override
+        public boolean test(Order order, Product product) {
+            return this.rule.test(order, product);
+        }
+        @Override
+        public String getReason(Order order) {
+            return this.rule.getReason(order);
+        }
+        @Override
+        public String ruleDescription() {
+            return this.rule.ruleDescription();
+        }
+        @Override
+        public boolean isStateless() {
+            return this.rule.isStateless();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine.rule;
+
+import org.bryan.schorn.tha.matching.BenchmarkInputs;
+import org.bryan.schorn.tha.matching.engine.Engine;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Engine.Rule Benchmark
+ *
+ * Each rule on its own, tested against the orders of inputs/orders.csv in
+ * file order. A stateful rule (OrderThrottleRule) is replaced every time the
+ * orders wrap around so it never sees time going backwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class RuleBenchmark {
+
+    @Param({"CheckRequiredFields", "ProductHalted", "OrderThrottleRule"})
+    String ruleName;
+
+    private Engine.Rule rule;
+    private Order[] orders;
+    private int index = 0;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        Properties properties = BenchmarkInputs.properties();
+        BenchmarkInputs.loadProducts(properties);
+        this.orders = BenchmarkInputs.loadOrders(properties).toArray(new Order[0]);
+        this.rule = newRule();
+    }
+
+    @Benchmark
+    public boolean test() {
+        boolean passed = this.rule.test(this.orders[this.index]);
+        if (++this.index == this.orders.length) {
+            this.index = 0;
+            this.rule = newRule();
+        }
+        return passed;
+    }
+
+    private Engine.Rule newRule() {
+        switch (this.ruleName) {
+            case "CheckRequiredFields":
+                return CheckRequiredFields.CHECK_REQUIRED_FIELDS;
+            case "ProductHalted":
+                return ProductHalted.PRODUCTED_HALTED;
+            case "OrderThrottleRule":
+                return new OrderThrottleRule(3, 1000);
+        }
+        throw new IllegalArgumentException(String.format("There is no rule: %s", this.ruleName));
+    }
+}
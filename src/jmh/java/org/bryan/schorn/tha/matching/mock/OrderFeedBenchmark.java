@@ -0,0 +1,75 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.mock;
+
+import org.bryan.schorn.tha.matching.BenchmarkInputs;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * OrderFeed Benchmark
+ *
+ * Reads and parses the whole of inputs/orders.csv with each OrderFeed
+ * implementation. The ring is sized to hold the whole file so the feed can
+ * run on the benchmark thread and be drained afterwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class OrderFeedBenchmark {
+
+    @Param({"MockOrderFeed", "MappedOrderFeed"})
+    String feedType;
+
+    private Properties properties;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        this.properties = BenchmarkInputs.properties();
+        this.properties.setProperty("OrderFeed", "org.bryan.schorn.tha.matching.mock." + this.feedType);
+        this.properties.setProperty(OrderFeed.RING_SIZE, String.valueOf(1 << 20));
+        BenchmarkInputs.loadProducts(this.properties);
+    }
+
+    @Benchmark
+    public int readFile() throws Exception {
+        OrderFeed orderFeed = OrderFeed.create(this.properties);
+        orderFeed.connect();
+        int records = orderFeed.call();
+        for (Order order = orderFeed.get(); order != null; order = orderFeed.get()) {
+            --records;
+        }
+        return records;
+    }
+}
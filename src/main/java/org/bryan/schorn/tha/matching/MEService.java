@@ -32,6 +32,8 @@ import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
 import org.bryan.schorn.tha.matching.model.Order;
 import org.bryan.schorn.tha.matching.model.Trade;
 import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.product.ProductControl;
+import org.bryan.schorn.tha.matching.product.ProductControlFeed;
 import org.bryan.schorn.tha.matching.product.ProductFeed;
 import org.bryan.schorn.tha.matching.order.Orders;
 import org.bryan.schorn.tha.matching.product.Products;
@@ -40,6 +42,7 @@ import org.bryan.schorn.tha.matching.util.ToString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.*;
 
@@ -59,20 +62,29 @@ public class MEService {
         RUNNING,
         STOP;
     }
-    private State state = State.INIT;
+    private volatile State state = State.INIT;
     private ExecutorService executorService = null;
+    // Product halts/resumes/adds while running (null when not configured)
+    private ProductControlFeed productControlFeed = null;
+    private ProductControl productControl = null;
     // Orders
     private OrderFeed orderFeed = null;
-    private Future<Integer> futureOrderFeed = null;
+    private CompletableFuture<Integer> futureOrderFeed = null;
+    // stateless pre-trade rules (null when they run on the Engine's thread)
+    private ValidationStage validationStage = null;
+    private CompletableFuture<Integer> futureValidationStage = null;
     // Engine
     private Engine engine = null;
-    private Future<Integer> futureEngine = null;
+    private CompletableFuture<Integer> futureEngine = null;
+    // Engine's order/trade/reject diagnostics
+    private EngineLog engineLog = null;
+    private CompletableFuture<Integer> futureEngineLog = null;
     // Order Reject File
     private ActivityLog<Order.Reject> activityLogOrderReject = null;
-    private Future<Integer> futureActivityLogOrderReject = null;
+    private CompletableFuture<Integer> futureActivityLogOrderReject = null;
     // Trade File
     private ActivityLog<Trade> activityLogTrade = null;
-    private Future<Integer> futureActivityLogTrade = null;
+    private CompletableFuture<Integer> futureActivityLogTrade = null;
 
     /**
      * Configuration Entry Point
@@ -94,13 +106,21 @@ public class MEService {
             return;
         }
         /**
-         * There are four working threads.
+         * There are five working threads, and more when configured.
          * 1) OrderFeed
-         * 2) Engine (Matching)
+         * 2) Engine (Matching) or order routing for a PartitionedEngine
+         *    (which runs the partitions in threads of its own)
          * 3) Logging Trades
          * 4) Logging Rejects
+         * 5) Logging the Engine's diagnostics
+         * 6) Order routing for the ValidationStage (which runs its workers
+         *    in threads of its own)
+         * 7,8) ProductControlFeed and ProductControl (applying the events)
          */
-        this.executorService = Executors.newFixedThreadPool(4);
+        int validationThreads = ValidationStage.threads(this.properties);
+        boolean productControl = ProductControlFeed.isConfigured(this.properties);
+        this.executorService = Executors.newFixedThreadPool(5
+                + (validationThreads > 0 ? 1 : 0) + (productControl ? 2 : 0));
 
         /**
          * Products are read/loaded completely on the main thread before
@@ -110,6 +130,16 @@ public class MEService {
         productFeed.connect();
         Products.setFeed(productFeed);
 
+        /**
+         * Products can be halted, resumed and added while running from a
+         * control feed which is applied in its own thread.
+         */
+        if (productControl) {
+            this.productControlFeed = ProductControlFeed.create(this.properties);
+            this.productControlFeed.connect();
+            this.productControl = new ProductControl(this.productControlFeed);
+        }
+
         /**
          * Orders are streamed from a file and will be running
          * in its own thread.
@@ -122,9 +152,29 @@ public class MEService {
          * Engine reads orders from a supplier in its own thread.
          * Each new order is either rejected, matched or placed
          * in the OrderBook.
+         *
+         * When more than one partition is configured (EnginePartitions)
+         * the products are spread over that many Engines each running in
+         * its own thread.
          */
-        // create single engine with all products
-        this.engine = new Engine(Products.findAll());
+        int partitions = PartitionedEngine.partitions(this.properties);
+        if (partitions > 1) {
+            // create partitioned engine with the products hashed over the partitions
+            this.engine = new PartitionedEngine(Products.findAll(), partitions, this.properties);
+        } else {
+            // create single engine with all products
+            this.engine = new Engine(Products.findAll(), this.properties);
+        }
+
+        /**
+         * When validation threads are configured (ValidationThreads) the
+         * stateless rules run ahead of the Engine in a ValidationStage
+         * which the Engine takes its orders from.
+         */
+        if (validationThreads > 0) {
+            this.validationStage = new ValidationStage(validationThreads, this.properties);
+            this.engine.setOrderSupplier(this.validationStage);
+        }
 
         /**
          * Engine rules can be custom built by deriving from the
@@ -133,11 +183,35 @@ public class MEService {
          * instances declared that can be readily used.
          */
         // add rule for enforcing required fields
-        this.engine.addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
+        addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
         // add rule for trade halts
-        this.engine.addRule(ProductHalted.PRODUCTED_HALTED);
+        addRule(ProductHalted.PRODUCTED_HALTED);
         // add rule for the 3 orders in one second
-        this.engine.addRule(OrderThrottleRule.MAX_THREE_PER_SECOND);
+        addRule(OrderThrottleRule.MAX_THREE_PER_SECOND);
+
+        /**
+         * Accepted orders are journaled (OrderJournal) and in replay mode
+         * the OrderBooks are rebuilt from the journal before starting.
+         */
+        int replayed = this.engine.openJournal(this.properties);
+        if (replayed > 0) {
+            LGR.info("{} orders replayed from the order journal", replayed);
+        }
+
+        // log the engine's per order diagnostics off the matching thread
+        this.engineLog = new EngineLog(this.properties);
+        this.engine.setLog(this.engineLog);
+
+        if (this.validationStage != null) {
+            this.validationStage.setLog(this.engineLog);
+            // wake the validation stage (when idle) as orders arrive and
+            // the engine as they pass validation
+            this.orderFeed.setListener(this.validationStage::signal);
+            this.validationStage.setListener(this.engine::signal);
+        } else {
+            // wake the engine (when idle) as orders arrive
+            this.orderFeed.setListener(this.engine::signal);
+        }
 
         /**
          * Activity Logs can be used to read from a supplier
@@ -149,12 +223,19 @@ public class MEService {
         // create ActivityLog instance to log trades to file
         this.activityLogTrade = new ActivityLog<>(
                 this.engine.getSupplier(Trade.class),
+                Encoder.create(Trade.class, this.properties.getProperty("TradeFileHeader")),
                 this.properties.getProperty("TradeFile"),
                 this.properties.getProperty("TradeFileHeader"));
 
-        // create ActivityLog instance to log order rejects to file
+        // create ActivityLog instance to log order rejects (from the
+        // validation stage as well) to file
+        Engine.Outbound<Order.Reject> rejects = this.engine.getSupplier(Order.Reject.class);
+        if (this.validationStage != null) {
+            rejects = Engine.Outbound.roundRobin(List.of(this.validationStage.getRejects(), rejects));
+        }
         this.activityLogOrderReject = new ActivityLog<>(
-                this.engine.getSupplier(Order.Reject.class),
+                rejects,
+                Encoder.create(Order.Reject.class, this.properties.getProperty("RejectedFileHeader")),
                 this.properties.getProperty("RejectedFile"),
                 this.properties.getProperty("RejectedFileHeader"));
 
@@ -163,6 +244,18 @@ public class MEService {
         this.state = State.START;
     }
 
+    /**
+     * Adds a rule to the validation stage when it can run there and to the
+     * Engine otherwise
+     *
+     * @param rule
+     */
+    private void addRule(Engine.Rule rule) {
+        if (this.validationStage == null || !this.validationStage.addRule(rule)) {
+            this.engine.addRule(rule);
+        }
+    }
+
     /**
      * Start Service
      *
@@ -176,40 +269,49 @@ public class MEService {
         this.state = State.RUNNING;
 
         /**
-         * Submit the working instances to the Executor Service
-         * to be run and keep a Future instance for later.
+         * Submit the working instances to the Executor Service to be run
+         * and keep a CompletableFuture for each.
          */
-        this.futureOrderFeed = executorService.submit(this.orderFeed);
-        this.futureEngine = executorService.submit(this.engine);
-        this.futureActivityLogTrade = executorService.submit(this.activityLogTrade);
-        this.futureActivityLogOrderReject = executorService.submit(this.activityLogOrderReject);
+        if (this.productControl != null) {
+            submit(this.productControlFeed);
+            submit(this.productControl);
+        }
+        this.futureOrderFeed = submit(this.orderFeed);
+        if (this.validationStage != null) {
+            this.futureValidationStage = submit(this.validationStage);
+        }
+        this.futureEngine = submit(this.engine);
+        this.futureEngineLog = submit(this.engineLog);
+        this.futureActivityLogTrade = submit(this.activityLogTrade);
+        this.futureActivityLogOrderReject = submit(this.activityLogOrderReject);
 
         /**
-         * Loop, Check Status, Wait
+         * The end of each stage is passed on to the next as soon as it
+         * completes (normally or not): the end of the OrderFeed stops the
+         * validation stage (if any) which stops the Engine which stops the
+         * logs. Each one drains what is left before it completes.
          */
-        Integer ordersReceived = null;
-        Integer ordersProcessed = null;
-        while (this.state == State.RUNNING) {
-            try {
-                if (ordersReceived == null && this.futureOrderFeed.isDone()) {
-                    ordersReceived = this.futureOrderFeed.get();
-                    // Since that's the end of the OrderFeed, we tell the Engine
-                    // to stop where there are no more Orders.
-                    this.engine.stop();
-                } else if (ordersProcessed == null && this.futureEngine.isDone()) {
-                    ordersProcessed = this.futureEngine.get();
-                    // the engine has completed, so let's start shutting down
-                    // this service
-                    this.stop();
-                } else {
-                    Thread.sleep(200);
-                }
-            } catch (InterruptedException ie) {
-                LGR.warn(ie.getMessage());
-            } catch (Exception ex) {
-                LGR.error(ToString.stackTrace(ex));
-            }
+        if (this.validationStage != null) {
+            this.futureOrderFeed.whenComplete((count, ex) -> this.validationStage.stop());
+            this.futureValidationStage.whenComplete((count, ex) -> this.engine.stop());
+        } else {
+            this.futureOrderFeed.whenComplete((count, ex) -> this.engine.stop());
         }
+        /**
+         * An Engine that ends early (it failed) no longer takes orders so
+         * the stages feeding it are aborted rather than left waiting for
+         * room in their rings.
+         */
+        CompletableFuture<Integer> engineStopped = this.futureEngine.whenComplete((count, ex) -> {
+            this.orderFeed.abort();
+            if (this.validationStage != null) {
+                this.validationStage.abort();
+            }
+            this.stop();
+        });
+
+        Integer ordersReceived = join(this.futureOrderFeed);
+        Integer ordersProcessed = join(engineStopped);
         LGR.info("{} orders received", ordersReceived);
         LGR.info("{} orders processed", ordersProcessed);
     }
@@ -229,17 +331,30 @@ public class MEService {
          */
         this.activityLogOrderReject.stop();
         this.activityLogTrade.stop();
+        this.engineLog.stop();
+        if (this.productControl != null) {
+            this.productControl.stop();
+        }
         this.state = State.STOP;
     }
 
     public void close() {
         try {
+            /**
+             * The trades, rejects and the engine's diagnostics are all
+             * written before exiting.
+             */
+            join(this.futureActivityLogTrade);
+            join(this.futureActivityLogOrderReject);
+            join(this.futureEngineLog);
+
             /**
              * Once everything has completed we can capture the OrderBooks' state.
              */
             LGR.info("Writing order books...");
             ActivityLog<OrderBook.PriceLevel> activityLogPriceLevel = new ActivityLog<>(
                     this.engine.getSupplier(OrderBook.PriceLevel.class),
+                    Encoder.create(OrderBook.PriceLevel.class, this.properties.getProperty("OrderBookFileHeader")),
                     this.properties.getProperty("OrderBookFile"),
                     this.properties.getProperty("OrderBookFileHeader"));
             activityLogPriceLevel.stop();
@@ -248,10 +363,43 @@ public class MEService {
 
         } catch (Exception ex) {
             LGR.error(ToString.stackTrace(ex));
+        } finally {
+            this.executorService.shutdown();
         }
         LGR.info("exiting");
     }
 
+    /**
+     * Runs a working instance on the Executor Service
+     *
+     * @param callable
+     * @return completes with the callable's result (or its exception)
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> callable) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return callable.call();
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, this.executorService);
+    }
+
+    /**
+     * Waits for a working instance to complete
+     *
+     * @param future
+     * @return its result (null when it failed)
+     */
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException ex) {
+            LGR.error(ToString.stackTrace(ex.getCause() != null ? ex.getCause() : ex));
+        }
+        return null;
+    }
+
     public static void main(String[] args) {
         try {
             MEService service = new MEService(CommandLineArgs.create(args).getProperties());
@@ -25,32 +25,62 @@
 
 package org.bryan.schorn.tha.matching.engine;
 
+import org.bryan.schorn.tha.matching.util.AsciiBuffer;
+import org.bryan.schorn.tha.matching.util.IdleStrategy;
 import org.bryan.schorn.tha.matching.util.ToString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
  *  Activity Logs
+ *
+ *  Entities are drained from the supplier in batches. When there is nothing
+ *  to write the log blocks until the supplier's listener signals (see
+ *  Engine.Outbound) or maxWait elapses for suppliers that do not signal.
+ *
+ *  Records are encoded (see Encoder) into a reusable buffer that is written
+ *  to the file when it fills up or when the log goes idle. Each entity is
+ *  released back to the supplier once it has been encoded.
+ *
+ *  stop() wakes the log which then drains what is left, writes it and
+ *  returns (so it completes as soon as the last record is written).
  */
 public class ActivityLog<E> implements Callable<Integer> {
     static private final Logger LGR = LoggerFactory.getLogger(ActivityLog.class);
 
-    Supplier<E> supplier;
+    // entities written per drain
+    static private final int BATCH_SIZE = 1024;
+    // buffered bytes before writing to the file
+    static private final int WRITE_SIZE = 64 * 1024;
+    static private final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    Engine.Outbound<E> supplier;
+    Encoder<E> encoder;
     String filename;
     String header;
-    boolean stop = false;
+    volatile boolean stop = false;
+    private final IdleStrategy idleStrategy = new IdleStrategy.Blocking(TimeUnit.MILLISECONDS.toNanos(100));
+
+    // ctor (records from the entities' toString())
     public ActivityLog(Supplier<E> supplier, String filename, String header) {
-        this.supplier = supplier;
+        this(supplier, Encoder.toStringEncoder(), filename, header);
+    }
+
+    public ActivityLog(Supplier<E> supplier, Encoder<E> encoder, String filename, String header) {
+        this.supplier = supplier instanceof Engine.Outbound ? (Engine.Outbound<E>) supplier : supplier::get;
+        this.supplier.setListener(this.idleStrategy::signal);
+        this.encoder = encoder;
         this.filename = filename;
         this.header = header;
         LGR.info("Created logging instance to file: {}", this.filename);
@@ -58,6 +88,7 @@ public class ActivityLog<E> implements Callable<Integer> {
 
     public void stop() {
         this.stop = true;
+        this.idleStrategy.signal();
     }
 
     @Override
@@ -65,24 +96,32 @@ public class ActivityLog<E> implements Callable<Integer> {
         Integer writeCount = 0;
         try {
             Path tradeFilePath = Paths.get(filename);
-            E entity = this.supplier.get();
-            //LGR.info("Logging {} activity to {}", entity.getClass().getSimpleName(), tradeFilePath);
-            try (BufferedWriter writer = Files.newBufferedWriter(tradeFilePath,
-                    StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
-                writer.write(header + System.lineSeparator());
-                while (!this.stop || entity != null) {
-                    if (entity != null) {
-                        writer.write(entity.toString());
-                        writer.write(System.lineSeparator());
-                        ++writeCount;
-                    } else {
-                        try {
-                            Thread.sleep(100);
-                        } catch (Exception ex) {
-                            LGR.warn(ex.getMessage());
+            // replaces what a previous run left in the file
+            try (OutputStream outputStream = Files.newOutputStream(tradeFilePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                final AsciiBuffer buffer = new AsciiBuffer(WRITE_SIZE + WRITE_SIZE / 4);
+                buffer.put(header).put(LINE_SEPARATOR);
+                Consumer<E> encode = (entity) -> {
+                    this.encoder.encode(entity, buffer);
+                    buffer.put(LINE_SEPARATOR);
+                    // encoded, so it can be reused
+                    this.supplier.release(entity);
+                };
+                while (true) {
+                    // read before draining so nothing is left behind after stop()
+                    boolean stopping = this.stop;
+                    int drained = this.supplier.drainTo(encode, BATCH_SIZE);
+                    writeCount += drained;
+                    if (buffer.length() >= WRITE_SIZE || (drained == 0 && buffer.length() > 0)) {
+                        buffer.writeTo(outputStream);
+                        buffer.clear();
+                    }
+                    if (drained == 0) {
+                        if (stopping) {
+                            break;
                         }
+                        this.idleStrategy.idle();
                     }
-                    entity = this.supplier.get();
                 }
             }
         } catch (Exception ex) {
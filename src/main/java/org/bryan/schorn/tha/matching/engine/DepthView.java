@@ -0,0 +1,213 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Price;
+import org.bryan.schorn.tha.matching.model.Side;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Properties;
+
+/**
+ * Depth View
+ *
+ * The top N price levels of an OrderBook that other threads (monitoring)
+ * can read while the Engine is matching. The Engine's thread republishes the
+ * levels after each change of the book (no locks, no allocation) and readers
+ * copy them out under a sequence lock: the version is odd while the levels
+ * are being written and a reader retries when the version it started with
+ * is odd or has moved by the time it is done copying.
+ *
+ * Properties:
+ *   OrderBookDepth=N (levels per side, 0 or missing for none)
+ */
+public final class DepthView {
+
+    static public final String LEVELS = "OrderBookDepth";
+
+    static private final VarHandle VERSION;
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(DepthView.class, "version", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    /**
+     * Number of levels per side configured in properties (0 when not specified)
+     *
+     * @param properties
+     * @return
+     */
+    static public int levels(Properties properties) {
+        return Integer.parseInt(properties.getProperty(LEVELS, "0").trim());
+    }
+
+    private final String symbol;
+    private final int priceScale;
+    // odd while the levels are being written (accessed through VERSION)
+    private long version = 0L;
+    // written by the Engine's thread only
+    private final Levels bids;
+    private final Levels offers;
+
+    DepthView(OrderBook orderBook, int levels) {
+        this.symbol = orderBook.product().symbol();
+        this.priceScale = orderBook.priceScale;
+        this.bids = new Levels(levels);
+        this.offers = new Levels(levels);
+    }
+
+    public String symbol() {
+        return this.symbol;
+    }
+
+    /**
+     * Levels per side
+     *
+     * @return
+     */
+    public int capacity() {
+        return this.bids.priceTicks.length;
+    }
+
+    /**
+     * Republishes the top levels of the book (Engine's thread)
+     *
+     * @param orderBook
+     */
+    void publish(OrderBook orderBook) {
+        long version = this.version;
+        VERSION.setOpaque(this, version + 1);
+        VarHandle.storeStoreFence();
+        this.bids.count = orderBook.depth(Side.BUY, this.bids.priceTicks, this.bids.quantities, this.bids.orders);
+        this.offers.count = orderBook.depth(Side.SELL, this.offers.priceTicks, this.offers.quantities, this.offers.orders);
+        VERSION.setRelease(this, version + 2);
+    }
+
+    /**
+     * Copies a consistent view of the levels (any thread)
+     *
+     * @param depth where to copy (created when null)
+     * @return
+     */
+    public Depth read(Depth depth) {
+        if (depth == null || depth.capacity() != capacity()) {
+            depth = new Depth(this.symbol, this.priceScale, capacity());
+        }
+        while (true) {
+            long version = (long) VERSION.getAcquire(this);
+            if ((version & 1L) == 0L) {
+                depth.bids.copy(this.bids);
+                depth.offers.copy(this.offers);
+                VarHandle.loadLoadFence();
+                if (version == (long) VERSION.getOpaque(this)) {
+                    depth.version = version;
+                    return depth;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * One side's levels (best first)
+     */
+    static private final class Levels {
+        private final long[] priceTicks;
+        private final int[] quantities;
+        private final int[] orders;
+        private int count = 0;
+
+        Levels(int capacity) {
+            this.priceTicks = new long[capacity];
+            this.quantities = new int[capacity];
+            this.orders = new int[capacity];
+        }
+
+        void copy(Levels levels) {
+            // the count may be torn, so keep it in range until the version is checked
+            int count = Math.min(Math.max(levels.count, 0), this.priceTicks.length);
+            System.arraycopy(levels.priceTicks, 0, this.priceTicks, 0, count);
+            System.arraycopy(levels.quantities, 0, this.quantities, 0, count);
+            System.arraycopy(levels.orders, 0, this.orders, 0, count);
+            this.count = count;
+        }
+    }
+
+    /**
+     * A reader's copy of the levels (reusable)
+     */
+    static public final class Depth {
+        private final String symbol;
+        private final int priceScale;
+        private final Levels bids;
+        private final Levels offers;
+        private long version = 0L;
+
+        Depth(String symbol, int priceScale, int capacity) {
+            this.symbol = symbol;
+            this.priceScale = priceScale;
+            this.bids = new Levels(capacity);
+            this.offers = new Levels(capacity);
+        }
+
+        private Levels of(Side side) {
+            return side == Side.BUY ? this.bids : this.offers;
+        }
+
+        public String symbol() { return this.symbol; }
+        public int priceScale() { return this.priceScale; }
+        public int capacity() { return this.bids.priceTicks.length; }
+        /**
+         * Number of times the book had changed when copied
+         */
+        public long version() { return this.version / 2; }
+        public int levels(Side side) { return of(side).count; }
+        public long priceTicks(Side side, int level) { return of(side).priceTicks[level]; }
+        public double price(Side side, int level) { return Price.toDouble(priceTicks(side, level), this.priceScale); }
+        public int quantity(Side side, int level) { return of(side).quantities[level]; }
+        public int orders(Side side, int level) { return of(side).orders[level]; }
+
+        /**
+         * symbol,bid qty@price|...,offer qty@price|...
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(this.symbol);
+            for (Side side : new Side[]{Side.BUY, Side.SELL}) {
+                sb.append(',');
+                for (int i = 0; i < levels(side); i++) {
+                    if (i > 0) sb.append('|');
+                    sb.append(quantity(side, i)).append('@').append(Price.toString(priceTicks(side, i), this.priceScale));
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
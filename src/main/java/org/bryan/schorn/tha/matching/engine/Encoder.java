@@ -0,0 +1,168 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.util.AsciiBuffer;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Record Encoder
+ *
+ * Writes an entity as one CSV record (without the line separator) into an
+ * AsciiBuffer. The columns are taken from the file header so the records
+ * always line up with it, e.g. TradeFileHeader=symbol,price,timestamp
+ *
+ * Order:              symbol,side,type,price,quantity,timestamp
+ * Trade:              symbol,price,quantity,timestamp
+ * Order.Reject:       symbol,side,type,price,quantity,timestamp,reason
+ * OrderBook.PriceLevel: symbol,price,buys,sells
+ *
+ * Prices are written from their ticks with the decimals of their scale and
+ * timestamps as seconds.nanos (the same text as the entities' toString()).
+ *
+ * @param <E>
+ */
+@FunctionalInterface
+public interface Encoder<E> {
+
+    void encode(E entity, AsciiBuffer buffer);
+
+    /**
+     * Encoder for the entity's toString()
+     *
+     * @param <E>
+     * @return
+     */
+    static <E> Encoder<E> toStringEncoder() {
+        return (entity, buffer) -> buffer.put(entity.toString());
+    }
+
+    /**
+     * Encoder for the columns of the header
+     *
+     * @param classOfE
+     * @param header
+     * @return
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    static <E> Encoder<E> create(Class<E> classOfE, String header) throws Exception {
+        Map<String, Encoder<?>> columns = Impl.COLUMNS.get(classOfE);
+        if (columns == null) {
+            throw new Exception(String.format("There is no encoder for entity: %s",
+                    classOfE.getSimpleName()));
+        }
+        if (header == null || header.isBlank()) {
+            throw new Exception(String.format("There is no header for entity: %s",
+                    classOfE.getSimpleName()));
+        }
+        List<Encoder<E>> encoders = new ArrayList<>();
+        for (String name : header.split(",")) {
+            Encoder<E> encoder = (Encoder<E>) columns.get(name.trim());
+            if (encoder == null) {
+                throw new Exception(String.format("%s has no column '%s' (%s)",
+                        classOfE.getSimpleName(), name.trim(), String.join(",", columns.keySet())));
+            }
+            encoders.add(encoder);
+        }
+        final Encoder<E>[] fields = (Encoder<E>[]) encoders.toArray(new Encoder<?>[0]);
+        return (entity, buffer) -> {
+            fields[0].encode(entity, buffer);
+            for (int i = 1; i < fields.length; i++) {
+                buffer.put((byte) ',');
+                fields[i].encode(entity, buffer);
+            }
+        };
+    }
+
+    /**
+     * Column encoders by entity
+     */
+    class Impl {
+        static private final Map<Class<?>, Map<String, Encoder<?>>> COLUMNS = new HashMap<>();
+
+        static {
+            Map<String, Encoder<?>> order = new HashMap<>();
+            order.put("id", (Encoder<Order>) (o, b) -> b.put(o.orderId()));
+            order.put("symbol", (Encoder<Order>) (o, b) -> b.put(o.symbol()));
+            order.put("side", (Encoder<Order>) (o, b) -> b.put(o.side().name()));
+            order.put("type", (Encoder<Order>) (o, b) -> b.put(o.orderType().name()));
+            order.put("price", (Encoder<Order>) (o, b) -> b.putFixed(o.priceTicks(), o.priceScale()));
+            order.put("quantity", (Encoder<Order>) (o, b) -> integer(o.orderQty(), b));
+            order.put("timestamp", (Encoder<Order>) (o, b) -> timestamp(o.timestamp(), b));
+            COLUMNS.put(Order.class, order);
+
+            Map<String, Encoder<?>> trade = new HashMap<>();
+            trade.put("symbol", (Encoder<Trade>) (t, b) -> b.put(t.symbol()));
+            trade.put("price", (Encoder<Trade>) (t, b) -> b.putFixed(t.priceTicks(), t.priceScale()));
+            trade.put("quantity", (Encoder<Trade>) (t, b) -> integer(t.quantity(), b));
+            trade.put("timestamp", (Encoder<Trade>) (t, b) -> timestamp(t.timestamp(), b));
+            COLUMNS.put(Trade.class, trade);
+
+            Map<String, Encoder<?>> reject = new HashMap<>();
+            reject.put("id", (Encoder<Order.Reject>) (r, b) -> b.put(r.order().orderId()));
+            reject.put("symbol", (Encoder<Order.Reject>) (r, b) -> b.put(r.order().symbol()));
+            reject.put("side", (Encoder<Order.Reject>) (r, b) -> b.put(r.order().side().name()));
+            reject.put("type", (Encoder<Order.Reject>) (r, b) -> b.put(r.order().orderType().name()));
+            reject.put("price", (Encoder<Order.Reject>) (r, b) -> b.putFixed(r.order().priceTicks(), r.order().priceScale()));
+            reject.put("quantity", (Encoder<Order.Reject>) (r, b) -> integer(r.order().orderQty(), b));
+            reject.put("timestamp", (Encoder<Order.Reject>) (r, b) -> timestamp(r.order().timestamp(), b));
+            reject.put("reason", (Encoder<Order.Reject>) (r, b) -> b.put(r.reason()));
+            COLUMNS.put(Order.Reject.class, reject);
+
+            Map<String, Encoder<?>> priceLevel = new HashMap<>();
+            priceLevel.put("symbol", (Encoder<OrderBook.PriceLevel>) (p, b) -> b.put(p.symbol));
+            priceLevel.put("price", (Encoder<OrderBook.PriceLevel>) (p, b) -> b.putFixed(p.priceTicks, p.priceScale));
+            priceLevel.put("buys", (Encoder<OrderBook.PriceLevel>) (p, b) -> b.put(p.buys));
+            priceLevel.put("sells", (Encoder<OrderBook.PriceLevel>) (p, b) -> b.put(p.sells));
+            COLUMNS.put(OrderBook.PriceLevel.class, priceLevel);
+        }
+
+        static void integer(Integer value, AsciiBuffer buffer) {
+            if (value == null) {
+                buffer.put((CharSequence) null);
+            } else {
+                buffer.put(value.longValue());
+            }
+        }
+
+        static void timestamp(Instant timestamp, AsciiBuffer buffer) {
+            if (timestamp == null) {
+                buffer.put((CharSequence) null);
+            } else {
+                buffer.put(timestamp.getEpochSecond()).put((byte) '.').put((long) timestamp.getNano());
+            }
+        }
+    }
+}
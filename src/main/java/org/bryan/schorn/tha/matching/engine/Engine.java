@@ -30,12 +30,15 @@ import org.bryan.schorn.tha.matching.model.Product;
 import org.bryan.schorn.tha.matching.model.Trade;
 import org.bryan.schorn.tha.matching.order.Orders;
 import org.bryan.schorn.tha.matching.product.Products;
+import org.bryan.schorn.tha.matching.util.IdleStrategy;
+import org.bryan.schorn.tha.matching.util.RingBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -49,32 +52,361 @@ import java.util.function.Supplier;
 public class Engine implements Callable<Integer> {
     static private final Logger LGR = LoggerFactory.getLogger(Engine.class);
 
+    static public final String IDLE_STRATEGY = "EngineIdleStrategy";
+
     // add-in rules interface
     public interface Rule extends Predicate<Order> {
         boolean test(Order order);
         String getReason(Order order);
         String ruleDescription();
+
+        /**
+         * Test with the order's product already resolved (see RulePipeline)
+         *
+         * @param order
+         * @param product null when the symbol is unknown
+         * @return
+         */
+        default boolean test(Order order, Product product) {
+            return test(order);
+        }
+
+        /**
+         * Stateless rules can be tested in any order (see RulePipeline).
+         * Rules that share their instance (see newInstance) are.
+         *
+         * @return
+         */
+        default boolean isStateless() {
+            return newInstance() == this;
+        }
+
+        /**
+         * Rule instance for another Engine. Stateless rules can be shared
+         * (default) while rules that keep state must return a new instance.
+         *
+         * @return
+         */
+        default Rule newInstance() {
+            return this;
+        }
+
+        /**
+         * Whether the rule still holds when each partition of a
+         * PartitionedEngine tests its own instance (see newInstance).
+         * Rules whose state spans the orders of all products are not.
+         *
+         * @return
+         */
+        default boolean isPartitionable() {
+            return true;
+        }
     }
+
+    /**
+     * Outbound channel (Trades, Rejects, PriceLevels). Readers can take one
+     * at a time (Supplier) or in batches, and can register a listener that
+     * is run when something is made available.
+     *
+     * @param <E>
+     */
+    public interface Outbound<E> extends Supplier<E> {
+        @Override
+        E get();
+
+        /**
+         * Passes up to max entities to the consumer
+         *
+         * @param consumer
+         * @param max
+         * @return number of entities passed
+         */
+        default int drainTo(Consumer<? super E> consumer, int max) {
+            int count = 0;
+            E entity;
+            while (count < max && (entity = get()) != null) {
+                consumer.accept(entity);
+                ++count;
+            }
+            return count;
+        }
+
+        /**
+         * Listener is run each time an entity is made available
+         *
+         * @param listener
+         */
+        default void setListener(Runnable listener) {
+        }
+
+        /**
+         * Reader is done with an entity. Pooled entities (Trades, Rejects)
+         * are reused by the Engine afterwards so the reader must not keep
+         * a reference to it. Readers that keep the entities don't call this.
+         *
+         * @param entity
+         */
+        default void release(E entity) {
+            if (entity instanceof EventPool.Pooled) {
+                ((EventPool.Pooled) entity).release();
+            }
+        }
+
+        /**
+         * Merges suppliers round-robin (batches are drained from one after
+         * the other). The order across suppliers is not kept but it is for
+         * each of them.
+         *
+         * @param suppliers
+         * @param <E>
+         * @return
+         */
+        static <E> Outbound<E> roundRobin(List<Outbound<E>> suppliers) {
+            return new Outbound<E>() {
+                private int next = 0;
+                @Override
+                public E get() {
+                    for (int n = 0; n < suppliers.size(); n++) {
+                        E entity = suppliers.get(this.next).get();
+                        this.next = (this.next + 1) % suppliers.size();
+                        if (entity != null) {
+                            return entity;
+                        }
+                    }
+                    return null;
+                }
+                @Override
+                public int drainTo(Consumer<? super E> consumer, int max) {
+                    int count = 0;
+                    for (int n = 0; n < suppliers.size() && count < max; n++) {
+                        count += suppliers.get(this.next).drainTo(consumer, max - count);
+                        this.next = (this.next + 1) % suppliers.size();
+                    }
+                    return count;
+                }
+                @Override
+                public void setListener(Runnable listener) {
+                    for (Outbound<E> supplier : suppliers) {
+                        supplier.setListener(listener);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Outbound queue (written by the Engine's thread, read by one reader)
+     *
+     * Entities go through a RingBuffer. When the reader falls behind and the
+     * ring is full they spill over into an unbounded queue, and keep doing so
+     * until the reader has emptied it, so the order is kept and the Engine
+     * is never held back by its readers.
+     *
+     * @param <E>
+     */
+    static class OutboundQueue<E> implements Outbound<E> {
+        private final RingBuffer<E> ring;
+        private final Queue<E> overflow = new ConcurrentLinkedQueue<>();
+        private volatile Runnable listener = () -> {};
+
+        OutboundQueue() {
+            this(RingBuffer.DEFAULT_CAPACITY);
+        }
+
+        OutboundQueue(int capacity) {
+            this.ring = new RingBuffer<>(capacity);
+        }
+
+        void offer(E entity) {
+            if (!this.overflow.isEmpty() || !this.ring.offer(entity)) {
+                this.overflow.offer(entity);
+            }
+            this.listener.run();
+        }
+
+        void clear() {
+            this.ring.clear();
+            this.overflow.clear();
+        }
+
+        @Override
+        public E get() {
+            E entity = this.ring.poll();
+            return entity != null ? entity : this.overflow.poll();
+        }
+
+        @Override
+        public int drainTo(Consumer<? super E> consumer, int max) {
+            int count = 0;
+            E entity;
+            while (count < max && (entity = get()) != null) {
+                consumer.accept(entity);
+                ++count;
+            }
+            return count;
+        }
+
+        @Override
+        public void setListener(Runnable listener) {
+            this.listener = listener;
+        }
+    }
+
     // engine rules
-    private final List<Rule> rules = new ArrayList<>();
+    private final RulePipeline rules = new RulePipeline();
 
     // orders supplier
     private Supplier<Order> orderSupplier = null;
+    // what to do when there are no orders
+    private IdleStrategy idleStrategy = new IdleStrategy.BusySpin();
+    // per order diagnostics
+    private EngineLog.Channel log = new EngineLog.Direct(1);
+    // accepted orders (null when there is no journal)
+    private OrderJournal journal = null;
+    // rebuilding the order books from the journal (nothing goes out)
+    private boolean replaying = false;
+    // periodic snapshots of the order books (along with the journal)
+    private OrderBookSnapshot snapshot = null;
+    private int ordersToSnapshot = 0;
     // outbound queue
-    private final Queue<Order.Reject> outboundRejectedQueue = new ConcurrentLinkedQueue<>();
-    private final Queue<Trade> outboundTradeQueue = new ConcurrentLinkedQueue<>();
+    private final OutboundQueue<Order.Reject> outboundRejectedQueue = new OutboundQueue<>();
+    private final OutboundQueue<Trade> outboundTradeQueue = new OutboundQueue<>();
+    // reusable outbound events
+    private final EventPool<EventPool.PooledReject> rejectPool = new EventPool<>(EventPool.PooledReject::new);
+    private final EventPool<EventPool.PooledTrade> tradePool = new EventPool<>(EventPool.PooledTrade::new);
+    // incremental market data (only once asked for)
+    private MarketData.Publisher marketData = null;
 
     // order book
     private final Map<Product,OrderBook> orderBooks = new HashMap<>();
+    // order book by product id (see Products)
+    private OrderBook[] orderBooksById = new OrderBook[0];
+    // for the OrderBooks of products added while running (null for TreeOrderBook)
+    private Properties properties = null;
+    private int depth = 0;
 
     // life cycle
-    private boolean keepLooping = true;
-    private boolean loopingStopped = true;
+    private volatile boolean keepLooping = true;
+    private volatile boolean loopingStopped = true;
 
     // ctor
     public Engine(Collection<Product> productList) {
         for (Product product : productList)
-            this.orderBooks.put(product, new OrderBook(product));
+            addOrderBook(new TreeOrderBook(product));
+    }
+
+    // ctor (OrderBook implementation and IdleStrategy from properties)
+    public Engine(Collection<Product> productList, Properties properties) throws Exception {
+        this.properties = properties;
+        this.depth = DepthView.levels(properties);
+        for (Product product : productList) {
+            addOrderBook(newOrderBook(product));
+        }
+        this.idleStrategy = IdleStrategy.create(properties.getProperty(IDLE_STRATEGY));
+        this.log = new EngineLog.Direct(EngineLog.sampling(properties));
+    }
+
+    private OrderBook newOrderBook(Product product) throws Exception {
+        OrderBook orderBook = this.properties != null
+                ? OrderBook.create(product, this.properties) : new TreeOrderBook(product);
+        if (this.depth > 0) {
+            orderBook.setDepthView(new DepthView(orderBook, this.depth));
+        }
+        return orderBook;
+    }
+
+    private void addOrderBook(OrderBook orderBook) {
+        Product product = orderBook.product();
+        this.orderBooks.put(product, orderBook);
+        if (product.id() >= 0) {
+            if (product.id() >= this.orderBooksById.length) {
+                this.orderBooksById = Arrays.copyOf(this.orderBooksById, product.id() + 1);
+            }
+            this.orderBooksById[product.id()] = orderBook;
+        }
+    }
+
+    /**
+     * OrderBook of an order's product, by the product id the order was
+     * parsed with (by symbol when it has none)
+     *
+     * @param order
+     * @return
+     */
+    private OrderBook orderBook(Order order) {
+        int productId = order.productId();
+        if (productId >= 0 && productId < this.orderBooksById.length && this.orderBooksById[productId] != null) {
+            return this.orderBooksById[productId];
+        }
+        Product product = Products.find(order.symbol());
+        if (product == null) {
+            // replaying the orders of a product that was added while running
+            return this.replaying && order.symbol() != null
+                    ? restoredOrderBook(order.symbol(), order.priceScale()) : null;
+        }
+        return orderBook(product);
+    }
+
+    /**
+     * OrderBook of a product (opened when the product was added while running)
+     *
+     * @param product
+     * @return
+     */
+    private OrderBook orderBook(Product product) {
+        if (product.id() >= 0 && product.id() < this.orderBooksById.length && this.orderBooksById[product.id()] != null) {
+            return this.orderBooksById[product.id()];
+        }
+        OrderBook orderBook = this.orderBooks.get(product);
+        return orderBook != null ? orderBook : addedProduct(product);
+    }
+
+    /**
+     * OrderBook of a symbol in the journal or snapshot. A product that was
+     * added while running (see Products.add) is not in the product feed so
+     * it is registered again (not halted, its orders were being accepted).
+     *
+     * @param symbol
+     * @param priceScale
+     * @return
+     */
+    private OrderBook restoredOrderBook(String symbol, int priceScale) {
+        Product product = Products.find(symbol);
+        if (product == null) {
+            product = Product.create(symbol, priceScale);
+            product.setHalted(false);
+            if (Products.add(product)) {
+                LGR.warn("{} is not in the product feed (added while running), restored from the journal", symbol);
+            } else {
+                product = Products.find(symbol);
+            }
+        }
+        return orderBook(product);
+    }
+
+    /**
+     * Opens the OrderBook of a product that was added while running (see
+     * Products.add) with its first order
+     *
+     * @param product
+     * @return
+     */
+    private OrderBook addedProduct(Product product) {
+        OrderBook orderBook;
+        try {
+            orderBook = newOrderBook(product);
+        } catch (Exception ex) {
+            LGR.error("{} (using {})", ex.getMessage(), TreeOrderBook.class.getSimpleName());
+            orderBook = new TreeOrderBook(product);
+        }
+        synchronized (this) {
+            if (this.marketData != null) {
+                orderBook.setListener(this.marketData);
+            }
+        }
+        addOrderBook(orderBook);
+        LGR.info("OrderBook opened for added product: {}", product.symbol());
+        return orderBook;
     }
 
     /**
@@ -84,19 +416,127 @@ public class Engine implements Callable<Integer> {
      * @return
      */
     public boolean addRule(Rule rule) {
-        boolean added = this.rules.add(rule);
-        if (added) LGR.info("Rule added: "+rule.ruleDescription());
-        return added;
+        this.rules.add(rule);
+        LGR.info("Rule added: "+rule.ruleDescription());
+        return true;
+    }
+
+    /**
+     * Orders are taken from the Orders conduit unless another order
+     * supplier (inbox) is set.
+     *
+     * @param orderSupplier
+     */
+    public void setOrderSupplier(Supplier<Order> orderSupplier) {
+        this.orderSupplier = orderSupplier;
+    }
+
+    /**
+     * Where the orders are taken from (the Orders conduit unless another
+     * supplier was set)
+     *
+     * @return
+     */
+    Supplier<Order> orderSupplier() {
+        return this.orderSupplier != null ? this.orderSupplier : Orders.getSupplier();
+    }
+
+    /**
+     * What the order loop does when there are no orders (default: busy-spin)
+     *
+     * @param idleStrategy
+     */
+    public void setIdleStrategy(IdleStrategy idleStrategy) {
+        this.idleStrategy = idleStrategy;
+    }
+
+    /**
+     * Per order diagnostics go to the EngineLog (which logs them on its own
+     * thread) instead of being logged on the Engine's thread
+     *
+     * @param engineLog
+     * @throws Exception
+     */
+    public void setLog(EngineLog engineLog) throws Exception {
+        this.log = engineLog.newChannel();
+    }
+
+    /**
+     * Opens the OrderJournal configured in properties (if any) which the
+     * accepted orders are written to before they are matched. In replay
+     * mode (OrderJournalReplay=true) the journal's orders are matched first
+     * to rebuild the OrderBooks (no Trades/Rejects are sent out for them).
+     * When OrderBookSnapshots are configured the books are loaded from the
+     * latest snapshot and only the rest of the journal is replayed.
+     * Called before the Engine is started.
+     *
+     * @param properties
+     * @return number of orders replayed
+     * @throws Exception
+     */
+    public int openJournal(Properties properties) throws Exception {
+        return openJournal(properties, 0, 1);
+    }
+
+    int openJournal(Properties properties, int partition, int partitions) throws Exception {
+        this.journal = OrderJournal.create(properties, partition, partitions);
+        if (this.journal == null) {
+            return 0;
+        }
+        this.snapshot = OrderBookSnapshot.create(properties, partition, partitions);
+        if (this.snapshot != null) {
+            this.ordersToSnapshot = this.snapshot.orders();
+        }
+        if (!OrderJournal.replay(properties)) {
+            return 0;
+        }
+        long position = this.snapshot == null ? -1L
+                : this.snapshot.load(this::restoredOrderBook, this.journal.id());
+        this.replaying = true;
+        try {
+            return position < 0 ? this.journal.replay(this::match) : this.journal.replay(this::match, position);
+        } finally {
+            this.replaying = false;
+        }
+    }
+
+    /**
+     * Snapshot of the order books at the current journal position (skipped
+     * while the previous one is still being written, unless waiting)
+     *
+     * @param wait
+     */
+    private void snapshot(boolean wait) {
+        if (this.journal == null) {
+            return;
+        }
+        if (this.snapshot.take(this.orderBooks.values(), this.journal.id(), this.journal.position(), wait)) {
+            this.ordersToSnapshot = this.snapshot.orders();
+        } else {
+            this.ordersToSnapshot = 1;
+        }
+    }
+
+    /**
+     * Order producers signal when orders are available (wakes a blocked
+     * order loop)
+     */
+    public void signal() {
+        this.idleStrategy.signal();
     }
 
     // signals the end of cycle
     public void stop() {
         this.keepLooping = false;
+        this.idleStrategy.signal();
     }
     // clear out
     public void recycle() {
         this.outboundRejectedQueue.clear();
         this.outboundTradeQueue.clear();
+        if (this.marketData != null) {
+            this.marketData.clear();
+        }
         for (OrderBook orderBook : this.orderBooks.values()) {
             orderBook.recycle();
         }
@@ -107,29 +547,93 @@ public class Engine implements Callable<Integer> {
     @Override
     public Integer call() {
         int orderCount = 0;
-        Supplier<Order> orderSupplier = Orders.getSupplier();
-        Order order = null;
-        while (order != null || this.keepLooping) {
-            order = orderSupplier.get();
-            while (order != null) {
-                ++orderCount;
-                if (passedRules(order)) {
-                    switch (order.orderType()) {
-                        case MARKET:
-                            market(order);
-                            break;
-                        case LIMIT:
-                            limit(order);
-                            break;
-                    }
+        Supplier<Order> orderSupplier = orderSupplier();
+        IdleStrategy idleStrategy = this.idleStrategy;
+        while (this.keepLooping) {
+            int workCount = process(orderSupplier);
+            orderCount += workCount;
+            idleStrategy.idle(workCount);
+        }
+        // orders that came in before stop() was called
+        orderCount += process(orderSupplier);
+        if (this.snapshot != null) {
+            // restart from where it stopped
+            snapshot(true);
+            this.snapshot.close();
+            this.snapshot = null;
+        }
+        if (this.journal != null) {
+            this.journal.close();
+            this.journal = null;
+        }
+        this.loopingStopped = true;
+        return orderCount;
+    }
+
+    /**
+     * Processes orders until the supplier has no more
+     *
+     * @param orderSupplier
+     * @return number of orders processed
+     */
+    private int process(Supplier<Order> orderSupplier) {
+        int orderCount = 0;
+        Order order = orderSupplier.get();
+        while (order != null) {
+            ++orderCount;
+            if (passedRules(order)) {
+                journal(order);
+                match(order);
+                if (this.snapshot != null && --this.ordersToSnapshot <= 0) {
+                    snapshot(false);
                 }
-                order = orderSupplier.get();
             }
+            order = orderSupplier.get();
         }
-        this.loopingStopped = true;
         return orderCount;
     }
 
+    private void match(Order order) {
+        OrderBook orderBook = orderBook(order);
+        if (orderBook == null) {
+            // e.g. a custom rule set without CheckRequiredFields
+            if (!this.replaying) this.log.order(order);
+            reject(order, "unknown-product");
+            return;
+        }
+        switch (order.orderType()) {
+            case MARKET:
+                market(order, orderBook);
+                break;
+            case LIMIT:
+                limit(order, orderBook);
+                break;
+            case CANCEL:
+                cancel(order, orderBook);
+                break;
+            case REPLACE:
+                replace(order, orderBook);
+                break;
+        }
+    }
+
+    /**
+     * Writes an accepted order to the journal (journaling stops if the
+     * journal fails)
+     *
+     * @param order
+     */
+    private void journal(Order order) {
+        if (this.journal != null) {
+            try {
+                this.journal.append(order);
+            } catch (Exception ex) {
+                LGR.error("Order journal {} failed (no longer journaling): {}", this.journal.path(), ex.getMessage());
+                this.journal = null;
+            }
+        }
+    }
+
 
 
     /**
@@ -140,14 +644,13 @@ public class Engine implements Callable<Integer> {
      * @return
      */
     private boolean passedRules(Order order) {
-        for (Rule rule : this.rules) {
-            if (!rule.test(order)) {
-                String reason = rule.getReason(order);
-                Order.Reject rejectedOrder = Order.reject(order,reason == null ? "unknown" : reason);
-                LGR.info("Rejected: {}", rejectedOrder.toString());
-                this.outboundRejectedQueue.offer(rejectedOrder);
-                return false;
-            }
+        Rule rule = this.rules.check(order);
+        if (rule != null) {
+            String reason = rule.getReason(order);
+            Order.Reject rejectedOrder = this.rejectPool.acquire().set(order, reason == null ? "unknown" : reason);
+            this.log.reject(rejectedOrder);
+            this.outboundRejectedQueue.offer(rejectedOrder);
+            return false;
         }
         return true;
     }
@@ -155,36 +658,27 @@ public class Engine implements Callable<Integer> {
     /**
      * Market Order Execution
      *
-     * Take the quantity from the other side of the OrderBook.
+     * Take the quantity from the other side of the OrderBook. Any quantity
+     * that could not be filled is not kept (rejected if nothing was filled).
      *
      *
      * @param takeOrder
+     * @param orderBook
      */
-    private void market(Order takeOrder) {
-        LGR.info("Order: {}", takeOrder.toString());
+    private void market(Order takeOrder, OrderBook orderBook) {
+        if (!this.replaying) this.log.order(takeOrder);
 
         int takeQty = takeOrder.orderQty();
-        double takePrice = takeOrder.price();
 
-        Product product = Products.find(takeOrder.symbol());
+        Product product = orderBook.product();
 
-        List<Order> matchedOrders = this.orderBooks.get(product)
-                .take(takeOrder.side().otherSide(), takeQty, takePrice);
+        List<OrderBook.Fill> fills = orderBook.take(takeOrder.side().otherSide(), takeQty,
+                orderBook.priceTicks(takeOrder));
 
-        if (matchedOrders.isEmpty()) {
-            Order.Reject rejectedOrder = Order.reject(takeOrder,"no-match");
-            LGR.info("Rejected: {}", rejectedOrder.toString());
-            this.outboundRejectedQueue.offer(rejectedOrder);
+        if (fills.isEmpty()) {
+            reject(takeOrder, "no-match");
         } else {
-            Instant tradeTime = Instant.now();
-            for (Order provideOrder : matchedOrders) {
-                Trade trade = Trade.create(product.symbol(),
-                        1,
-                        provideOrder.price(),
-                        tradeTime);
-                LGR.info("Trade: {}", trade.toString());
-                this.outboundTradeQueue.offer(trade);
-            }
+            trade(product, fills);
         }
     }
 
@@ -192,40 +686,137 @@ public class Engine implements Callable<Integer> {
      * Limit Order Execution
      *
      * Take the quantity from the other side of the OrderBook but only if
-     * the price is equal or better than the limit price.
+     * the price is equal or better than the limit price. The quantity that
+     * could not be filled (leaves) is placed in the OrderBook.
      *
      * @param takeOrder
+     * @param orderBook
      */
-    private void limit(Order takeOrder) {
-        LGR.info("Order: {}", takeOrder.toString());
+    private void limit(Order takeOrder, OrderBook orderBook) {
+        if (!this.replaying) this.log.order(takeOrder);
 
         int takeQty = takeOrder.orderQty();
-        double takePrice = takeOrder.price();
-        Product product = Products.find(takeOrder.symbol());
+        Product product = orderBook.product();
+
+        if (orderBook.contains(takeOrder.orderId())) {
+            reject(takeOrder, "duplicate-order-id");
+            return;
+        }
 
-        List<Order> matchedOrders = this.orderBooks.get(product)
-                .take(takeOrder.side().otherSide(), takeQty, takePrice);
+        List<OrderBook.Fill> fills = orderBook.take(takeOrder.side().otherSide(), takeQty,
+                orderBook.priceTicks(takeOrder));
 
-        if (matchedOrders.isEmpty()) {
-            this.orderBooks.get(product).accept(takeOrder);
-        } else {
-            Instant tradeTime = Instant.now();
-            for (Order provideOrder : matchedOrders) {
-                Trade trade = Trade.create(product.symbol(),
-                        1,
-                        provideOrder.price(),
-                        tradeTime);
-                LGR.info("Trade: {}", trade.toString());
-                this.outboundTradeQueue.offer(trade);
+        int leavesQty = takeQty - trade(product, fills);
+        if (leavesQty > 0) {
+            orderBook.accept(takeOrder, leavesQty);
+        }
+    }
+
+    /**
+     * Cancel Order
+     *
+     * Removes the resting order with the id from the OrderBook (rejected
+     * when there is none, e.g. it has been filled).
+     *
+     * @param cancelOrder
+     * @param orderBook
+     */
+    private void cancel(Order cancelOrder, OrderBook orderBook) {
+        if (!this.replaying) this.log.order(cancelOrder);
+
+        if (!orderBook.cancel(cancelOrder.orderId())) {
+            reject(cancelOrder, "unknown-order-id");
+        }
+    }
+
+    /**
+     * Cancel-Replace Order
+     *
+     * Removes the resting order with the id and enters the replacement as a
+     * limit order (with the same id). The replacement does not keep the
+     * resting order's place in the queue.
+     *
+     * @param replaceOrder
+     * @param orderBook
+     */
+    private void replace(Order replaceOrder, OrderBook orderBook) {
+        if (!orderBook.cancel(replaceOrder.orderId())) {
+            if (!this.replaying) this.log.order(replaceOrder);
+            reject(replaceOrder, "unknown-order-id");
+            return;
+        }
+        limit(replaceOrder, orderBook);
+    }
+
+    private void reject(Order order, String reason) {
+        if (this.replaying) return;
+        Order.Reject rejectedOrder = this.rejectPool.acquire().set(order, reason);
+        this.log.reject(rejectedOrder);
+        this.outboundRejectedQueue.offer(rejectedOrder);
+    }
+
+    /**
+     * A Trade for each Fill (at the price of the resting order)
+     *
+     * @param product
+     * @param fills
+     * @return total quantity filled
+     */
+    private int trade(Product product, List<OrderBook.Fill> fills) {
+        int filledQty = 0;
+        if (fills.isEmpty()) {
+            return filledQty;
+        }
+        if (this.replaying) {
+            for (int i = 0; i < fills.size(); i++) {
+                filledQty += fills.get(i).quantity();
             }
+            return filledQty;
+        }
+        Instant tradeTime = Instant.now();
+        for (int i = 0; i < fills.size(); i++) {
+            OrderBook.Fill fill = fills.get(i);
+            Trade trade = this.tradePool.acquire().set(product.symbol(),
+                    fill.quantity(),
+                    fill.priceTicks(),
+                    fill.priceScale(),
+                    tradeTime);
+            this.log.trade(trade);
+            this.outboundTradeQueue.offer(trade);
+            filledQty += fill.quantity();
         }
+        return filledQty;
     }
 
     /**
+     * Top levels of a symbol's OrderBook that can be read from any thread
+     * while the Engine is running (see DepthView)
      *
+     * @param symbol
      * @return
+     * @throws Exception when the symbol is unknown or OrderBookDepth is not configured
      */
-    public <E> Supplier<E> getSupplier(Class<E> classOfE) throws Exception {
+    public DepthView getDepthView(String symbol) throws Exception {
+        for (OrderBook orderBook : this.orderBooks.values()) {
+            if (orderBook.product().symbol().equals(symbol)) {
+                if (orderBook.getDepthView() == null) {
+                    throw new Exception(String.format("There is no depth view for %s (%s is not set)",
+                            symbol, DepthView.LEVELS));
+                }
+                return orderBook.getDepthView();
+            }
+        }
+        throw new Exception(String.format("There is no order book for symbol: %s", symbol));
+    }
+
+    /**
+     * Outbound channel for Trades, Rejects, MarketData (LevelUpdate, TopOfBook)
+     * or PriceLevels (PriceLevels are only available after the Engine has stopped)
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <E> Outbound<E> getSupplier(Class<E> classOfE) throws Exception {
         if (classOfE.equals(OrderBook.PriceLevel.class)) {
             final Deque<OrderBook.PriceLevel> q = new ArrayDeque<>();
             if (this.loopingStopped) {
@@ -237,12 +828,32 @@ public class Engine implements Callable<Integer> {
             }
             return () -> classOfE.cast(q.poll());
         } else if (classOfE.equals(Order.Reject.class)) {
-            return () -> classOfE.cast(this.outboundRejectedQueue.poll());
+            return (Outbound<E>) this.outboundRejectedQueue;
         } else if (classOfE.equals(Trade.class)) {
-            return () -> classOfE.cast(this.outboundTradeQueue.poll());
+            return (Outbound<E>) this.outboundTradeQueue;
+        } else if (classOfE.equals(MarketData.LevelUpdate.class)) {
+            return (Outbound<E>) marketData().levelUpdates;
+        } else if (classOfE.equals(MarketData.TopOfBook.class)) {
+            return (Outbound<E>) marketData().topOfBooks;
         }
         throw new Exception(String.format("There is no supplier for entity: %s",
                 classOfE.getSimpleName()));
     }
 
+    /**
+     * Starts publishing the changes of the OrderBooks (call before the
+     * Engine is started)
+     *
+     * @return
+     */
+    private synchronized MarketData.Publisher marketData() {
+        if (this.marketData == null) {
+            this.marketData = new MarketData.Publisher();
+            for (OrderBook orderBook : this.orderBooks.values()) {
+                orderBook.setListener(this.marketData);
+            }
+        }
+        return this.marketData;
+    }
+
 }
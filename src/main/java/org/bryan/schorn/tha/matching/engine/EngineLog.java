@@ -0,0 +1,326 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.util.AsciiBuffer;
+import org.bryan.schorn.tha.matching.util.IdleStrategy;
+import org.bryan.schorn.tha.matching.util.RingBuffer;
+import org.bryan.schorn.tha.matching.util.ToString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Engine Log
+ *
+ * The Engine's per order diagnostics (Order, Trade and Rejected lines of the
+ * Engine's logger) without the formatting and the logging I/O on the
+ * matching thread.
+ *
+ * Each Engine writes to its own Channel:
+ *   Direct - logs on the matching thread (when the Engine's logger is at
+ *            INFO) and only formats what is logged. Used when there is no
+ *            EngineLog running (e.g. an Engine on its own).
+ *   Async  - encodes the record (see Encoder) into a recycled entry and
+ *            hands it over a RingBuffer to the thread running this
+ *            instance, which does the logging. The matching thread never
+ *            waits for that thread: when it has fallen a full ring behind
+ *            (or is not running) the line is dropped and counted instead
+ *            (see dropped), the trade and reject files are the audit trail.
+ *
+ * Either way the lines are the same as before and come from the Engine's
+ * logger, so the logging configuration decides where they go. With
+ * sampling only every Nth order, trade and reject is logged (0 turns them
+ * off, the Engine's logger level does as well).
+ *
+ * Properties:
+ *   EngineLogSampling=1
+ *   EngineLogRingSize=65536
+ */
+public class EngineLog implements Callable<Integer> {
+    // the lines are the Engine's
+    static private final Logger LGR = LoggerFactory.getLogger(Engine.class);
+
+    static public final String SAMPLING = "EngineLogSampling";
+    static public final String RING_SIZE = "EngineLogRingSize";
+
+    static private final String ORDER_COLUMNS = "symbol,side,type,price,timestamp";
+    static private final String TRADE_COLUMNS = "symbol,price,timestamp";
+    static private final String REJECT_COLUMNS = "symbol,side,type,price,timestamp,reason";
+
+    /**
+     * Sampling configured in properties (1 when not specified)
+     *
+     * @param properties
+     * @return
+     */
+    static int sampling(Properties properties) {
+        return Integer.parseInt(properties.getProperty(SAMPLING, "1").trim());
+    }
+
+    /**
+     * Where an Engine sends its diagnostics (the Engine's thread only)
+     */
+    static abstract class Channel {
+        private final int sampling;
+        private int orders = 0;
+        private int trades = 0;
+        private int rejects = 0;
+
+        Channel(int sampling) {
+            this.sampling = sampling;
+        }
+
+        void order(Order order) {
+            if (this.sampling > 0 && ++this.orders >= this.sampling) {
+                this.orders = 0;
+                if (LGR.isInfoEnabled()) logOrder(order);
+            }
+        }
+
+        void trade(Trade trade) {
+            if (this.sampling > 0 && ++this.trades >= this.sampling) {
+                this.trades = 0;
+                if (LGR.isInfoEnabled()) logTrade(trade);
+            }
+        }
+
+        void reject(Order.Reject reject) {
+            if (this.sampling > 0 && ++this.rejects >= this.sampling) {
+                this.rejects = 0;
+                if (LGR.isInfoEnabled()) logReject(reject);
+            }
+        }
+
+        abstract void logOrder(Order order);
+        abstract void logTrade(Trade trade);
+        abstract void logReject(Order.Reject reject);
+    }
+
+    /**
+     * Logs on the calling thread
+     */
+    static class Direct extends Channel {
+        Direct(int sampling) {
+            super(sampling);
+        }
+
+        @Override
+        void logOrder(Order order) {
+            LGR.info("Order: {}", order);
+        }
+
+        @Override
+        void logTrade(Trade trade) {
+            LGR.info("Trade: {}", trade);
+        }
+
+        @Override
+        void logReject(Order.Reject reject) {
+            LGR.info("Rejected: {}", reject);
+        }
+    }
+
+    /**
+     * Line encoded by the Engine's thread
+     */
+    static final class Entry implements EventPool.Pooled {
+        private final EventPool<Entry> pool;
+        private final AsciiBuffer buffer = new AsciiBuffer(128);
+
+        Entry(EventPool<Entry> pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void release() {
+            this.buffer.clear();
+            this.pool.release(this);
+        }
+    }
+
+    /**
+     * Hands the encoded lines to the EngineLog's thread
+     */
+    final class Async extends Channel {
+        private final RingBuffer<Entry> ring = new RingBuffer<>(EngineLog.this.ringSize);
+        private final EventPool<Entry> pool = new EventPool<>(Entry::new, EngineLog.this.ringSize);
+        private final Encoder<Order> orderEncoder;
+        private final Encoder<Trade> tradeEncoder;
+        private final Encoder<Order.Reject> rejectEncoder;
+        // entry of the last dropped line (reused by the next one)
+        private Entry spare = null;
+        // written by the Engine's thread only
+        private volatile long dropped = 0L;
+
+        Async(int sampling) throws Exception {
+            super(sampling);
+            this.orderEncoder = Encoder.create(Order.class, ORDER_COLUMNS);
+            this.tradeEncoder = Encoder.create(Trade.class, TRADE_COLUMNS);
+            this.rejectEncoder = Encoder.create(Order.Reject.class, REJECT_COLUMNS);
+        }
+
+        @Override
+        void logOrder(Order order) {
+            Entry entry = acquire();
+            this.orderEncoder.encode(order, entry.buffer.put("Order: "));
+            publish(entry);
+        }
+
+        @Override
+        void logTrade(Trade trade) {
+            Entry entry = acquire();
+            this.tradeEncoder.encode(trade, entry.buffer.put("Trade: "));
+            publish(entry);
+        }
+
+        @Override
+        void logReject(Order.Reject reject) {
+            Entry entry = acquire();
+            this.rejectEncoder.encode(reject, entry.buffer.put("Rejected: "));
+            publish(entry);
+        }
+
+        private Entry acquire() {
+            Entry entry = this.spare;
+            if (entry == null) {
+                return this.pool.acquire();
+            }
+            this.spare = null;
+            entry.buffer.clear();
+            return entry;
+        }
+
+        // drops the line when the ring is full (the matching thread does not wait)
+        private void publish(Entry entry) {
+            if (!this.ring.offer(entry)) {
+                this.spare = entry;
+                ++this.dropped;
+            }
+        }
+
+        /**
+         * Logs the lines that are waiting (EngineLog's thread)
+         *
+         * @return number of lines logged
+         */
+        int drain() {
+            int count = 0;
+            Entry entry;
+            while ((entry = this.ring.poll()) != null) {
+                LGR.info(entry.buffer.toString());
+                entry.release();
+                ++count;
+            }
+            return count;
+        }
+    }
+
+    private final int sampling;
+    private final int ringSize;
+    private final List<Async> channels = new ArrayList<>();
+    private final IdleStrategy idleStrategy = new IdleStrategy.Blocking(TimeUnit.MILLISECONDS.toNanos(10));
+    private volatile boolean stop = false;
+
+    // ctor
+    public EngineLog(Properties properties) {
+        this.sampling = sampling(properties);
+        this.ringSize = Integer.parseInt(properties.getProperty(RING_SIZE,
+                String.valueOf(RingBuffer.DEFAULT_CAPACITY)).trim());
+    }
+
+    /**
+     * New channel for an Engine (before this instance is started)
+     *
+     * @return
+     * @throws Exception
+     */
+    synchronized Channel newChannel() throws Exception {
+        Async channel = new Async(this.sampling);
+        this.channels.add(channel);
+        return channel;
+    }
+
+    public void stop() {
+        this.stop = true;
+        this.idleStrategy.signal();
+    }
+
+    /**
+     * Lines dropped by the channels because the ring was full
+     *
+     * @return
+     */
+    public long dropped() {
+        long dropped = 0L;
+        synchronized (this) {
+            for (Async channel : this.channels) {
+                dropped += channel.dropped;
+            }
+        }
+        return dropped;
+    }
+
+    @Override
+    public Integer call() {
+        int count = 0;
+        try {
+            List<Async> channels;
+            synchronized (this) {
+                channels = new ArrayList<>(this.channels);
+            }
+            while (true) {
+                // read before draining so nothing is left behind after stop()
+                boolean stopping = this.stop;
+                int drained = 0;
+                for (Async channel : channels) {
+                    drained += channel.drain();
+                }
+                count += drained;
+                if (drained == 0) {
+                    if (stopping) {
+                        break;
+                    }
+                    this.idleStrategy.idle();
+                }
+            }
+        } catch (Exception ex) {
+            LoggerFactory.getLogger(EngineLog.class).error(ToString.stackTrace(ex));
+        }
+        long dropped = dropped();
+        if (dropped > 0) {
+            LoggerFactory.getLogger(EngineLog.class).warn("{} lines dropped (the log fell a full ring behind)", dropped);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Price;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.util.RingBuffer;
+
+import java.time.Instant;
+import java.util.function.Function;
+
+/**
+ * Event Pool
+ *
+ * Reusable outbound events (Trades and Rejects) so the Engine does not
+ * allocate one for every fill or reject. The Engine's thread acquires an
+ * event and the reader of the outbound channel releases it (see
+ * Engine.Outbound.release) once it is done with it, which puts it on a
+ * return ring for the Engine to pick up again. So each pool has exactly one
+ * acquiring thread and one releasing thread.
+ *
+ * An event is only reused after it has been released: readers that keep
+ * the events (and never release them) are safe, the Engine then simply
+ * allocates new ones. Events released while the return ring is full are
+ * left to the garbage collector.
+ *
+ * @param <E>
+ */
+final class EventPool<E extends EventPool.Pooled> {
+
+    static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /**
+     * An event that can go back to its pool
+     */
+    interface Pooled {
+        void release();
+    }
+
+    private final RingBuffer<E> returned;
+    private final Function<EventPool<E>, E> factory;
+
+    EventPool(Function<EventPool<E>, E> factory) {
+        this(factory, DEFAULT_CAPACITY);
+    }
+
+    EventPool(Function<EventPool<E>, E> factory, int capacity) {
+        this.factory = factory;
+        this.returned = new RingBuffer<>(capacity);
+    }
+
+    /**
+     * A released event or a new one (Engine's thread only)
+     *
+     * @return
+     */
+    E acquire() {
+        E event = this.returned.poll();
+        return event != null ? event : this.factory.apply(this);
+    }
+
+    /**
+     * Event is back (reader's thread only)
+     *
+     * @param event
+     */
+    void release(E event) {
+        this.returned.offer(event);
+    }
+
+    /**
+     * Pooled Trade
+     */
+    static final class PooledTrade implements Trade, Pooled {
+        private final EventPool<PooledTrade> pool;
+        private String symbol;
+        private int quantity;
+        private long priceTicks;
+        private int priceScale;
+        private Instant timestamp;
+
+        PooledTrade(EventPool<PooledTrade> pool) {
+            this.pool = pool;
+        }
+
+        PooledTrade set(String symbol, int quantity, long priceTicks, int priceScale, Instant timestamp) {
+            this.symbol = symbol;
+            this.quantity = quantity;
+            this.priceTicks = priceTicks;
+            this.priceScale = priceScale;
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        @Override
+        public void release() {
+            this.timestamp = null;
+            this.pool.release(this);
+        }
+
+        public String symbol() { return this.symbol; }
+
+        public Integer quantity() {
+            return this.quantity;
+        }
+
+        public long priceTicks() {
+            return this.priceTicks;
+        }
+
+        public int priceScale() {
+            return this.priceScale;
+        }
+
+        public Instant timestamp() {
+            return this.timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s,%s,%d.%d",
+                    this.symbol,
+                    Price.toString(this.priceTicks, this.priceScale),
+                    this.timestamp.getEpochSecond(),
+                    this.timestamp.getNano());
+        }
+    }
+
+    /**
+     * Pooled Reject
+     */
+    static final class PooledReject implements Order.Reject, Pooled {
+        private final EventPool<PooledReject> pool;
+        private Order order;
+        private String reason;
+
+        PooledReject(EventPool<PooledReject> pool) {
+            this.pool = pool;
+        }
+
+        PooledReject set(Order order, String reason) {
+            this.order = order;
+            this.reason = reason;
+            return this;
+        }
+
+        @Override
+        public void release() {
+            this.order = null;
+            this.reason = null;
+            this.pool.release(this);
+        }
+
+        public Order order() { return this.order; }
+
+        public String reason() { return this.reason; }
+
+        @Override
+        public String toString() {
+            return String.format("%s,%s", this.order.toString(), this.reason());
+        }
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * OrderBook with the prices kept as long ticks (of the Product's price scale)
+ * in a ladder: an array of price levels indexed by the tick offset from the
+ * bottom of the ladder. The orders of a price level are kept in an intrusive
+ * doubly-linked FIFO list (head/tail per level) of recycled nodes, so a
+ * cancel is an index lookup and an unlink, along with the running
+ * total quantity and order count of the level.
+ *
+ * Finding a level is an array index (no boxing, no tree walk) and takes walk
+ * the ladder from the best price. This suits books that are dense around the
+ * touch; the ladder grows to cover the range of resting prices (empty levels
+ * are skipped one tick at a time) up to a maximum span. Prices beyond the
+ * span are kept in a sparse overflow map of levels instead, so a far-away
+ * price costs a tree node rather than a ladder doubling towards it. An
+ * empty ladder is re-centered on the next price it is given (taking back
+ * the overflow levels that are now within it).
+ *
+ * Properties:
+ *   OrderBookLadderSize=1024        (initial number of levels per side)
+ *   OrderBookLadderMaxSize=65536    (maximum number of levels per side)
+ */
+public class LadderOrderBook extends OrderBook {
+
+    static public final String LADDER_SIZE = "OrderBookLadderSize";
+    static public final String LADDER_MAX_SIZE = "OrderBookLadderMaxSize";
+    static private final int DEFAULT_LADDER_SIZE = 1024;
+    static private final int DEFAULT_LADDER_MAX_SIZE = 65536;
+
+    private Ladder buys = new Ladder(true, DEFAULT_LADDER_SIZE, DEFAULT_LADDER_MAX_SIZE);
+    private Ladder sells = new Ladder(false, DEFAULT_LADDER_SIZE, DEFAULT_LADDER_MAX_SIZE);
+
+    public LadderOrderBook(Product product) {
+        super(product);
+    }
+
+    @Override
+    protected void setProperties(Properties properties) {
+        int ladderSize = Integer.parseInt(properties.getProperty(LADDER_SIZE,
+                String.valueOf(DEFAULT_LADDER_SIZE)));
+        int maxSize = Integer.parseInt(properties.getProperty(LADDER_MAX_SIZE,
+                String.valueOf(DEFAULT_LADDER_MAX_SIZE)));
+        ladderSize = Math.min(ladderSize, maxSize);
+        this.buys = new Ladder(true, ladderSize, maxSize);
+        this.sells = new Ladder(false, ladderSize, maxSize);
+    }
+
+    @Override
+    void accept(Order order, int leavesQty) {
+        Ladder ladder = order.side() == Side.BUY ? this.buys : this.sells;
+        RestingOrder restingOrder = newRestingOrder(order, leavesQty);
+        ladder.add(restingOrder.priceTicks, restingOrder);
+        bookChanged();
+    }
+
+    @Override
+    List<Fill> take(Side side, int quantity, long price) {
+        List<Fill> fills = startTake();
+        Ladder ladder = side == Side.BUY ? this.buys : this.sells;
+        ladder.take(quantity, price > 0, price);
+        bookChanged();
+        return fills;
+    }
+
+    @Override
+    long bestPriceTicks(Side side) {
+        Ladder ladder = side == Side.BUY ? this.buys : this.sells;
+        Level level = ladder.bestOverflow();
+        return level != null ? level.ticks : ladder.best < 0 ? 0L : ladder.ticks(ladder.best);
+    }
+
+    @Override
+    int bestQuantity(Side side) {
+        Ladder ladder = side == Side.BUY ? this.buys : this.sells;
+        Level level = ladder.bestOverflow();
+        return level != null ? level.quantity : ladder.best < 0 ? 0 : ladder.quantities[ladder.best];
+    }
+
+    @Override
+    void forEach(Side side, Consumer<RestingOrder> consumer) {
+        Ladder ladder = side == Side.BUY ? this.buys : this.sells;
+        for (Level level : ladder.betterOverflow()) {
+            for (RestingOrder restingOrder = level.head; restingOrder != null; restingOrder = restingOrder.next) {
+                consumer.accept(restingOrder);
+            }
+        }
+        for (int i = ladder.best; i >= 0; i += ladder.step) {
+            for (RestingOrder restingOrder = ladder.heads[i]; restingOrder != null; restingOrder = restingOrder.next) {
+                consumer.accept(restingOrder);
+            }
+            if (i == ladder.worst) break;
+        }
+        for (Level level : ladder.worseOverflow()) {
+            for (RestingOrder restingOrder = level.head; restingOrder != null; restingOrder = restingOrder.next) {
+                consumer.accept(restingOrder);
+            }
+        }
+    }
+
+    @Override
+    int depth(Side side, long[] priceTicks, int[] quantities, int[] orders) {
+        Ladder ladder = side == Side.BUY ? this.buys : this.sells;
+        int count = 0;
+        for (Level level : ladder.betterOverflow()) {
+            if (count == priceTicks.length) return count;
+            priceTicks[count] = level.ticks;
+            quantities[count] = level.quantity;
+            orders[count] = level.count;
+            ++count;
+        }
+        for (int i = ladder.best; i >= 0 && count < priceTicks.length; i += ladder.step) {
+            if (ladder.counts[i] > 0) {
+                priceTicks[count] = ladder.ticks(i);
+                quantities[count] = ladder.quantities[i];
+                orders[count] = ladder.counts[i];
+                ++count;
+            }
+            if (i == ladder.worst) break;
+        }
+        for (Level level : ladder.worseOverflow()) {
+            if (count == priceTicks.length) return count;
+            priceTicks[count] = level.ticks;
+            quantities[count] = level.quantity;
+            orders[count] = level.count;
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    List<PriceLevel> getPriceLevels() {
+        List<PriceLevel> list = new ArrayList<>();
+        String symbol = this.product.symbol();
+        // sells highest to lowest
+        for (Level level : this.sells.overflow.descendingMap().values()) {
+            if (level.ticks > this.sells.ticks(this.sells.heads.length - 1)) {
+                list.add(new PriceLevel(symbol, level.ticks, this.priceScale, 0, level.quantity));
+            }
+        }
+        for (int i = this.sells.worst; i >= 0 && i >= this.sells.best; i--) {
+            int qty = this.sells.quantities[i];
+            if (qty > 0) {
+                list.add(new PriceLevel(symbol, this.sells.ticks(i), this.priceScale, 0, qty));
+            }
+        }
+        for (Level level : this.sells.overflow.descendingMap().values()) {
+            if (level.ticks < this.sells.baseTicks) {
+                list.add(new PriceLevel(symbol, level.ticks, this.priceScale, 0, level.quantity));
+            }
+        }
+        // buys highest to lowest
+        for (Level level : this.buys.betterOverflow()) {
+            list.add(new PriceLevel(symbol, level.ticks, this.priceScale, level.quantity, 0));
+        }
+        for (int i = this.buys.best; i >= 0 && i >= this.buys.worst; i--) {
+            int qty = this.buys.quantities[i];
+            if (qty > 0) {
+                list.add(new PriceLevel(symbol, this.buys.ticks(i), this.priceScale, qty, 0));
+            }
+        }
+        for (Level level : this.buys.worseOverflow()) {
+            list.add(new PriceLevel(symbol, level.ticks, this.priceScale, level.quantity, 0));
+        }
+        return list;
+    }
+
+    @Override
+    void remove(RestingOrder restingOrder) {
+        Ladder ladder = restingOrder.side() == Side.BUY ? this.buys : this.sells;
+        ladder.remove(restingOrder);
+    }
+
+    @Override
+    void recycle() {
+        this.buys.clear();
+        this.sells.clear();
+        recycled();
+    }
+
+    /**
+     * A price level outside of the ladder's span
+     */
+    static private class Level {
+        private final long ticks;
+        private RestingOrder head = null;
+        private RestingOrder tail = null;
+        private int quantity = 0;
+        private int count = 0;
+
+        Level(long ticks) {
+            this.ticks = ticks;
+        }
+    }
+
+    /**
+     * One side of the book.
+     *
+     * Level i is at price (baseTicks + i). 'best' and 'worst' are the indices of
+     * the best and worst non-empty levels of the ladder (-1 when the ladder is
+     * empty). Buys are descending (best is the highest index), sells are
+     * ascending. The overflow levels (in priority order) are all outside of
+     * the ladder's span, either better or worse than all of the ladder.
+     */
+    private class Ladder {
+        private final Side side;
+        private final boolean descending;
+        private final int step;
+        private final int maxSize;
+        private long baseTicks = 0L;
+        private RestingOrder[] heads;
+        private RestingOrder[] tails;
+        private int[] quantities;
+        private int[] counts;
+        private int best = -1;
+        private int worst = -1;
+        private final TreeMap<Long, Level> overflow;
+
+        Ladder(boolean descending, int size, int maxSize) {
+            this.side = descending ? Side.BUY : Side.SELL;
+            this.descending = descending;
+            this.step = descending ? -1 : 1;
+            this.maxSize = maxSize;
+            this.heads = new RestingOrder[size];
+            this.tails = new RestingOrder[size];
+            this.quantities = new int[size];
+            this.counts = new int[size];
+            this.overflow = descending ? new TreeMap<>(Collections.reverseOrder()) : new TreeMap<>();
+        }
+
+        long ticks(int index) {
+            return this.baseTicks + index;
+        }
+
+        /**
+         * Is the price 'a' better than the price 'b'
+         */
+        boolean isBetter(long a, long b) {
+            return this.descending ? a > b : a < b;
+        }
+
+        /**
+         * Best overflow level when it is better than the ladder (or the ladder is empty)
+         */
+        Level bestOverflow() {
+            if (this.overflow.isEmpty()) {
+                return null;
+            }
+            Level level = this.overflow.firstEntry().getValue();
+            return this.best < 0 || isBetter(level.ticks, ticks(this.best)) ? level : null;
+        }
+
+        /**
+         * Overflow levels better than the ladder's span (in priority order)
+         */
+        Collection<Level> betterOverflow() {
+            if (this.overflow.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return this.overflow.headMap(this.descending ? ticks(this.heads.length - 1) : this.baseTicks, false)
+                    .values();
+        }
+
+        /**
+         * Overflow levels worse than the ladder's span (in priority order)
+         */
+        Collection<Level> worseOverflow() {
+            if (this.overflow.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return this.overflow.tailMap(this.descending ? this.baseTicks : ticks(this.heads.length - 1), false)
+                    .values();
+        }
+
+        void add(long ticks, RestingOrder restingOrder) {
+            int index = index(ticks);
+            if (index < 0) {
+                addOverflow(ticks, restingOrder);
+                return;
+            }
+            if (this.heads[index] == null) {
+                this.heads[index] = restingOrder;
+            } else {
+                this.tails[index].next = restingOrder;
+                restingOrder.prev = this.tails[index];
+            }
+            this.tails[index] = restingOrder;
+            this.quantities[index] += restingOrder.leavesQty;
+            ++this.counts[index];
+            levelChanged(this.side, ticks, this.quantities[index], this.counts[index], this.counts[index] - 1);
+            included(index);
+        }
+
+        // index became non-empty
+        private void included(int index) {
+            if (this.best < 0) {
+                this.best = index;
+                this.worst = index;
+            } else if (isBetter(index, this.best)) {
+                this.best = index;
+            } else if (isBetter(this.worst, index)) {
+                this.worst = index;
+            }
+        }
+
+        private void addOverflow(long ticks, RestingOrder restingOrder) {
+            Level level = this.overflow.get(ticks);
+            if (level == null) {
+                level = new Level(ticks);
+                this.overflow.put(ticks, level);
+            }
+            if (level.head == null) {
+                level.head = restingOrder;
+            } else {
+                level.tail.next = restingOrder;
+                restingOrder.prev = level.tail;
+            }
+            level.tail = restingOrder;
+            level.quantity += restingOrder.leavesQty;
+            ++level.count;
+            levelChanged(this.side, ticks, level.quantity, level.count, level.count - 1);
+        }
+
+        /**
+         * Walks the levels from the best price (FIFO within a level) filling
+         * until the quantity is filled, the side is exhausted or (when
+         * limited) the price is worse than limitTicks.
+         */
+        void take(int takeQty, boolean limited, long limitTicks) {
+            Level level = bestOverflow();
+            while (level != null && takeQty > 0) {
+                if (limited && isBetter(limitTicks, level.ticks)) return;
+                takeQty = fillOverflow(level, takeQty);
+                level = bestOverflow();
+            }
+            for (int i = this.best; i >= 0 && takeQty > 0; i += this.step) {
+                // empty ticks in between levels are passed over
+                if (this.counts[i] > 0) {
+                    long ticks = ticks(i);
+                    if (limited && (this.descending ? ticks < limitTicks : ticks > limitTicks)) break;
+                    this.heads[i] = fill(this.heads[i], takeQty);
+                    if (this.heads[i] == null) this.tails[i] = null;
+                    takeQty -= filledQty;
+                    this.quantities[i] -= filledQty;
+                    this.counts[i] -= filledOrders;
+                    levelChanged(this.side, ticks, this.quantities[i], this.counts[i], this.counts[i] + filledOrders);
+                }
+                if (i == this.worst) break;
+            }
+            moveBest();
+            // then the overflow levels worse than the ladder
+            level = bestOverflow();
+            while (level != null && takeQty > 0) {
+                if (limited && isBetter(limitTicks, level.ticks)) return;
+                takeQty = fillOverflow(level, takeQty);
+                level = bestOverflow();
+            }
+        }
+
+        // fills from an overflow level (dropped when emptied), returns the quantity left to take
+        private int fillOverflow(Level level, int takeQty) {
+            level.head = fill(level.head, takeQty);
+            if (level.head == null) level.tail = null;
+            level.quantity -= filledQty;
+            level.count -= filledOrders;
+            levelChanged(this.side, level.ticks, level.quantity, level.count, level.count + filledOrders);
+            if (level.count == 0) {
+                this.overflow.remove(level.ticks);
+            }
+            return takeQty - filledQty;
+        }
+
+        /**
+         * Unlinks a resting order from its level
+         */
+        void remove(RestingOrder restingOrder) {
+            long offset = restingOrder.priceTicks - this.baseTicks;
+            if (offset < 0 || offset >= this.heads.length) {
+                removeOverflow(restingOrder);
+                return;
+            }
+            int index = (int) offset;
+            if (restingOrder.prev == null) {
+                this.heads[index] = restingOrder.next;
+            } else {
+                restingOrder.prev.next = restingOrder.next;
+            }
+            if (restingOrder.next == null) {
+                this.tails[index] = restingOrder.prev;
+            } else {
+                restingOrder.next.prev = restingOrder.prev;
+            }
+            restingOrder.prev = null;
+            restingOrder.next = null;
+            this.quantities[index] -= restingOrder.leavesQty;
+            --this.counts[index];
+            levelChanged(this.side, restingOrder.priceTicks, this.quantities[index], this.counts[index],
+                    this.counts[index] + 1);
+            if (this.counts[index] == 0) {
+                if (index == this.best) {
+                    moveBest();
+                } else if (index == this.worst) {
+                    // move worst back to the previous non-empty level
+                    while (this.counts[this.worst] == 0) {
+                        this.worst -= this.step;
+                    }
+                }
+            }
+        }
+
+        private void removeOverflow(RestingOrder restingOrder) {
+            Level level = this.overflow.get(restingOrder.priceTicks);
+            if (restingOrder.prev == null) {
+                level.head = restingOrder.next;
+            } else {
+                restingOrder.prev.next = restingOrder.next;
+            }
+            if (restingOrder.next == null) {
+                level.tail = restingOrder.prev;
+            } else {
+                restingOrder.next.prev = restingOrder.prev;
+            }
+            restingOrder.prev = null;
+            restingOrder.next = null;
+            level.quantity -= restingOrder.leavesQty;
+            --level.count;
+            levelChanged(this.side, level.ticks, level.quantity, level.count, level.count + 1);
+            if (level.count == 0) {
+                this.overflow.remove(level.ticks);
+            }
+        }
+
+        // move best to the next non-empty level
+        private void moveBest() {
+            while (this.best >= 0 && this.counts[this.best] == 0) {
+                if (this.best == this.worst) {
+                    this.best = -1;
+                    this.worst = -1;
+                } else {
+                    this.best += this.step;
+                }
+            }
+        }
+
+        /**
+         * Index of the level for ticks, growing/re-centering the ladder when
+         * the price is outside of it (-1 when it would be grown beyond the
+         * maximum size, the price then goes to the overflow).
+         */
+        private int index(long ticks) {
+            long offset = ticks - this.baseTicks;
+            if (offset >= 0 && offset < this.heads.length) {
+                return (int) offset;
+            }
+            if (this.best < 0) {
+                // nothing resting in the ladder so it can simply be centered on this price
+                this.baseTicks = ticks - this.heads.length / 2;
+            } else if (!grow(ticks)) {
+                return -1;
+            }
+            includeOverflow();
+            return (int) (ticks - this.baseTicks);
+        }
+
+        private boolean grow(long ticks) {
+            long low = Math.min(this.baseTicks, ticks);
+            long high = Math.max(this.baseTicks + this.heads.length - 1, ticks);
+            long needed = high - low + 1;
+            if (needed > this.maxSize) {
+                return false;
+            }
+            int size = this.heads.length;
+            while (size < needed) {
+                size = (int) Math.min(2L * size, this.maxSize);
+            }
+            // leave the extra room on the side the ladder is growing towards
+            long newBase = ticks < this.baseTicks ? high - size + 1 : low;
+            int shift = (int) (this.baseTicks - newBase);
+            RestingOrder[] heads = new RestingOrder[size];
+            RestingOrder[] tails = new RestingOrder[size];
+            System.arraycopy(this.heads, 0, heads, shift, this.heads.length);
+            System.arraycopy(this.tails, 0, tails, shift, this.tails.length);
+            int[] quantities = new int[size];
+            int[] counts = new int[size];
+            System.arraycopy(this.quantities, 0, quantities, shift, this.quantities.length);
+            System.arraycopy(this.counts, 0, counts, shift, this.counts.length);
+            this.heads = heads;
+            this.tails = tails;
+            this.quantities = quantities;
+            this.counts = counts;
+            this.baseTicks = newBase;
+            this.best += shift;
+            this.worst += shift;
+            return true;
+        }
+
+        // moves the overflow levels within the ladder's (new) span into the ladder
+        private void includeOverflow() {
+            Iterator<Map.Entry<Long, Level>> iterator = this.overflow.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Level level = iterator.next().getValue();
+                long offset = level.ticks - this.baseTicks;
+                if (offset >= 0 && offset < this.heads.length) {
+                    int index = (int) offset;
+                    this.heads[index] = level.head;
+                    this.tails[index] = level.tail;
+                    this.quantities[index] = level.quantity;
+                    this.counts[index] = level.count;
+                    included(index);
+                    iterator.remove();
+                }
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < this.heads.length; i++) {
+                freeRestingOrders(this.heads[i]);
+            }
+            for (Level level : this.overflow.values()) {
+                freeRestingOrders(level.head);
+            }
+            this.overflow.clear();
+            Arrays.fill(this.heads, null);
+            Arrays.fill(this.tails, null);
+            Arrays.fill(this.quantities, 0);
+            Arrays.fill(this.counts, 0);
+            this.best = -1;
+            this.worst = -1;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Price;
+import org.bryan.schorn.tha.matching.model.Side;
+
+/**
+ * Market Data
+ *
+ * Incremental updates of the OrderBooks as orders are accepted and taken:
+ *   LevelUpdate - a price level was added, changed (quantity/orders) or
+ *                 deleted (L2 deltas)
+ *   TopOfBook   - the best bid and/or offer (price or quantity) changed
+ *
+ * Subscribers read them from the Engine (getSupplier) like Trades and
+ * Rejects; the Engine only starts publishing once they are asked for. The
+ * updates of a symbol are in the order they happened (the level updates
+ * of a change come before its top of book update). The updates are pooled
+ * (released by the reader, see Engine.Outbound.release).
+ */
+public final class MarketData {
+
+    public enum Action {
+        ADD, CHANGE, DELETE
+    }
+
+    private MarketData() {
+    }
+
+    /**
+     * Price level update
+     */
+    static public final class LevelUpdate implements EventPool.Pooled {
+        private final EventPool<LevelUpdate> pool;
+        private String symbol;
+        private Side side;
+        private Action action;
+        private long priceTicks;
+        private int priceScale;
+        private int quantity;
+        private int orders;
+
+        LevelUpdate(EventPool<LevelUpdate> pool) {
+            this.pool = pool;
+        }
+
+        LevelUpdate set(String symbol, Side side, Action action, long priceTicks, int priceScale,
+                        int quantity, int orders) {
+            this.symbol = symbol;
+            this.side = side;
+            this.action = action;
+            this.priceTicks = priceTicks;
+            this.priceScale = priceScale;
+            this.quantity = quantity;
+            this.orders = orders;
+            return this;
+        }
+
+        @Override
+        public void release() {
+            this.pool.release(this);
+        }
+
+        public String symbol() { return this.symbol; }
+        public Side side() { return this.side; }
+        public Action action() { return this.action; }
+        public long priceTicks() { return this.priceTicks; }
+        public int priceScale() { return this.priceScale; }
+        /**
+         * Total quantity of the level (0 when deleted)
+         */
+        public int quantity() { return this.quantity; }
+        /**
+         * Number of orders of the level (0 when deleted)
+         */
+        public int orders() { return this.orders; }
+
+        @Override
+        public String toString() {
+            return String.format("%s,%s,%s,%s,%d,%d", this.symbol, this.side, this.action,
+                    Price.toString(this.priceTicks, this.priceScale), this.quantity, this.orders);
+        }
+    }
+
+    /**
+     * Best bid and offer (price 0 and quantity 0 when a side is empty)
+     */
+    static public final class TopOfBook implements EventPool.Pooled {
+        private final EventPool<TopOfBook> pool;
+        private String symbol;
+        private int priceScale;
+        private long bidTicks;
+        private int bidQuantity;
+        private long offerTicks;
+        private int offerQuantity;
+
+        TopOfBook(EventPool<TopOfBook> pool) {
+            this.pool = pool;
+        }
+
+        TopOfBook set(String symbol, int priceScale, long bidTicks, int bidQuantity,
+                      long offerTicks, int offerQuantity) {
+            this.symbol = symbol;
+            this.priceScale = priceScale;
+            this.bidTicks = bidTicks;
+            this.bidQuantity = bidQuantity;
+            this.offerTicks = offerTicks;
+            this.offerQuantity = offerQuantity;
+            return this;
+        }
+
+        @Override
+        public void release() {
+            this.pool.release(this);
+        }
+
+        public String symbol() { return this.symbol; }
+        public int priceScale() { return this.priceScale; }
+        public long bidTicks() { return this.bidTicks; }
+        public int bidQuantity() { return this.bidQuantity; }
+        public long offerTicks() { return this.offerTicks; }
+        public int offerQuantity() { return this.offerQuantity; }
+
+        @Override
+        public String toString() {
+            return String.format("%s,%s,%d,%s,%d", this.symbol,
+                    Price.toString(this.bidTicks, this.priceScale), this.bidQuantity,
+                    Price.toString(this.offerTicks, this.priceScale), this.offerQuantity);
+        }
+    }
+
+    /**
+     * Publishes the changes of the OrderBooks to the Engine's outbound
+     * queues (Engine's thread)
+     */
+    static final class Publisher implements OrderBook.Listener {
+        final Engine.OutboundQueue<LevelUpdate> levelUpdates = new Engine.OutboundQueue<>();
+        final Engine.OutboundQueue<TopOfBook> topOfBooks = new Engine.OutboundQueue<>();
+        private final EventPool<LevelUpdate> levelUpdatePool = new EventPool<>(LevelUpdate::new);
+        private final EventPool<TopOfBook> topOfBookPool = new EventPool<>(TopOfBook::new);
+
+        @Override
+        public void level(OrderBook orderBook, Side side, Action action, long priceTicks, int quantity, int orders) {
+            this.levelUpdates.offer(this.levelUpdatePool.acquire().set(orderBook.product().symbol(), side, action,
+                    priceTicks, orderBook.priceScale, quantity, orders));
+        }
+
+        @Override
+        public void topOfBook(OrderBook orderBook, long bidTicks, int bidQuantity, long offerTicks, int offerQuantity) {
+            this.topOfBooks.offer(this.topOfBookPool.acquire().set(orderBook.product().symbol(), orderBook.priceScale,
+                    bidTicks, bidQuantity, offerTicks, offerQuantity));
+        }
+
+        void clear() {
+            this.levelUpdates.clear();
+            this.topOfBooks.clear();
+        }
+    }
+}
@@ -26,8 +26,11 @@
 package org.bryan.schorn.tha.matching.engine;
 
 import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Price;
 import org.bryan.schorn.tha.matching.model.Product;
 import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.util.ClassLocator;
+import org.bryan.schorn.tha.matching.util.LongIndex;
 
 import java.io.IOException;
 import java.io.Writer;
@@ -41,39 +44,84 @@ import java.util.function.Consumer;
  * 1 Product -> 1 OrderBook
  *
  * This is not an 'ideal' OrderBook as it's single purpose is to service
- * the Engine and is not designed for publishing OrderBook data.
+ * the Engine. Its changes (level deltas and top of book) are told to a
+ * Listener as they happen, which the Engine publishes (see MarketData).
  *
- * A true OrderBook structure is beyond the scope of a 3-hour project.
+ * Prices are ticks at the Product's price scale (see Price).
+ *
+ * The implementation is chosen in application.properties:
+ *   OrderBook=org.bryan.schorn.tha.matching.engine.TreeOrderBook   (default)
+ *   OrderBook=org.bryan.schorn.tha.matching.engine.LadderOrderBook
  */
-public class OrderBook {
+public abstract class OrderBook {
 
     static private final String SNAPSHOT_DELIM = ",";
 
-    private final Product product;
+    /**
+     * Create OrderBook for Product (implementation class from properties)
+     *
+     * @param product
+     * @param properties
+     * @return
+     * @throws Exception
+     */
+    static public OrderBook create(Product product, Properties properties) throws Exception {
+        if (properties.getProperty(OrderBook.class.getSimpleName()) == null) {
+            return new TreeOrderBook(product);
+        }
+        ClassLocator classLocator = ClassLocator.create(properties);
+        OrderBook orderBook = (OrderBook) classLocator.getImplClass(OrderBook.class)
+                .getConstructor(Product.class)
+                .newInstance(product);
+        orderBook.setProperties(properties);
+        return orderBook;
+    }
+
+    protected final Product product;
+    protected final int priceScale;
 
     /**
-     * Keep all the buys sorted by price highest to lowest.
+     * Told of the changes of the book (see MarketData)
      */
-    static final private Comparator<Double> SORT_BUYS = (a, b) -> Double.compare(b, a);
+    interface Listener {
+        void level(OrderBook orderBook, Side side, MarketData.Action action, long priceTicks, int quantity, int orders);
+        void topOfBook(OrderBook orderBook, long bidTicks, int bidQuantity, long offerTicks, int offerQuantity);
+    }
+
+    private Listener listener = null;
+    // top levels readable from other threads (null for none)
+    private DepthView depthView = null;
+    // last top of book told to the listener
+    private long bidTicks = 0L;
+    private int bidQuantity = 0;
+    private long offerTicks = 0L;
+    private int offerQuantity = 0;
+
     /**
-     * Keep all the sells sorted by price lowest to highest
+     * When the engine requests for orders they are delivered by List which is recycled for each call.
+     * ** So there can only be ONE thread per OrderBook (and Product) **
      */
-    static final private Comparator<Double> SORT_SELLS = (a, b) -> Double.compare(a, b);
+    private final List<Fill> takeList = new ArrayList<>();
+    private final List<Fill> fillPool = new ArrayList<>();
 
     /**
-     * The buys are organized by price (highest to lowest). The orders for each price are kept in FIFO queues by age.
+     * Recycled resting orders (single-threaded free list) and the ones
+     * filled by the last take request (their Fills still refer to them so
+     * they are only recycled on the next take request)
      */
-    private final TreeMap<Double, Deque<Order>> buys = new TreeMap<>(SORT_BUYS);
+    private RestingOrder freeRestingOrders = null;
+    private RestingOrder filledRestingOrders = null;
+
     /**
-     * The buys are organized by price (lowest to highest). The orders for each price are kept in FIFO queues by age.
+     * Resting orders by order id (the ones that have an id)
      */
-    private final TreeMap<Double, Deque<Order>> sells = new TreeMap<>(SORT_SELLS);
+    private final LongIndex<RestingOrder> restingOrderIndex = new LongIndex<>();
 
     /**
-     * When the engine requests for orders they are delivered by List which is recycled for each call.
-     * ** So there can only be ONE thread per OrderBook (and Product) **
+     * Quantity and number of orders completely filled by the last call to fill()
      */
-    private final List<Order> takeList = new ArrayList<>();
+    protected int filledQty = 0;
+    protected int filledOrders = 0;
 
 
     /**
@@ -81,8 +129,17 @@ public class OrderBook {
      *
      * @param product
      */
-    public OrderBook(Product product) {
+    protected OrderBook(Product product) {
         this.product = product;
+        this.priceScale = product.priceScale();
+    }
+
+    /**
+     * Implementation specific configuration
+     *
+     * @param properties
+     */
+    protected void setProperties(Properties properties) {
     }
 
     /**
@@ -94,6 +151,93 @@ public class OrderBook {
         return this.product;
     }
 
+    /**
+     * Listener for the changes of the book (null for none)
+     *
+     * @param listener
+     */
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Top levels republished after each change of the book (null for none)
+     *
+     * @param depthView
+     */
+    void setDepthView(DepthView depthView) {
+        this.depthView = depthView;
+    }
+
+    DepthView getDepthView() {
+        return this.depthView;
+    }
+
+    /**
+     * Implementations report each change of a level's totals
+     *
+     * @param side
+     * @param priceTicks
+     * @param quantity the level's quantity after the change
+     * @param orders the level's number of orders after the change
+     * @param previousOrders the level's number of orders before the change
+     */
+    protected void levelChanged(Side side, long priceTicks, int quantity, int orders, int previousOrders) {
+        if (this.listener != null) {
+            MarketData.Action action = previousOrders == 0 ? MarketData.Action.ADD
+                    : orders == 0 ? MarketData.Action.DELETE : MarketData.Action.CHANGE;
+            this.listener.level(this, side, action, priceTicks, quantity, orders);
+        }
+    }
+
+    /**
+     * Implementations call this at the end of accept() and take() so the
+     * depth view is republished and the listener is told when the top of
+     * the book has changed
+     */
+    protected void bookChanged() {
+        if (this.depthView != null) {
+            this.depthView.publish(this);
+        }
+        if (this.listener == null) {
+            return;
+        }
+        long bidTicks = bestPriceTicks(Side.BUY);
+        int bidQuantity = bestQuantity(Side.BUY);
+        long offerTicks = bestPriceTicks(Side.SELL);
+        int offerQuantity = bestQuantity(Side.SELL);
+        if (bidTicks != this.bidTicks || bidQuantity != this.bidQuantity
+                || offerTicks != this.offerTicks || offerQuantity != this.offerQuantity) {
+            this.bidTicks = bidTicks;
+            this.bidQuantity = bidQuantity;
+            this.offerTicks = offerTicks;
+            this.offerQuantity = offerQuantity;
+            this.listener.topOfBook(this, bidTicks, bidQuantity, offerTicks, offerQuantity);
+        }
+    }
+
+    /**
+     * Implementations call this when recycled (the listener is not told)
+     */
+    protected void recycled() {
+        this.bidTicks = 0L;
+        this.bidQuantity = 0;
+        this.offerTicks = 0L;
+        this.offerQuantity = 0;
+        this.restingOrderIndex.clear();
+    }
+
+    /**
+     * Price of an order in ticks of this book's price scale (rounded toward
+     * the order's passive side)
+     *
+     * @param order
+     * @return
+     */
+    protected long priceTicks(Order order) {
+        return Price.rescale(order.priceTicks(), order.priceScale(), this.priceScale, order.side());
+    }
+
     /**
      * If an order is unable to be fully matched upon entry into the Engine it will be
      * accept(ed) by the OrderBook and placed at the end of its price's queue.
@@ -101,23 +245,17 @@ public class OrderBook {
      * @param order
      */
     void accept(Order order) {
-        if (order.side() == Side.BUY) {
-            Deque<Order> q = this.buys.get(order.price());
-            if (q == null) {
-                q = new ArrayDeque<>();
-                this.buys.put(order.price(), q);
-            }
-            q.offer(order);
-        } else {
-            Deque<Order> q = this.sells.get(order.price());
-            if (q == null) {
-                q = new ArrayDeque<>();
-                this.sells.put(order.price(), q);
-            }
-            q.offer(order);
-        }
+        accept(order, order.orderQty());
     }
 
+    /**
+     * Accept the unfilled remainder (leaves quantity) of an order.
+     *
+     * @param order
+     * @param leavesQty
+     */
+    abstract void accept(Order order, int leavesQty);
+
     /**
      * The engine will process all orders first before inserting into
      * the OrderBook. The engine will submit a take request to the
@@ -126,179 +264,295 @@ public class OrderBook {
      * The engine will send a take request for the other side of the
      * order.
      *
+     * Each Fill is the quantity taken from one resting order. A resting
+     * order that is only partially filled stays at the front of its queue
+     * with its leaves quantity reduced.
+     *
      * @param side
      * @param quantity
-     * @param price
+     * @param priceTicks (0 for no limit)
      * @return
      */
-    List<Order> take(Side side, int quantity, double price) {
-        if (side == Side.BUY) {
-            return takeBuy(quantity, price);
-        } else {
-            return takeSell(quantity, price);
-        }
+    abstract List<Fill> take(Side side, int quantity, long priceTicks);
+
+    /**
+     * take() with a double price (rounded to the tick)
+     */
+    List<Fill> take(Side side, int quantity, double price) {
+        return take(side, quantity, Price.toTicks(price, this.priceScale));
     }
 
     /**
-     * The takeSell method searches the sells in price order
-     * (lowest to highest) with fifo ordering within price
-     * buckets.
+     * Top of book price (in ticks) for a side (0 when there are no orders)
      *
-     * @param takeQty
-     * @param takePrice
+     * @param side
      * @return
      */
-    private List<Order> takeSell(int takeQty, double takePrice) {
-        takeList.clear();
-        for (Double price : this.sells.keySet()) {
-            if (takePrice > 0 && price > takePrice) break;
-            Queue<Order> q = this.sells.get(price);
-            while (takeQty > 0 && !q.isEmpty()) {
-                Order order = q.peek();
-                if (takeQty >= order.orderQty()) {
-                    q.remove();
-                }
-                takeQty -= Math.min(takeQty, order.orderQty());
-                takeList.add(order);
-            }
-            if (takeQty == 0) {
-                return takeList;
-            }
+    abstract long bestPriceTicks(Side side);
+
+    /**
+     * Top of book price for a side (0.0 when there are no orders)
+     *
+     * @param side
+     * @return
+     */
+    double bestPrice(Side side) {
+        return Price.toDouble(bestPriceTicks(side), this.priceScale);
+    }
+
+    /**
+     * Top of book quantity for a side (0 when there are no orders)
+     *
+     * @param side
+     * @return
+     */
+    abstract int bestQuantity(Side side);
+
+    /**
+     * Passes the resting orders of a side to the consumer in priority order
+     * (best price first, FIFO within a price)
+     *
+     * @param side
+     * @param consumer
+     */
+    abstract void forEach(Side side, Consumer<RestingOrder> consumer);
+
+    /**
+     * Copies the best levels of a side (as many as fit in the arrays)
+     *
+     * @param side
+     * @param priceTicks
+     * @param quantities
+     * @param orders
+     * @return number of levels copied
+     */
+    abstract int depth(Side side, long[] priceTicks, int[] quantities, int[] orders);
+
+    /**
+     * Summarizes Order Book by Price Levels (for writing to a file)
+     * Sells (highest to lowest price) followed by buys (highest to lowest price).
+     * The quantities are running totals kept by the OrderBook so this is
+     * O(levels) rather than O(orders).
+     *
+     * @return
+     */
+    abstract List<PriceLevel> getPriceLevels();
+
+    /**
+     * Cleans out the OrderBook
+     */
+    abstract void recycle();
+
+    /**
+     * Is an order with the id resting in the book
+     *
+     * @param orderId
+     * @return
+     */
+    boolean contains(long orderId) {
+        return orderId != 0L && this.restingOrderIndex.get(orderId) != null;
+    }
+
+    /**
+     * Removes the resting order with the id from the book (O(1): an index
+     * lookup and unlinking it from its level)
+     *
+     * @param orderId
+     * @return false when there is no resting order with the id
+     */
+    boolean cancel(long orderId) {
+        RestingOrder restingOrder = orderId == 0L ? null : this.restingOrderIndex.remove(orderId);
+        if (restingOrder == null) {
+            return false;
         }
-        return takeList;
+        remove(restingOrder);
+        freeRestingOrder(restingOrder);
+        bookChanged();
+        return true;
     }
 
     /**
-     * The takeSell method searches the buys in price order
-     * (highest to lowest) with fifo ordering within price
-     * buckets.
+     * Implementations unlink the resting order from its level (and update
+     * the level's totals)
+     *
+     * @param restingOrder
+     */
+    abstract void remove(RestingOrder restingOrder);
+
+    /**
+     * Start of a take request (clears the fills of the previous one)
      *
-     * @param takeQty
-     * @param takePrice
      * @return
      */
-    private List<Order> takeBuy(int takeQty, double takePrice) {
-        takeList.clear();
-        for (Double price : this.buys.keySet()) {
-            if (takePrice > 0 && price < takePrice) break;
-            Queue<Order> q = this.buys.get(price);
-            while (takeQty > 0 && !q.isEmpty()) {
-                Order order = q.peek();
-                if (takeQty >= order.orderQty()) {
-                    q.remove();
+    protected List<Fill> startTake() {
+        this.takeList.clear();
+        freeRestingOrders(this.filledRestingOrders);
+        this.filledRestingOrders = null;
+        return this.takeList;
+    }
+
+    /**
+     * Fills up to takeQty from the FIFO list starting at head (the resting
+     * orders that are completely filled are unlinked and recycled on the
+     * next take request).
+     * Sets filledQty and filledOrders for updating the level's totals.
+     *
+     * @param head
+     * @param takeQty
+     * @return the new head of the list
+     */
+    protected RestingOrder fill(RestingOrder head, int takeQty) {
+        this.filledQty = 0;
+        this.filledOrders = 0;
+        RestingOrder restingOrder = head;
+        while (takeQty > 0 && restingOrder != null) {
+            int fillQty = Math.min(takeQty, restingOrder.leavesQty);
+            addFill(restingOrder, fillQty);
+            restingOrder.leavesQty -= fillQty;
+            takeQty -= fillQty;
+            this.filledQty += fillQty;
+            if (restingOrder.leavesQty == 0) {
+                if (restingOrder.orderId != 0L) {
+                    this.restingOrderIndex.remove(restingOrder.orderId);
                 }
-                takeQty -= Math.min(takeQty, order.orderQty());
-                takeList.add(order);
-            }
-            if (takeQty == 0) {
-                return takeList;
+                RestingOrder next = restingOrder.next;
+                restingOrder.next = this.filledRestingOrders;
+                this.filledRestingOrders = restingOrder;
+                ++this.filledOrders;
+                restingOrder = next;
             }
         }
-        return takeList;
+        if (restingOrder != null) {
+            restingOrder.prev = null;
+        }
+        return restingOrder;
     }
 
-    public void writeSnapshot(Writer writer, String header) throws IOException {
-        String[] fields = header.split(",");
-        int sellSize = this.sells.keySet().size();
-        Double[] sellPrices = new Double[sellSize];
-        for (Double price : this.sells.keySet()) {
-            sellPrices[--sellSize] = price;
+    private void addFill(RestingOrder restingOrder, int quantity) {
+        int index = this.takeList.size();
+        if (index == this.fillPool.size()) {
+            this.fillPool.add(new Fill(this.priceScale));
         }
-        StringJoiner joiner = new StringJoiner(System.lineSeparator(),"","");
-        for (Double price : sellPrices) {
-            int sellQty = this.sells.get(price).stream().map(o -> o.orderQty()).reduce(0, Integer::sum);
-            if (sellQty > 0) {
-                for (int i = 0; i < fields.length; i++) {
-                    if (i > 0) writer.write(SNAPSHOT_DELIM);
-                    switch (fields[i]) {
-                        case "symbol":
-                            writer.write(this.product.symbol());
-                            break;
-                        case "price":
-                            writer.write(String.format("%.2f", price));
-                            break;
-                        case "sells":
-                            writer.write(String.format("%d", sellQty));
-                            break;
-                    }
-                }
-            }
+        Fill fill = this.fillPool.get(index);
+        fill.order = restingOrder;
+        fill.priceTicks = restingOrder.priceTicks;
+        fill.quantity = quantity;
+        this.takeList.add(fill);
+    }
+
+    protected RestingOrder newRestingOrder(Order order, int leavesQty) {
+        RestingOrder restingOrder = this.freeRestingOrders;
+        if (restingOrder == null) {
+            restingOrder = new RestingOrder();
+        } else {
+            this.freeRestingOrders = restingOrder.next;
+            restingOrder.next = null;
+        }
+        restingOrder.set(this, order, leavesQty);
+        if (restingOrder.orderId != 0L) {
+            this.restingOrderIndex.put(restingOrder.orderId, restingOrder);
+        }
+        return restingOrder;
+    }
+
+    protected void freeRestingOrder(RestingOrder restingOrder) {
+        restingOrder.clear();
+        restingOrder.next = this.freeRestingOrders;
+        this.freeRestingOrders = restingOrder;
+    }
 
+    /**
+     * Recycles a whole FIFO list
+     *
+     * @param head
+     */
+    protected void freeRestingOrders(RestingOrder head) {
+        while (head != null) {
+            RestingOrder next = head.next;
+            freeRestingOrder(head);
+            head = next;
         }
-        for (Double price : this.buys.keySet()) {
-            int buyQty = this.buys.get(price).stream().map(o -> o.orderQty()).reduce(0, Integer::sum);
-            if (buyQty > 0) {
-                for (int i = 0; i < fields.length; i++) {
-                    if (i > 0) writer.write(SNAPSHOT_DELIM);
-                    switch (fields[i]) {
-                        case "symbol":
-                            writer.write(this.product.symbol());
-                            break;
-                        case "price":
-                            writer.write(String.format("%.2f", price));
-                            break;
-                        case "buys":
-                            writer.write(String.format("%d", buyQty));
-                            break;
-                    }
+    }
+
+    public void writeSnapshot(Writer writer, String header) throws IOException {
+        String[] fields = header.split(",");
+        for (PriceLevel priceLevel : getPriceLevels()) {
+            boolean isSell = priceLevel.sells > 0;
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) writer.write(SNAPSHOT_DELIM);
+                switch (fields[i]) {
+                    case "symbol":
+                        writer.write(this.product.symbol());
+                        break;
+                    case "price":
+                        writer.write(Price.toString(priceLevel.priceTicks, priceLevel.priceScale));
+                        break;
+                    case "sells":
+                        if (isSell) writer.write(String.format("%d", priceLevel.sells));
+                        break;
+                    case "buys":
+                        if (!isSell) writer.write(String.format("%d", priceLevel.buys));
+                        break;
                 }
             }
         }
     }
 
 
+    /**
+     * Quantity filled from a resting order by a take request.
+     *
+     * Fills are recycled by the OrderBook on the next take request (so is
+     * the resting order of a Fill that filled it completely).
+     */
+    static public class Fill {
+        private final int priceScale;
+        private RestingOrder order;
+        private long priceTicks;
+        private int quantity;
+        Fill(int priceScale) {
+            this.priceScale = priceScale;
+        }
+        /**
+         * The resting (providing) order (a view of the book's copy, valid
+         * until the next take request)
+         */
+        public Order order() { return this.order; }
+        /**
+         * Filled quantity
+         */
+        public int quantity() { return this.quantity; }
+        /**
+         * Fill price in ticks of priceScale() (the price of the resting order)
+         */
+        public long priceTicks() { return this.priceTicks; }
+        public int priceScale() { return this.priceScale; }
+        /**
+         * Fill price as a double
+         */
+        public Double price() { return Price.toDouble(this.priceTicks, this.priceScale); }
+    }
+
     /**
      * Structure for representing a summary of buys/sells for a price
      */
     static public class PriceLevel {
         String symbol;
-        double price;
+        long priceTicks;
+        int priceScale;
         int buys;
         int sells;
-        PriceLevel(String symbol, double price, int buys, int sells) {
+        PriceLevel(String symbol, long priceTicks, int priceScale, int buys, int sells) {
             this.symbol = symbol;
-            this.price = price;
+            this.priceTicks = priceTicks;
+            this.priceScale = priceScale;
             this.buys = buys;
             this.sells = sells;
         }
         @Override
         public String toString() {
-            return String.format("%s,%.2f,%d,%d", this.symbol, this.price, this.buys, this.sells);
-        }
-    }
-
-    /**
-     * Summarizes Order Book by Price Levels (for writing to a file)
-     *
-     * @return
-     */
-    List<PriceLevel> getPriceLevels() {
-        List<PriceLevel> list = new ArrayList<>();
-        int sellSize = this.sells.keySet().size();
-        Double[] sellPrices = new Double[sellSize];
-        for (Double price : this.sells.keySet()) {
-            sellPrices[--sellSize] = price;
-        }
-        for (Double price : sellPrices) {
-            int qty = this.sells.get(price).stream().map(o -> o.orderQty()).reduce(0, Integer::sum);
-            if (qty > 0) {
-                list.add(new PriceLevel(this.product.symbol(), price, 0, qty));
-            }
-        }
-        for (Double price : this.buys.keySet()) {
-            int qty = this.buys.get(price).stream().map(o -> o.orderQty()).reduce(0, Integer::sum);
-            if (qty > 0) {
-                list.add(new PriceLevel(this.product.symbol(), price, qty, 0));
-            }
+            return String.format("%s,%s,%d,%d", this.symbol, Price.toString(this.priceTicks, this.priceScale),
+                    this.buys, this.sells);
         }
-        return list;
-    }
-
-    /**
-     * Cleans out the OrderBook
-     */
-    void recycle() {
-        this.buys.clear();
-        this.sells.clear();
     }
 }
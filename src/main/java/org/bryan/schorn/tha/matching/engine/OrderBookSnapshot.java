@@ -0,0 +1,346 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.util.ToString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+
+/**
+ * OrderBook Snapshot
+ *
+ * Binary copy of the resting orders of an Engine's OrderBooks (each order
+ * in its FIFO position with its leaves quantity and timestamp) along with
+ * the position of the OrderJournal it was taken at. A restart loads the
+ * latest snapshot and replays the journal from that position instead of
+ * replaying all of it.
+ *
+ * The Engine's thread copies the books into one of two buffers (it only
+ * walks the resting orders) and a writer thread writes it to a temporary
+ * file that is then moved over the snapshot, so the matching thread never
+ * waits for the file and a crash never leaves half a snapshot. While the
+ * other buffer is still being written the Engine's buffer is not touched:
+ * a snapshot that would have to wait for it is skipped (and taken on one
+ * of the next orders instead).
+ *
+ *   int    magic, short version, short (unused)
+ *   long   journal id, long journal position, long time taken (epoch ms)
+ *   int    number of books
+ *   per book:
+ *     byte symbol length, symbol (ASCII), byte price scale
+ *     per side (buys then sells):
+ *       int number of orders
+ *       per order (priority order): long order id, long timestamp (epoch nanos),
+ *         long price (ticks), int order quantity, int leaves quantity,
+ *         byte order type (ordinal)
+ *   int    magic
+ *
+ * Properties (only used along with an OrderJournal):
+ *   OrderBookSnapshot=outputs/order_book.snapshot   (no snapshots when not specified)
+ *   OrderBookSnapshotOrders=100000                  (accepted orders between snapshots)
+ */
+public class OrderBookSnapshot implements AutoCloseable {
+    static private final Logger LGR = LoggerFactory.getLogger(OrderBookSnapshot.class);
+
+    static public final String FILE = "OrderBookSnapshot";
+    static public final String ORDERS = "OrderBookSnapshotOrders";
+
+    static private final int MAGIC = 0x4f42534e; // OBSN
+    static private final short VERSION = 3;
+    static private final int ORDER_SIZE = 8 + 8 + 8 + 4 + 4 + 1;
+    static private final int INITIAL_SIZE = 1 << 16;
+    static private final Side[] SIDES = {Side.BUY, Side.SELL};
+    static private final OrderType[] ORDER_TYPES = OrderType.values();
+
+    /**
+     * Snapshot of a partition configured in properties (null when there is
+     * no OrderBookSnapshot property). The file has the partition appended
+     * when there is more than one partition (the same as the OrderJournal).
+     *
+     * @param properties
+     * @param partition
+     * @param partitions
+     * @return
+     */
+    static public OrderBookSnapshot create(Properties properties, int partition, int partitions) {
+        String filename = properties.getProperty(FILE);
+        if (filename == null || filename.isBlank()) {
+            return null;
+        }
+        filename = filename.trim();
+        if (partitions > 1) {
+            filename = filename + "." + partition;
+        }
+        int orders = Integer.parseInt(properties.getProperty(ORDERS, "100000").trim());
+        return new OrderBookSnapshot(Paths.get(filename), orders);
+    }
+
+    private final Path path;
+    private final Path tempPath;
+    private final int orders;
+    private final ByteBuffer[] buffers = new ByteBuffer[2];
+    private final Future<?>[] writes = new Future<?>[2];
+    private int next = 0;
+    private final ExecutorService writer;
+
+    OrderBookSnapshot(Path path, int orders) {
+        this.path = path;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        this.orders = orders;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-" + path.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Path path() {
+        return this.path;
+    }
+
+    /**
+     * Accepted orders between snapshots
+     *
+     * @return
+     */
+    public int orders() {
+        return this.orders;
+    }
+
+    /**
+     * Copies the books and has the copy written (Engine's thread)
+     *
+     * @param orderBooks
+     * @param journalId
+     * @param journalPosition
+     * @param wait wait for the writes (otherwise skipped when the buffer is still being written)
+     * @return false when the snapshot was skipped
+     */
+    boolean take(Collection<OrderBook> orderBooks, long journalId, long journalPosition, boolean wait) {
+        int index = this.next;
+        if (this.writes[index] != null) {
+            if (!wait && !this.writes[index].isDone()) {
+                return false;
+            }
+            await(this.writes[index]);
+        }
+        ByteBuffer buffer = copy(this.buffers[index], orderBooks, journalId, journalPosition);
+        this.buffers[index] = buffer;
+        this.writes[index] = this.writer.submit(() -> {
+            write(buffer);
+            return null;
+        });
+        this.next = index ^ 1;
+        if (wait) {
+            await(this.writes[index]);
+        }
+        return true;
+    }
+
+    private void await(Future<?> write) {
+        try {
+            write.get();
+        } catch (Exception ex) {
+            LGR.error(ToString.stackTrace(ex));
+        }
+    }
+
+    private ByteBuffer copy(ByteBuffer buffer, Collection<OrderBook> orderBooks, long journalId, long journalPosition) {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(INITIAL_SIZE);
+        }
+        buffer.clear();
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        buffer.putLong(journalId).putLong(journalPosition).putLong(System.currentTimeMillis());
+        buffer.putInt(orderBooks.size());
+        for (OrderBook orderBook : orderBooks) {
+            String symbol = orderBook.product().symbol();
+            buffer = ensure(buffer, 2 + symbol.length());
+            buffer.put((byte) symbol.length());
+            for (int i = 0; i < symbol.length(); i++) {
+                buffer.put((byte) symbol.charAt(i));
+            }
+            buffer.put((byte) orderBook.priceScale);
+            for (Side side : SIDES) {
+                buffer = ensure(buffer, 4);
+                int countAt = buffer.position();
+                buffer.putInt(0);
+                Copy copy = new Copy(buffer);
+                orderBook.forEach(side, copy);
+                buffer = copy.buffer;
+                buffer.putInt(countAt, copy.count);
+            }
+        }
+        buffer = ensure(buffer, 4);
+        buffer.putInt(MAGIC);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Copies the resting orders of a side
+     */
+    static private class Copy implements Consumer<RestingOrder> {
+        ByteBuffer buffer;
+        int count = 0;
+
+        Copy(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void accept(RestingOrder restingOrder) {
+            ByteBuffer buffer = this.buffer = ensure(this.buffer, ORDER_SIZE);
+            buffer.putLong(restingOrder.orderId);
+            buffer.putLong(restingOrder.timestampNanos);
+            buffer.putLong(restingOrder.priceTicks);
+            buffer.putInt(restingOrder.orderQty);
+            buffer.putInt(restingOrder.leavesQty);
+            buffer.put(restingOrder.orderType);
+            ++this.count;
+        }
+    }
+
+    static private ByteBuffer ensure(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        if (this.tempPath.getParent() != null) {
+            Files.createDirectories(this.tempPath.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(this.tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer view = buffer.duplicate();
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+            channel.force(true);
+        }
+        Files.move(this.tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the snapshot into the (empty) OrderBooks when it was taken of
+     * the journal
+     *
+     * @param orderBooks OrderBook by symbol and price scale (null when the symbol has none)
+     * @param journalId
+     * @return position of the journal to replay from (-1 when there is no
+     * snapshot of the journal)
+     * @throws Exception
+     */
+    long load(BiFunction<String, Integer, OrderBook> orderBooks, long journalId) throws Exception {
+        if (!Files.exists(this.path)) {
+            return -1L;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(this.path));
+        if (buffer.remaining() < 40 || buffer.getInt() != MAGIC || buffer.getShort() != VERSION
+                || buffer.getInt(buffer.limit() - 4) != MAGIC) {
+            LGR.warn("{} is not a complete snapshot (not loaded)", this.path);
+            return -1L;
+        }
+        buffer.getShort();
+        long snapshotJournalId = buffer.getLong();
+        long journalPosition = buffer.getLong();
+        long takenAt = buffer.getLong();
+        if (snapshotJournalId != journalId) {
+            LGR.warn("{} is a snapshot of another journal (not loaded)", this.path);
+            return -1L;
+        }
+        int count = 0;
+        int books = buffer.getInt();
+        for (int b = 0; b < books; b++) {
+            byte[] bytes = new byte[buffer.get()];
+            buffer.get(bytes);
+            String symbol = new String(bytes, StandardCharsets.US_ASCII);
+            int priceScale = buffer.get();
+            OrderBook orderBook = orderBooks.apply(symbol, priceScale);
+            if (orderBook == null) {
+                throw new Exception(String.format("%s has orders for %s which has no OrderBook", this.path, symbol));
+            }
+            symbol = orderBook.product().symbol();
+            for (Side side : SIDES) {
+                int orders = buffer.getInt();
+                for (int i = 0; i < orders; i++) {
+                    long orderId = buffer.getLong();
+                    long nanos = buffer.getLong();
+                    long priceTicks = buffer.getLong();
+                    int orderQty = buffer.getInt();
+                    int leavesQty = buffer.getInt();
+                    int orderType = buffer.get();
+                    Order order = Order.create(orderId,
+                            nanos == Long.MIN_VALUE ? null : Instant.ofEpochSecond(0L, nanos),
+                            symbol, side,
+                            orderType < 0 ? null : ORDER_TYPES[orderType],
+                            priceTicks, orderBook.priceScale, orderQty);
+                    orderBook.accept(order, leavesQty);
+                    ++count;
+                }
+            }
+        }
+        LGR.info("{} resting orders loaded from {} (taken {})", count, this.path, Instant.ofEpochMilli(takenAt));
+        return journalPosition;
+    }
+
+    /**
+     * Waits for the writes
+     */
+    @Override
+    public void close() {
+        for (Future<?> write : this.writes) {
+            if (write != null) await(write);
+        }
+        this.writer.shutdown();
+    }
+}
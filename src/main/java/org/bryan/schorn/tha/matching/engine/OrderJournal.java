@@ -0,0 +1,385 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Order Journal
+ *
+ * Binary, append-only record of the orders an Engine has accepted (passed
+ * the rules), written by the Engine's thread before the order is matched.
+ * Replaying it through the Engine rebuilds the OrderBooks (matching is
+ * deterministic for the same orders in the same order).
+ *
+ * The file is memory-mapped one region at a time (the file grows a region
+ * at a time). Each record is length-prefixed:
+ *
+ *   int    length of the rest of the record
+ *   long   order id
+ *   long   timestamp (epoch nanos)
+ *   long   price (ticks)
+ *   byte   price scale
+ *   byte   side (ordinal)
+ *   byte   order type (ordinal)
+ *   int    order quantity
+ *   byte   symbol length, symbol (ASCII)
+ *
+ * The length is written after the rest of the record, so a record cut
+ * short by a crash has no length (0 marks the end of the journal). The end
+ * is written after each record before its length, so what is left of a
+ * longer record cut short (appending starts over where it was) is never
+ * read as the next one. A
+ * record that does not fit in what is left of a region is written at the
+ * start of the next one (-1 marks the skip). The mapped pages survive the
+ * process; they are forced to the device when the journal moves on to the
+ * next region and when it is closed.
+ *
+ * The file starts with a header that holds the partition of the Engine
+ * that writes it (see PartitionedEngine), a journal can only be replayed
+ * by the same partition of the same number of partitions. The header also
+ * holds an id (creation time) that tells journals apart, and replay can
+ * start from a position of the journal (see OrderBookSnapshot).
+ *
+ * Properties:
+ *   OrderJournal=outputs/orders.journal   (no journal when not specified)
+ *   OrderJournalReplay=false              (true: rebuild the OrderBooks
+ *                                          from the journal at startup,
+ *                                          false: start a new journal)
+ *   OrderJournalRegionSize=67108864
+ */
+public class OrderJournal implements AutoCloseable {
+    static private final Logger LGR = LoggerFactory.getLogger(OrderJournal.class);
+
+    static public final String FILE = "OrderJournal";
+    static public final String REPLAY = "OrderJournalReplay";
+    static public final String REGION_SIZE = "OrderJournalRegionSize";
+
+    static private final int MAGIC = 0x4f4a4e4c; // OJNL
+    static private final short VERSION = 2;
+    static private final int HEADER_SIZE = 24;
+    static private final int END = 0;
+    static private final int SKIP = -1;
+    static private final int MAX_SYMBOL_LENGTH = 127;
+    // fixed part of a record (after the length)
+    static private final int FIXED_SIZE = 8 + 8 + 8 + 1 + 1 + 1 + 4 + 1;
+    static private final long NO_TIMESTAMP = Long.MIN_VALUE;
+    static private final long DEFAULT_REGION_SIZE = 1L << 26;
+    static private final Side[] SIDES = Side.values();
+    static private final OrderType[] ORDER_TYPES = OrderType.values();
+
+    /**
+     * Journal of a partition configured in properties (null when there is
+     * no OrderJournal property). The partition's journal is the file with
+     * the partition appended (e.g. orders.journal.1) when there is more
+     * than one partition.
+     *
+     * @param properties
+     * @param partition
+     * @param partitions
+     * @return
+     * @throws Exception
+     */
+    static public OrderJournal create(Properties properties, int partition, int partitions) throws Exception {
+        String filename = properties.getProperty(FILE);
+        if (filename == null || filename.isBlank()) {
+            return null;
+        }
+        if (partitions > 1) {
+            filename = filename.trim() + "." + partition;
+        }
+        boolean replay = Boolean.parseBoolean(properties.getProperty(REPLAY, "false").trim());
+        long regionSize = Long.parseLong(properties.getProperty(REGION_SIZE,
+                String.valueOf(DEFAULT_REGION_SIZE)).trim());
+        return new OrderJournal(Paths.get(filename.trim()), partition, partitions, regionSize, replay);
+    }
+
+    /**
+     * Whether the journal is to be replayed at startup
+     *
+     * @param properties
+     * @return
+     */
+    static public boolean replay(Properties properties) {
+        return properties.getProperty(FILE) != null
+                && Boolean.parseBoolean(properties.getProperty(REPLAY, "false").trim());
+    }
+
+    private final Path path;
+    private final int partition;
+    private final int partitions;
+    private final long regionSize;
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private boolean replayed;
+    private long id;
+
+    /**
+     * Opens (keep=true) or starts (keep=false) a journal
+     *
+     * @param path
+     * @param partition
+     * @param partitions
+     * @param regionSize
+     * @param keep
+     * @throws Exception
+     */
+    OrderJournal(Path path, int partition, int partitions, long regionSize, boolean keep) throws Exception {
+        if (regionSize < HEADER_SIZE + 4 + FIXED_SIZE + MAX_SYMBOL_LENGTH || regionSize > Integer.MAX_VALUE) {
+            throw new Exception(String.format("%s out of range: %d", REGION_SIZE, regionSize));
+        }
+        this.path = path;
+        this.partition = partition;
+        this.partitions = partitions;
+        this.regionSize = regionSize;
+        boolean existing = keep && Files.exists(path) && Files.size(path) >= HEADER_SIZE;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = existing
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        map(0L);
+        if (existing) {
+            readHeader();
+        } else {
+            writeHeader();
+        }
+        // nothing to replay in a new journal
+        this.replayed = !existing;
+        LGR.info("Order journal {} ({})", path, existing ? "existing" : "new");
+    }
+
+    public Path path() {
+        return this.path;
+    }
+
+    /**
+     * Id of the journal (the same for as long as the journal is kept)
+     *
+     * @return
+     */
+    public long id() {
+        return this.id;
+    }
+
+    /**
+     * Position after the last order appended (or replayed)
+     *
+     * @return
+     */
+    public long position() {
+        return this.regionStart + this.region.position();
+    }
+
+    private void map(long start) throws IOException {
+        this.regionStart = start;
+        this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, start, this.regionSize);
+    }
+
+    private void writeHeader() {
+        this.region.putInt(0, MAGIC);
+        this.region.putShort(4, VERSION);
+        this.region.putShort(6, (short) this.partition);
+        this.region.putShort(8, (short) this.partitions);
+        this.id = System.currentTimeMillis() * 1_000_000L + System.nanoTime() % 1_000_000L;
+        this.region.putLong(16, this.id);
+        this.region.position(HEADER_SIZE);
+    }
+
+    private void readHeader() throws Exception {
+        if (this.region.getInt(0) != MAGIC || this.region.getShort(4) != VERSION) {
+            throw new Exception(String.format("%s is not an order journal (version %d)", this.path, VERSION));
+        }
+        int partition = this.region.getShort(6);
+        int partitions = this.region.getShort(8);
+        if (partition != this.partition || partitions != this.partitions) {
+            throw new Exception(String.format("%s was written by partition %d of %d (not %d of %d)",
+                    this.path, partition, partitions, this.partition, this.partitions));
+        }
+        this.id = this.region.getLong(16);
+        this.region.position(HEADER_SIZE);
+    }
+
+    /**
+     * Appends an order (Engine's thread). The journal has to be replayed
+     * first when it was opened to be replayed.
+     *
+     * @param order
+     * @throws IOException
+     */
+    public void append(Order order) throws IOException {
+        if (!this.replayed) {
+            throw new IllegalStateException(String.format("%s has to be replayed before it is appended to",
+                    this.path));
+        }
+        String symbol = order.symbol() == null ? "" : order.symbol();
+        int symbolLength = Math.min(symbol.length(), MAX_SYMBOL_LENGTH);
+        int length = FIXED_SIZE + symbolLength;
+        if (this.region.remaining() < 4 + length) {
+            if (this.region.remaining() >= 4) {
+                this.region.putInt(this.region.position(), SKIP);
+            }
+            this.region.force();
+            map(this.regionStart + this.regionSize);
+        }
+        MappedByteBuffer region = this.region;
+        int start = region.position();
+        region.position(start + 4);
+        region.putLong(order.orderId());
+        region.putLong(RestingOrder.nanos(order));
+        region.putLong(order.priceTicks());
+        region.put((byte) order.priceScale());
+        region.put(order.side() == null ? -1 : (byte) order.side().ordinal());
+        region.put(order.orderType() == null ? -1 : (byte) order.orderType().ordinal());
+        Integer orderQty = order.orderQty();
+        region.putInt(orderQty == null ? Integer.MIN_VALUE : orderQty);
+        region.put((byte) symbolLength);
+        for (int i = 0; i < symbolLength; i++) {
+            region.put((byte) symbol.charAt(i));
+        }
+        // the end after it (there can be what is left of a record cut short)
+        if (region.remaining() >= 4) {
+            region.putInt(region.position(), END);
+        }
+        // the length last (a record without one is not there)
+        region.putInt(start, length);
+    }
+
+    /**
+     * Reads the journal from the start passing each order to the consumer,
+     * appending continues after the last one.
+     *
+     * @param consumer
+     * @return number of orders replayed
+     * @throws IOException
+     */
+    public int replay(Consumer<Order> consumer) throws IOException {
+        return replay(consumer, HEADER_SIZE);
+    }
+
+    /**
+     * Reads the journal from a position (see position()) passing each order
+     * to the consumer, appending continues after the last one.
+     *
+     * @param consumer
+     * @param position
+     * @return number of orders replayed
+     * @throws IOException
+     */
+    public int replay(Consumer<Order> consumer, long position) throws IOException {
+        if (position < HEADER_SIZE) {
+            throw new IllegalArgumentException(String.format("%s has no position %d", this.path, position));
+        }
+        int count = 0;
+        map(position - position % this.regionSize);
+        this.region.position((int) (position - this.regionStart));
+        while (true) {
+            MappedByteBuffer region = this.region;
+            if (region.remaining() < 4) {
+                map(this.regionStart + this.regionSize);
+                continue;
+            }
+            int start = region.position();
+            int length = region.getInt(start);
+            if (length == END) {
+                break;
+            }
+            if (length == SKIP) {
+                map(this.regionStart + this.regionSize);
+                continue;
+            }
+            if (length < FIXED_SIZE || start + 4 + length > region.limit()) {
+                LGR.warn("{} has a bad record at {} (replay stops there)", this.path, this.regionStart + start);
+                break;
+            }
+            region.position(start + 4);
+            consumer.accept(read(region));
+            region.position(start + 4 + length);
+            ++count;
+        }
+        this.replayed = true;
+        LGR.info("{} orders replayed from {}", count, this.path);
+        return count;
+    }
+
+    private Order read(MappedByteBuffer region) {
+        long orderId = region.getLong();
+        long nanos = region.getLong();
+        long priceTicks = region.getLong();
+        int priceScale = region.get();
+        int side = region.get();
+        int orderType = region.get();
+        int orderQty = region.getInt();
+        int symbolLength = region.get();
+        byte[] bytes = new byte[symbolLength];
+        region.get(bytes);
+        String symbol = new String(bytes, StandardCharsets.US_ASCII);
+        Product product = Products.find(symbol);
+        return Order.create(orderId,
+                product != null ? product.id() : -1,
+                nanos == NO_TIMESTAMP ? null : Instant.ofEpochSecond(0L, nanos),
+                product != null ? product.symbol() : symbol,
+                side < 0 ? null : SIDES[side],
+                orderType < 0 ? null : ORDER_TYPES[orderType],
+                priceTicks,
+                priceScale,
+                orderQty == Integer.MIN_VALUE ? null : orderQty);
+    }
+
+    /**
+     * Forces the journal to the device
+     */
+    @Override
+    public void close() {
+        this.region.force();
+        try {
+            this.channel.close();
+        } catch (IOException ex) {
+            LGR.error("{} {}", this.path, ex.getMessage());
+        }
+    }
+}
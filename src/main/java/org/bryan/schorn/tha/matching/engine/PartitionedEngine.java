@@ -0,0 +1,307 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.util.IdleStrategy;
+import org.bryan.schorn.tha.matching.util.RingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+
+/**
+ * Partitioned Matching Engine
+ *
+ * The products are hashed (by symbol) onto N Engine instances where each
+ * Engine runs in its own thread with its own order inbox (a bounded
+ * RingBuffer, the router waits when an Engine falls behind), OrderBook(s) and
+ * rule instances. This instance routes the orders from the Orders conduit
+ * (or the order supplier that was set) to the inbox of the Engine that owns
+ * the symbol, so the orders of a symbol are always matched by the same thread
+ * and in the order they arrived.
+ *
+ * The outbound suppliers (Trades, Rejects, MarketData, PriceLevels) are merged from the
+ * Engines. The order across symbols is not kept but it is for each symbol.
+ *
+ * Properties:
+ *   EnginePartitions=N
+ *   EngineIdleStrategy (used by the router and by each Engine)
+ *   OrderRingSize (inbox size)
+ */
+public class PartitionedEngine extends Engine {
+    static private final Logger LGR = LoggerFactory.getLogger(PartitionedEngine.class);
+
+    static public final String PARTITIONS = "EnginePartitions";
+
+    private final Engine[] engines;
+    // partition of each product (by Product.id())
+    private final int[] partitionsById;
+    private final RingBuffer<Order>[] inboxes;
+    private final IdleStrategy idleStrategy;
+    private final IdleStrategy backpressure = new IdleStrategy.Backoff();
+
+    // life cycle
+    private volatile boolean keepLooping = true;
+
+    /**
+     * Number of partitions configured in properties (1 when not specified)
+     *
+     * @param properties
+     * @return
+     */
+    static public int partitions(Properties properties) {
+        return Integer.parseInt(properties.getProperty(PARTITIONS, "1"));
+    }
+
+    /**
+     * Partition of a symbol
+     *
+     * @param symbol
+     * @param partitions
+     * @return
+     */
+    static int partition(String symbol, int partitions) {
+        return symbol == null ? 0 : Math.floorMod(symbol.hashCode(), partitions);
+    }
+
+    // ctor
+    public PartitionedEngine(Collection<Product> productList, int partitions, Properties properties) throws Exception {
+        super(Collections.emptyList());
+        if (partitions < 1) {
+            throw new Exception(String.format("%s must be at least 1 (was %d)", PARTITIONS, partitions));
+        }
+        List<List<Product>> partitionProducts = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            partitionProducts.add(new ArrayList<>());
+        }
+        int maxId = -1;
+        for (Product product : productList) {
+            partitionProducts.get(partition(product.symbol(), partitions)).add(product);
+            maxId = Math.max(maxId, product.id());
+        }
+        this.partitionsById = new int[maxId + 1];
+        Arrays.fill(this.partitionsById, -1);
+        for (Product product : productList) {
+            if (product.id() >= 0) {
+                this.partitionsById[product.id()] = partition(product.symbol(), partitions);
+            }
+        }
+        this.idleStrategy = IdleStrategy.create(properties.getProperty(IDLE_STRATEGY));
+        this.engines = new Engine[partitions];
+        // there are no generic arrays, every element is created as a RingBuffer<Order> below
+        @SuppressWarnings("unchecked")
+        RingBuffer<Order>[] inboxes = (RingBuffer<Order>[]) new RingBuffer<?>[partitions];
+        this.inboxes = inboxes;
+        int inboxSize = Integer.parseInt(properties.getProperty(OrderFeed.RING_SIZE,
+                String.valueOf(RingBuffer.DEFAULT_CAPACITY)).trim());
+        for (int i = 0; i < partitions; i++) {
+            this.engines[i] = new Engine(partitionProducts.get(i), properties);
+            this.inboxes[i] = new RingBuffer<>(inboxSize);
+            this.engines[i].setOrderSupplier(this.inboxes[i]::poll);
+            LGR.info("Engine partition {}: {}", i, partitionProducts.get(i).stream()
+                    .map(Product::symbol).reduce((a, b) -> a + "," + b).orElse(""));
+        }
+    }
+
+    /**
+     * Each Engine gets an instance of the rule (see Engine.Rule.newInstance).
+     * A rule that can't be split over partitions (see
+     * Engine.Rule.isPartitionable) is refused rather than weakened.
+     *
+     * @param rule
+     * @return
+     */
+    @Override
+    public boolean addRule(Rule rule) {
+        if (this.engines.length > 1 && !rule.isPartitionable()) {
+            throw new IllegalArgumentException(String.format(
+                    "rule can not be split over %d partitions: %s",
+                    this.engines.length, rule.ruleDescription()));
+        }
+        boolean added = true;
+        for (Engine engine : this.engines) {
+            added &= engine.addRule(rule.newInstance());
+        }
+        return added;
+    }
+
+    /**
+     * Each Engine has its own journal (see OrderJournal.create)
+     *
+     * @param properties
+     * @return
+     * @throws Exception
+     */
+    @Override
+    public int openJournal(Properties properties) throws Exception {
+        int replayed = 0;
+        for (int i = 0; i < this.engines.length; i++) {
+            replayed += this.engines[i].openJournal(properties, i, this.engines.length);
+        }
+        return replayed;
+    }
+
+    @Override
+    public void setLog(EngineLog engineLog) throws Exception {
+        for (Engine engine : this.engines) {
+            engine.setLog(engineLog);
+        }
+    }
+
+    @Override
+    public DepthView getDepthView(String symbol) throws Exception {
+        return this.engines[partition(symbol, this.engines.length)].getDepthView(symbol);
+    }
+
+    @Override
+    public void signal() {
+        this.idleStrategy.signal();
+    }
+
+    @Override
+    public void stop() {
+        this.keepLooping = false;
+        this.idleStrategy.signal();
+    }
+
+    @Override
+    public void recycle() {
+        for (int i = 0; i < this.engines.length; i++) {
+            this.inboxes[i].clear();
+            this.engines[i].recycle();
+        }
+        this.keepLooping = true;
+    }
+
+    /**
+     * Runs the Engines in their own threads and routes the orders to them
+     * (on the calling thread) until stopped and there are no more orders.
+     *
+     * @return orders processed by all the Engines
+     */
+    @Override
+    public Integer call() {
+        ExecutorService executorService = Executors.newFixedThreadPool(this.engines.length);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (Engine engine : this.engines) {
+            futures.add(executorService.submit(engine));
+        }
+        int orderCount = 0;
+        try {
+            Supplier<Order> orderSupplier = orderSupplier();
+            while (this.keepLooping) {
+                this.idleStrategy.idle(route(orderSupplier, futures));
+            }
+            // orders that came in before stop() was called
+            route(orderSupplier, futures);
+            for (Engine engine : this.engines) {
+                engine.stop();
+            }
+            for (Future<Integer> future : futures) {
+                orderCount += future.get();
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            LGR.error(ex.getMessage());
+        } finally {
+            executorService.shutdown();
+        }
+        return orderCount;
+    }
+
+    /**
+     * Routes orders to the Engines' inboxes until the supplier has no more
+     * (the orders of an Engine that has ended, e.g. failed, are dropped)
+     *
+     * @param orderSupplier
+     * @param futures of the Engines
+     * @return number of orders routed
+     */
+    private int route(Supplier<Order> orderSupplier, List<Future<Integer>> futures) {
+        int orderCount = 0;
+        Order order = orderSupplier.get();
+        while (order != null) {
+            ++orderCount;
+            int partition = partition(order);
+            Future<Integer> future = futures.get(partition);
+            if (this.inboxes[partition].put(order, this.backpressure, future::isDone)) {
+                this.engines[partition].signal();
+            }
+            order = orderSupplier.get();
+        }
+        return orderCount;
+    }
+
+    /**
+     * Partition of an order (by its product id when it was resolved at parse time)
+     *
+     * @param order
+     * @return
+     */
+    private int partition(Order order) {
+        int productId = order.productId();
+        if (productId >= 0 && productId < this.partitionsById.length && this.partitionsById[productId] >= 0) {
+            return this.partitionsById[productId];
+        }
+        return partition(order.symbol(), this.engines.length);
+    }
+
+    /**
+     * Merges the suppliers of the Engines. PriceLevels are supplied one Engine
+     * after the other (to keep each OrderBook together) and everything else
+     * round-robin (batches are drained from one Engine after the other).
+     *
+     * @return
+     */
+    @Override
+    public <E> Outbound<E> getSupplier(Class<E> classOfE) throws Exception {
+        final List<Outbound<E>> suppliers = new ArrayList<>();
+        for (Engine engine : this.engines) {
+            suppliers.add(engine.getSupplier(classOfE));
+        }
+        if (classOfE.equals(OrderBook.PriceLevel.class)) {
+            final Iterator<Outbound<E>> iterator = suppliers.iterator();
+            return new Outbound<E>() {
+                private Outbound<E> current = iterator.next();
+                @Override
+                public E get() {
+                    E entity = this.current.get();
+                    while (entity == null && iterator.hasNext()) {
+                        this.current = iterator.next();
+                        entity = this.current.get();
+                    }
+                    return entity;
+                }
+            };
+        }
+        return Outbound.roundRobin(suppliers);
+    }
+}
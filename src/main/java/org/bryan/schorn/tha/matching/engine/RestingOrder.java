@@ -0,0 +1,171 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Price;
+import org.bryan.schorn.tha.matching.model.Side;
+
+import java.time.Instant;
+
+
+/**
+ * Resting Order
+ *
+ * An Order while it rests in an OrderBook, kept as primitives: the timestamp
+ * as epoch nanos, side and type as ordinals, the price in the book's ticks,
+ * and the order and leaves quantities (leaves is reduced by partial fills).
+ * The symbol and price scale are those of the OrderBook, so the incoming
+ * Order is not retained once it has been copied in.
+ *
+ * It is also the node of the intrusive (doubly-linked) FIFO list of its
+ * price level, so a cancel unlinks it without searching the level, and is
+ * recycled by the OrderBook once it has been filled or cancelled. The Order methods are
+ * a view of the fields (timestamp() and orderQty() create the objects on
+ * each call).
+ */
+final class RestingOrder implements Order {
+    static private final Side[] SIDES = Side.values();
+    static private final OrderType[] ORDER_TYPES = OrderType.values();
+    static private final long NO_TIMESTAMP = Long.MIN_VALUE;
+    static private final byte NO_ENUM = -1;
+
+    OrderBook orderBook;
+    long orderId;
+    long timestampNanos;
+    long priceTicks;
+    int orderQty;
+    int leavesQty;
+    byte side;
+    byte orderType;
+    RestingOrder prev;
+    RestingOrder next;
+
+    /**
+     * Copies the fields of an order (the price is rescaled to the book's ticks)
+     *
+     * @param orderBook
+     * @param order
+     * @param leavesQty
+     */
+    void set(OrderBook orderBook, Order order, int leavesQty) {
+        this.orderBook = orderBook;
+        this.orderId = order.orderId();
+        this.timestampNanos = nanos(order);
+        this.priceTicks = orderBook.priceTicks(order);
+        Integer orderQty = order.orderQty();
+        this.orderQty = orderQty == null ? leavesQty : orderQty;
+        this.leavesQty = leavesQty;
+        this.side = order.side() == null ? NO_ENUM : (byte) order.side().ordinal();
+        this.orderType = order.orderType() == null ? NO_ENUM : (byte) order.orderType().ordinal();
+    }
+
+    void clear() {
+        this.orderBook = null;
+        this.orderId = 0L;
+        this.prev = null;
+        this.leavesQty = 0;
+    }
+
+    /**
+     * Order timestamp as nanos since the epoch (without creating an Instant
+     * when the order is a RestingOrder)
+     *
+     * @param order
+     * @return
+     */
+    static long nanos(Order order) {
+        if (order instanceof RestingOrder) {
+            return ((RestingOrder) order).timestampNanos;
+        }
+        Instant timestamp = order.timestamp();
+        return timestamp == null ? NO_TIMESTAMP
+                : timestamp.getEpochSecond() * 1_000_000_000L + timestamp.getNano();
+    }
+
+    int leavesQty() {
+        return this.leavesQty;
+    }
+
+    @Override
+    public long orderId() {
+        return this.orderId;
+    }
+
+    @Override
+    public Instant timestamp() {
+        return this.timestampNanos == NO_TIMESTAMP ? null
+                : Instant.ofEpochSecond(0L, this.timestampNanos);
+    }
+
+    @Override
+    public String symbol() {
+        return this.orderBook.product().symbol();
+    }
+
+    @Override
+    public int productId() {
+        return this.orderBook.product().id();
+    }
+
+    @Override
+    public OrderType orderType() {
+        return this.orderType == NO_ENUM ? null : ORDER_TYPES[this.orderType];
+    }
+
+    @Override
+    public Side side() {
+        return this.side == NO_ENUM ? null : SIDES[this.side];
+    }
+
+    @Override
+    public Integer orderQty() {
+        return this.orderQty;
+    }
+
+    @Override
+    public long priceTicks() {
+        return this.priceTicks;
+    }
+
+    @Override
+    public int priceScale() {
+        return this.orderBook.priceScale;
+    }
+
+    @Override
+    public String toString() {
+        //symbol,side,type,price,timestamp
+        return String.format("%s,%s,%s,%s,%d.%d",
+                symbol(),
+                side(),
+                orderType(),
+                Price.toString(this.priceTicks, priceScale()),
+                Math.floorDiv(this.timestampNanos, 1_000_000_000L),
+                Math.floorMod(this.timestampNanos, 1_000_000_000L));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.OrderThrottleRule;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.product.Products;
+
+import java.util.Arrays;
+
+
+/**
+ * Pre-Trade Rule Pipeline
+ *
+ * The Engine's rules flattened into arrays that are walked in one loop. The
+ * order's product is resolved once and handed to every rule (see
+ * Engine.Rule.test(Order, Product)).
+ *
+ * Runs of stateless rules (see Engine.Rule.isStateless) are re-ordered every
+ * REORDER_EVERY orders so the rules that reject the most go first. Rules
+ * that keep state stay where they were added since they count only the
+ * orders that reached them. When an order is rejected the reason is still
+ * from the first rule (in the order they were added) that rejects it, so the
+ * re-ordering does not change what is rejected or why.
+ *
+ * The built-in rules are tagged with their kind when added and tested with a
+ * switch on the tag that calls their own class, so those call sites each see
+ * one class and are inlined; only other rules are called through the
+ * Engine.Rule interface.
+ */
+final class RulePipeline {
+
+    // orders between re-ordering (the counts are halved each time)
+    static final int REORDER_EVERY = 4096;
+
+    // rule kinds (see kindOf)
+    static private final byte OTHER = 0;
+    static private final byte REQUIRED_FIELDS = 1;
+    static private final byte HALTED = 2;
+    static private final byte THROTTLE = 3;
+
+    // in evaluation order
+    private Engine.Rule[] rules = new Engine.Rule[0];
+    private byte[] kinds = new byte[0];
+    // position when added
+    private int[] added = new int[0];
+    private boolean[] stateless = new boolean[0];
+    private long[] tested = new long[0];
+    private long[] rejected = new long[0];
+    private int untilReorder = REORDER_EVERY;
+
+    /**
+     * Adds a rule at the end of the pipeline
+     *
+     * @param rule
+     */
+    void add(Engine.Rule rule) {
+        int n = this.rules.length;
+        this.rules = Arrays.copyOf(this.rules, n + 1);
+        this.kinds = Arrays.copyOf(this.kinds, n + 1);
+        this.added = Arrays.copyOf(this.added, n + 1);
+        this.stateless = Arrays.copyOf(this.stateless, n + 1);
+        this.tested = Arrays.copyOf(this.tested, n + 1);
+        this.rejected = Arrays.copyOf(this.rejected, n + 1);
+        this.rules[n] = rule;
+        this.kinds[n] = kindOf(rule);
+        this.added[n] = n;
+        this.stateless[n] = rule.isStateless();
+    }
+
+    /**
+     * Only the exact classes get a kind, a subclass may override test.
+     */
+    static private byte kindOf(Engine.Rule rule) {
+        Class<?> type = rule.getClass();
+        if (type == CheckRequiredFields.class) {
+            return REQUIRED_FIELDS;
+        } else if (type == ProductHalted.class) {
+            return HALTED;
+        } else if (type == OrderThrottleRule.class) {
+            return THROTTLE;
+        }
+        return OTHER;
+    }
+
+    int size() {
+        return this.rules.length;
+    }
+
+    /**
+     * Rules in evaluation order
+     *
+     * @return
+     */
+    Engine.Rule[] rules() {
+        return this.rules.clone();
+    }
+
+    /**
+     * Runs the order through the rules
+     *
+     * @param order
+     * @return the rule that rejected the order (null when it passed all of them)
+     */
+    Engine.Rule check(Order order) {
+        if (--this.untilReorder <= 0) {
+            reorder();
+        }
+        final Engine.Rule[] rules = this.rules;
+        final byte[] kinds = this.kinds;
+        if (rules.length == 0) {
+            return null;
+        }
+        final Product product = Products.find(order);
+        for (int i = 0; i < rules.length; i++) {
+            ++this.tested[i];
+            if (!test(kinds[i], rules[i], order, product)) {
+                ++this.rejected[i];
+                return firstAdded(i, order, product);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The rule added first of those that reject the order. Only the stateless
+     * rules after the one that rejected it (in its run) could have been added
+     * before it and not yet been tested.
+     */
+    private Engine.Rule firstAdded(int rejectedAt, Order order, Product product) {
+        int first = rejectedAt;
+        if (this.stateless[rejectedAt]) {
+            for (int i = rejectedAt + 1; i < this.rules.length && this.stateless[i]; i++) {
+                if (this.added[i] < this.added[first] && !test(this.kinds[i], this.rules[i], order, product)) {
+                    first = i;
+                }
+            }
+        }
+        return this.rules[first];
+    }
+
+    static private boolean test(byte kind, Engine.Rule rule, Order order, Product product) {
+        switch (kind) {
+            case REQUIRED_FIELDS:
+                return ((CheckRequiredFields) rule).test(order, product);
+            case HALTED:
+                return ((ProductHalted) rule).test(order, product);
+            case THROTTLE:
+                return ((OrderThrottleRule) rule).test(order, product);
+            default:
+                return rule.test(order, product);
+        }
+    }
+
+    /**
+     * Sorts each run of stateless rules by reject rate (highest first, then
+     * in the order they were added) and halves the counts so the order
+     * follows the flow of orders.
+     */
+    void reorder() {
+        this.untilReorder = REORDER_EVERY;
+        int start = 0;
+        while (start < this.rules.length) {
+            int end = start;
+            while (end < this.rules.length && this.stateless[end]) {
+                ++end;
+            }
+            // insertion sort [start, end)
+            for (int i = start + 1; i < end; i++) {
+                for (int j = i; j > start && before(j, j - 1); j--) {
+                    swap(j, j - 1);
+                }
+            }
+            start = end + 1;
+        }
+        for (int i = 0; i < this.rules.length; i++) {
+            this.tested[i] >>= 1;
+            this.rejected[i] >>= 1;
+        }
+    }
+
+    // does rule a go before rule b?
+    private boolean before(int a, int b) {
+        // rejected[a] / tested[a] vs rejected[b] / tested[b] (untested is 0)
+        double rateA = this.tested[a] == 0 ? 0.0 : (double) this.rejected[a] / this.tested[a];
+        double rateB = this.tested[b] == 0 ? 0.0 : (double) this.rejected[b] / this.tested[b];
+        return rateA != rateB ? rateA > rateB : this.added[a] < this.added[b];
+    }
+
+    private void swap(int a, int b) {
+        Engine.Rule rule = this.rules[a];
+        this.rules[a] = this.rules[b];
+        this.rules[b] = rule;
+        byte kind = this.kinds[a];
+        this.kinds[a] = this.kinds[b];
+        this.kinds[b] = kind;
+        int added = this.added[a];
+        this.added[a] = this.added[b];
+        this.added[b] = added;
+        long tested = this.tested[a];
+        this.tested[a] = this.tested[b];
+        this.tested[b] = tested;
+        long rejected = this.rejected[a];
+        this.rejected[a] = this.rejected[b];
+        this.rejected[b] = rejected;
+        // stateless[] is true for both
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * OrderBook with the price levels kept in sorted maps (TreeMap keyed by the
+ * price in ticks) and the orders of each price level in FIFO queues.
+ *
+ * A true OrderBook structure is beyond the scope of a 3-hour project.
+ */
+public class TreeOrderBook extends OrderBook {
+
+    /**
+     * Keep all the buys sorted by price highest to lowest.
+     */
+    static final private Comparator<Long> SORT_BUYS = Comparator.reverseOrder();
+    /**
+     * Keep all the sells sorted by price lowest to highest
+     */
+    static final private Comparator<Long> SORT_SELLS = Comparator.naturalOrder();
+
+    /**
+     * The buys are organized by price (highest to lowest). The orders for each price are kept in FIFO queues by age.
+     */
+    private final TreeMap<Long, Level> buys = new TreeMap<>(SORT_BUYS);
+    /**
+     * The buys are organized by price (lowest to highest). The orders for each price are kept in FIFO queues by age.
+     */
+    private final TreeMap<Long, Level> sells = new TreeMap<>(SORT_SELLS);
+
+    /**
+     * Orders of a price level (FIFO) along with the running totals of the level.
+     */
+    static private class Level {
+        RestingOrder head = null;
+        RestingOrder tail = null;
+        int quantity = 0;
+        int count = 0;
+        void offer(RestingOrder restingOrder) {
+            if (this.head == null) {
+                this.head = restingOrder;
+            } else {
+                this.tail.next = restingOrder;
+                restingOrder.prev = this.tail;
+            }
+            this.tail = restingOrder;
+            this.quantity += restingOrder.leavesQty;
+            ++this.count;
+        }
+        void remove(RestingOrder restingOrder) {
+            if (restingOrder.prev == null) {
+                this.head = restingOrder.next;
+            } else {
+                restingOrder.prev.next = restingOrder.next;
+            }
+            if (restingOrder.next == null) {
+                this.tail = restingOrder.prev;
+            } else {
+                restingOrder.next.prev = restingOrder.prev;
+            }
+            restingOrder.prev = null;
+            restingOrder.next = null;
+            this.quantity -= restingOrder.leavesQty;
+            --this.count;
+        }
+    }
+
+
+    public TreeOrderBook(Product product) {
+        super(product);
+    }
+
+    @Override
+    void accept(Order order, int leavesQty) {
+        TreeMap<Long, Level> levels = order.side() == Side.BUY ? this.buys : this.sells;
+        RestingOrder restingOrder = newRestingOrder(order, leavesQty);
+        Level level = levels.get(restingOrder.priceTicks);
+        if (level == null) {
+            level = new Level();
+            levels.put(restingOrder.priceTicks, level);
+        }
+        level.offer(restingOrder);
+        levelChanged(order.side(), restingOrder.priceTicks, level.quantity, level.count, level.count - 1);
+        bookChanged();
+    }
+
+    @Override
+    List<Fill> take(Side side, int quantity, long price) {
+        List<Fill> fills = side == Side.BUY
+                ? take(this.buys, Side.BUY, quantity, price)
+                : take(this.sells, Side.SELL, quantity, price);
+        bookChanged();
+        return fills;
+    }
+
+    /**
+     * Searches the levels in price order (sells lowest to highest, buys
+     * highest to lowest) with fifo ordering within price buckets. Levels
+     * that are emptied are removed.
+     *
+     * @param levels
+     * @param side
+     * @param takeQty
+     * @param takePrice
+     * @return
+     */
+    private List<Fill> take(TreeMap<Long, Level> levels, Side side, int takeQty, long takePrice) {
+        boolean descending = side == Side.BUY;
+        List<Fill> fills = startTake();
+        Iterator<Map.Entry<Long, Level>> iterator = levels.entrySet().iterator();
+        while (takeQty > 0 && iterator.hasNext()) {
+            Map.Entry<Long, Level> entry = iterator.next();
+            long price = entry.getKey();
+            if (takePrice > 0 && (descending ? price < takePrice : price > takePrice)) break;
+            Level level = entry.getValue();
+            level.head = fill(level.head, takeQty);
+            takeQty -= this.filledQty;
+            level.quantity -= this.filledQty;
+            level.count -= this.filledOrders;
+            levelChanged(side, price, level.quantity, level.count, level.count + this.filledOrders);
+            if (level.head == null) {
+                level.tail = null;
+                iterator.remove();
+            }
+        }
+        return fills;
+    }
+
+    @Override
+    long bestPriceTicks(Side side) {
+        TreeMap<Long, Level> levels = side == Side.BUY ? this.buys : this.sells;
+        return levels.isEmpty() ? 0L : levels.firstKey();
+    }
+
+    @Override
+    int bestQuantity(Side side) {
+        TreeMap<Long, Level> levels = side == Side.BUY ? this.buys : this.sells;
+        return levels.isEmpty() ? 0 : levels.firstEntry().getValue().quantity;
+    }
+
+    @Override
+    void forEach(Side side, Consumer<RestingOrder> consumer) {
+        TreeMap<Long, Level> levels = side == Side.BUY ? this.buys : this.sells;
+        for (Level level : levels.values()) {
+            for (RestingOrder restingOrder = level.head; restingOrder != null; restingOrder = restingOrder.next) {
+                consumer.accept(restingOrder);
+            }
+        }
+    }
+
+    @Override
+    int depth(Side side, long[] priceTicks, int[] quantities, int[] orders) {
+        TreeMap<Long, Level> levels = side == Side.BUY ? this.buys : this.sells;
+        int count = 0;
+        for (Map.Entry<Long, Level> entry : levels.entrySet()) {
+            if (count == priceTicks.length) break;
+            priceTicks[count] = entry.getKey();
+            quantities[count] = entry.getValue().quantity;
+            orders[count] = entry.getValue().count;
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    List<PriceLevel> getPriceLevels() {
+        List<PriceLevel> list = new ArrayList<>(this.sells.size() + this.buys.size());
+        for (Map.Entry<Long, Level> entry : this.sells.descendingMap().entrySet()) {
+            if (entry.getValue().quantity > 0) {
+                list.add(new PriceLevel(this.product.symbol(), entry.getKey(), this.priceScale, 0, entry.getValue().quantity));
+            }
+        }
+        for (Map.Entry<Long, Level> entry : this.buys.entrySet()) {
+            if (entry.getValue().quantity > 0) {
+                list.add(new PriceLevel(this.product.symbol(), entry.getKey(), this.priceScale,
+                        entry.getValue().quantity, 0));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    void remove(RestingOrder restingOrder) {
+        Side side = restingOrder.side();
+        TreeMap<Long, Level> levels = side == Side.BUY ? this.buys : this.sells;
+        Level level = levels.get(restingOrder.priceTicks);
+        level.remove(restingOrder);
+        levelChanged(side, restingOrder.priceTicks, level.quantity, level.count, level.count + 1);
+        if (level.head == null) {
+            levels.remove(restingOrder.priceTicks);
+        }
+    }
+
+    @Override
+    void recycle() {
+        for (Level level : this.buys.values()) {
+            freeRestingOrders(level.head);
+        }
+        for (Level level : this.sells.values()) {
+            freeRestingOrders(level.head);
+        }
+        this.buys.clear();
+        this.sells.clear();
+        recycled();
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.order.Orders;
+import org.bryan.schorn.tha.matching.util.IdleStrategy;
+import org.bryan.schorn.tha.matching.util.RingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+
+/**
+ * Pre-Trade Validation Stage
+ *
+ * Runs the stateless rules (see Engine.Rule.isStateless) on threads of its
+ * own ahead of the Engine so the Engine's thread only sees the orders that
+ * passed them. The orders are routed (on the calling thread) by product to N
+ * workers, each with its own inbox, RulePipeline, rejects and outbox, so the
+ * orders of a symbol are always validated by the same worker and reach the
+ * Engine in the order they arrived. The orders of different symbols may
+ * reach the Engine in another order than they arrived.
+ *
+ * Only the rules added before the first rule that keeps state (or that the
+ * stage was not given) can run here since those that come after may only
+ * see the orders that passed it (see addRule). The others are added to the
+ * Engine as before.
+ *
+ * The Engine takes its orders from this stage (it is its order supplier)
+ * and the rejects go straight to the reject log (see getRejects). The
+ * rejects of a symbol from this stage and from the Engine are each in
+ * order but are not kept in order with one another.
+ *
+ * Properties:
+ *   ValidationThreads=N (0, the default, runs all the rules on the Engine's thread)
+ *   EngineIdleStrategy (used by the router and by each worker)
+ *   OrderRingSize (inbox and outbox size)
+ */
+public class ValidationStage implements Callable<Integer>, Supplier<Order> {
+    static private final Logger LGR = LoggerFactory.getLogger(ValidationStage.class);
+
+    static public final String THREADS = "ValidationThreads";
+
+    /**
+     * Number of validation threads configured in properties (0 when not specified)
+     *
+     * @param properties
+     * @return
+     */
+    static public int threads(Properties properties) {
+        return Integer.parseInt(properties.getProperty(THREADS, "0").trim());
+    }
+
+    /**
+     * Validates the orders of its products in its own thread
+     */
+    static final class Worker implements Callable<Integer> {
+        private final RingBuffer<Order> inbox;
+        private final RingBuffer<Order> outbox;
+        private final RulePipeline rules = new RulePipeline();
+        private final Engine.OutboundQueue<Order.Reject> rejects = new Engine.OutboundQueue<>();
+        private final EventPool<EventPool.PooledReject> rejectPool = new EventPool<>(EventPool.PooledReject::new);
+        private final IdleStrategy idleStrategy;
+        private final IdleStrategy backpressure = new IdleStrategy.Backoff();
+        private EngineLog.Channel log = new EngineLog.Direct(1);
+        private volatile Runnable listener = () -> {};
+        private volatile boolean keepLooping = true;
+        // the Engine has gone away (see ValidationStage.abort)
+        private volatile boolean aborted = false;
+
+        Worker(int ringSize, IdleStrategy idleStrategy) {
+            this.inbox = new RingBuffer<>(ringSize);
+            this.outbox = new RingBuffer<>(ringSize);
+            this.idleStrategy = idleStrategy;
+        }
+
+        void stop() {
+            this.keepLooping = false;
+            this.idleStrategy.signal();
+        }
+
+        @Override
+        public Integer call() {
+            int orderCount = 0;
+            while (this.keepLooping) {
+                int workCount = process();
+                orderCount += workCount;
+                this.idleStrategy.idle(workCount);
+            }
+            // orders that came in before stop() was called
+            orderCount += process();
+            return orderCount;
+        }
+
+        private int process() {
+            int orderCount = 0;
+            Order order = this.inbox.poll();
+            while (order != null) {
+                ++orderCount;
+                Engine.Rule rule = this.rules.check(order);
+                if (rule == null) {
+                    // dropped once the Engine has gone away
+                    if (this.outbox.put(order, this.backpressure, () -> this.aborted)) {
+                        this.listener.run();
+                    }
+                } else {
+                    String reason = rule.getReason(order);
+                    Order.Reject rejectedOrder = this.rejectPool.acquire().set(order, reason == null ? "unknown" : reason);
+                    this.log.reject(rejectedOrder);
+                    this.rejects.offer(rejectedOrder);
+                }
+                order = this.inbox.poll();
+            }
+            return orderCount;
+        }
+    }
+
+    private final Worker[] workers;
+    private final IdleStrategy idleStrategy;
+    private final IdleStrategy backpressure = new IdleStrategy.Backoff();
+    // upstream (the Orders conduit unless set)
+    private Supplier<Order> orderSupplier = null;
+    // a rule was left to the Engine (no more rules can run here)
+    private boolean rulesClosed = false;
+    // next outbox to take from (Engine's thread)
+    private int next = 0;
+
+    // life cycle
+    private volatile boolean keepLooping = true;
+    private volatile boolean aborted = false;
+
+    // ctor
+    public ValidationStage(int threads, Properties properties) throws Exception {
+        if (threads < 1) {
+            throw new Exception(String.format("%s must be at least 1 (was %d)", THREADS, threads));
+        }
+        this.idleStrategy = IdleStrategy.create(properties.getProperty(Engine.IDLE_STRATEGY));
+        int ringSize = Integer.parseInt(properties.getProperty(OrderFeed.RING_SIZE,
+                String.valueOf(RingBuffer.DEFAULT_CAPACITY)).trim());
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            this.workers[i] = new Worker(ringSize, IdleStrategy.create(properties.getProperty(Engine.IDLE_STRATEGY)));
+        }
+    }
+
+    /**
+     * Adds a stateless rule to the workers (shared, see Engine.Rule.newInstance).
+     * A rule that keeps state is not added and neither is any rule after it,
+     * those have to be added to the Engine.
+     *
+     * @param rule
+     * @return true when the rule runs in this stage
+     */
+    public boolean addRule(Engine.Rule rule) {
+        if (this.rulesClosed || !rule.isStateless()) {
+            this.rulesClosed = true;
+            return false;
+        }
+        for (Worker worker : this.workers) {
+            worker.rules.add(rule);
+        }
+        LGR.info("Rule added (validation stage): "+rule.ruleDescription());
+        return true;
+    }
+
+    /**
+     * Orders are taken from the Orders conduit unless another order
+     * supplier is set.
+     *
+     * @param orderSupplier
+     */
+    public void setOrderSupplier(Supplier<Order> orderSupplier) {
+        this.orderSupplier = orderSupplier;
+    }
+
+    /**
+     * Listener is run each time an order is passed on (e.g. Engine::signal)
+     *
+     * @param listener
+     */
+    public void setListener(Runnable listener) {
+        for (Worker worker : this.workers) {
+            worker.listener = listener;
+        }
+    }
+
+    public void setLog(EngineLog engineLog) throws Exception {
+        for (Worker worker : this.workers) {
+            worker.log = engineLog.newChannel();
+        }
+    }
+
+    /**
+     * Rejected orders of all the workers (merged round-robin)
+     *
+     * @return
+     */
+    public Engine.Outbound<Order.Reject> getRejects() {
+        List<Engine.Outbound<Order.Reject>> rejects = new ArrayList<>();
+        for (Worker worker : this.workers) {
+            rejects.add(worker.rejects);
+        }
+        return Engine.Outbound.roundRobin(rejects);
+    }
+
+    public void signal() {
+        this.idleStrategy.signal();
+    }
+
+    public void stop() {
+        this.keepLooping = false;
+        this.idleStrategy.signal();
+    }
+
+    /**
+     * The Engine has gone away (e.g. it failed): orders waiting for room in
+     * an inbox or outbox are dropped instead of waiting forever.
+     */
+    public void abort() {
+        this.aborted = true;
+        for (Worker worker : this.workers) {
+            worker.aborted = true;
+        }
+        stop();
+    }
+
+    /**
+     * Next order that passed validation (Engine's thread)
+     *
+     * @return null when there is none
+     */
+    @Override
+    public Order get() {
+        for (int n = 0; n < this.workers.length; n++) {
+            Order order = this.workers[this.next].outbox.poll();
+            this.next = this.next + 1 < this.workers.length ? this.next + 1 : 0;
+            if (order != null) {
+                return order;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs the workers in their own threads and routes the orders to them
+     * (on the calling thread) until stopped and there are no more orders.
+     * Once it returns every order validated is in an outbox.
+     *
+     * @return orders validated by all the workers
+     */
+    @Override
+    public Integer call() {
+        ExecutorService executorService = Executors.newFixedThreadPool(this.workers.length);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (Worker worker : this.workers) {
+            futures.add(executorService.submit(worker));
+        }
+        int orderCount = 0;
+        try {
+            Supplier<Order> orderSupplier = this.orderSupplier != null ? this.orderSupplier : Orders.getSupplier();
+            while (this.keepLooping) {
+                this.idleStrategy.idle(route(orderSupplier));
+            }
+            // orders that came in before stop() was called
+            route(orderSupplier);
+            for (Worker worker : this.workers) {
+                worker.stop();
+            }
+            for (Future<Integer> future : futures) {
+                orderCount += future.get();
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            LGR.error(ex.getMessage());
+        } finally {
+            executorService.shutdown();
+        }
+        return orderCount;
+    }
+
+    /**
+     * Routes orders to the workers' inboxes until the supplier has no more
+     *
+     * @param orderSupplier
+     * @return number of orders routed
+     */
+    private int route(Supplier<Order> orderSupplier) {
+        int orderCount = 0;
+        Order order = orderSupplier.get();
+        while (order != null) {
+            ++orderCount;
+            Worker worker = this.workers[worker(order)];
+            if (worker.inbox.put(order, this.backpressure, () -> this.aborted)) {
+                worker.idleStrategy.signal();
+            }
+            order = orderSupplier.get();
+        }
+        return orderCount;
+    }
+
+    // by product id (by symbol for orders without one)
+    private int worker(Order order) {
+        int productId = order.productId();
+        return productId >= 0 ? productId % this.workers.length
+                : PartitionedEngine.partition(order.symbol(), this.workers.length);
+    }
+}
@@ -28,6 +28,7 @@ package org.bryan.schorn.tha.matching.engine.rule;
 import org.bryan.schorn.tha.matching.engine.Engine;
 import org.bryan.schorn.tha.matching.model.Order;
 import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Product;
 import org.bryan.schorn.tha.matching.model.Side;
 import org.bryan.schorn.tha.matching.product.Products;
 
@@ -41,26 +42,40 @@ public class CheckRequiredFields implements Engine.Rule {
 
     @Override
     public boolean test(Order order) {
+        return test(order, order.symbol() != null ? Products.find(order) : null);
+    }
+
+    @Override
+    public boolean test(Order order, Product product) {
         switch (order.orderType()) {
+            case CANCEL:
+                // only what finds the resting order
+                return order.orderId() != 0L && product != null;
+            case REPLACE:
+                // a replacement is a limit order
+                return order.orderId() != 0L && limitFieldsPresent(order, product);
             case LIMIT:
-                if (order.price() == null || order.price() <= 0.0) {
-                    return false;
-                }
+                return limitFieldsPresent(order, product);
             case MARKET:
-                if (order.orderQty() == null || order.orderQty() <= 0) {
-                    return false;
-                }
-                if (order.symbol() == null || Products.find(order.symbol()) == null) {
-                    return false;
-                }
-                if (order.side() == null || order.side() == Side.UNKNOWN) {
-                    return false;
-                }
-                break;
+                return marketFieldsPresent(order, product);
             default:
                 return false;
         }
-        return true;
+    }
+
+    // a limit order is a market order with a price
+    private boolean limitFieldsPresent(Order order, Product product) {
+        return order.priceTicks() > 0 && marketFieldsPresent(order, product);
+    }
+
+    private boolean marketFieldsPresent(Order order, Product product) {
+        if (order.orderQty() == null || order.orderQty() <= 0) {
+            return false;
+        }
+        if (product == null) {
+            return false;
+        }
+        return order.side() != null && order.side() != Side.UNKNOWN;
     }
 
     @Override
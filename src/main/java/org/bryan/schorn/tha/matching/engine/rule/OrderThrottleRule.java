@@ -22,22 +22,23 @@
  * THE SOFTWARE.
  *
  */
-
 package org.bryan.schorn.tha.matching.engine.rule;
 
 import org.bryan.schorn.tha.matching.engine.Engine;
 import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.product.Products;
 
-import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeSet;
 
 
 /**
- *  An Engine Rule with the intent of limiting (by symbol) a specified number of orders
- *  allowed within a specified duration of time (in milliseconds).
+ *  An Engine Rule with the intent of limiting (by symbol or for all symbols)
+ *  a specified number of orders allowed within a specified duration of time
+ *  (in milliseconds).
  *
  */
 public class OrderThrottleRule implements Engine.Rule {
@@ -47,54 +48,148 @@ public class OrderThrottleRule implements Engine.Rule {
      */
     static public OrderThrottleRule MAX_THREE_PER_SECOND = new OrderThrottleRule(3,1000);
 
+    /**
+     * What the orders are counted by
+     */
+    public enum Scope {
+        // each symbol has its own window
+        SYMBOL,
+        // one window for the orders of all symbols (a PartitionedEngine
+        // refuses it, see isPartitionable)
+        GLOBAL
+    }
+
+    static private final long NANOS_PER_MS = 1_000_000L;
 
     // how many orders?
     int frequency;
     // for how long?
     long durationMS;
+    // counted by?
+    Scope scope;
     // what is the descriptive reason be for rule returning false?
     String reason;
     // what is the rule for
     String description;
     public OrderThrottleRule(int frequency, long durationMS) {
+        this(frequency, durationMS, Scope.SYMBOL);
+    }
+
+    public OrderThrottleRule(int frequency, long durationMS, Scope scope) {
+        if (frequency < 1) {
+            throw new IllegalArgumentException(String.format("frequency must be at least 1 (was %d)", frequency));
+        }
         this.frequency = frequency;
         this.durationMS = durationMS;
-        this.reason = String.format("order throttled: %d per %d ms window", this.frequency, this.durationMS);
-        this.description = String.format("Reject orders that come into the engine faster than %d per %d ms",
-                this.frequency, this.durationMS);
+        this.scope = scope;
+        this.global = new LastN();
+        String ofScope = scope == Scope.GLOBAL ? " (all symbols)" : "";
+        this.reason = String.format("order throttled: %d per %d ms window%s", this.frequency, this.durationMS, ofScope);
+        this.description = String.format("Reject orders that come into the engine faster than %d per %d ms%s",
+                this.frequency, this.durationMS, ofScope);
     }
 
     /**
      * Last N orders where N == OrderThrottleRule.frequency of parent instance.
-     * tracks the timestamp of the last N orders. Once N orders have been collected,
-     * new orders are checked if they occurred within the the time limit.
+     * Tracks the expiry (timestamp + duration) of the last N orders let
+     * through in a circular long[] of epoch nanos kept in ascending order
+     * from the head. Once N orders have been collected, new orders are
+     * checked against the oldest expiry (which then makes room).
+     *
+     * Orders mostly come in time order so an expiry is normally appended at
+     * the tail; one that is earlier is inserted in order, and a repeated
+     * one is kept once.
      */
-    class LastN {
-        TreeSet<Instant> orderTimes = new TreeSet<>();
-        boolean check(Instant orderInstant) {
-            if (orderTimes.size() == OrderThrottleRule.this.frequency) {
-                if (Duration.between(orderTimes.first(), orderInstant).toMillis() > OrderThrottleRule.this.durationMS) {
-                    orderTimes.remove(orderTimes.first());
+    final class LastN {
+        private final long[] expiries = new long[OrderThrottleRule.this.frequency];
+        private int head = 0;
+        private int size = 0;
+
+        boolean check(long orderNanos) {
+            if (this.size == this.expiries.length) {
+                long sinceOldest = Math.floorDiv(orderNanos - this.expiries[this.head], NANOS_PER_MS);
+                if (sinceOldest > OrderThrottleRule.this.durationMS) {
+                    this.head = next(this.head);
+                    --this.size;
                 } else {
                     return false;
                 }
             }
-            orderTimes.add(orderInstant.plusMillis(OrderThrottleRule.this.durationMS));
+            add(orderNanos + OrderThrottleRule.this.durationMS * NANOS_PER_MS);
             return true;
         }
+
+        private void add(long expiry) {
+            int i = this.size;
+            while (i > 0 && at(i - 1) > expiry) {
+                --i;
+            }
+            if (i > 0 && at(i - 1) == expiry) {
+                return;
+            }
+            for (int j = this.size; j > i; j--) {
+                this.expiries[slot(j)] = at(j - 1);
+            }
+            this.expiries[slot(i)] = expiry;
+            ++this.size;
+        }
+
+        // i-th expiry from the head
+        private long at(int i) {
+            return this.expiries[slot(i)];
+        }
+
+        private int slot(int i) {
+            int slot = this.head + i;
+            return slot < this.expiries.length ? slot : slot - this.expiries.length;
+        }
+
+        private int next(int slot) {
+            return slot + 1 < this.expiries.length ? slot + 1 : 0;
+        }
     }
 
-    // collection map by product
-    private Map<String,LastN> monitor = new HashMap<>();
+    // by product id (see Products), by symbol for orders without one, or
+    // the one for all of them
+    private LastN[] monitorById = new LastN[0];
+    private final Map<String,LastN> monitor = new HashMap<>();
+    private final LastN global;
 
     @Override
     public boolean test(Order order) {
-        LastN lastN = monitor.get(order.symbol());
+        return test(order, Products.find(order));
+    }
+
+    @Override
+    public boolean test(Order order, Product product) {
+        Instant timestamp = order.timestamp();
+        if (timestamp == null) {
+            // nothing to count it by
+            return true;
+        }
+        LastN lastN = this.scope == Scope.SYMBOL ? lastN(order, product) : this.global;
+        return lastN.check(timestamp.getEpochSecond() * 1_000_000_000L + timestamp.getNano());
+    }
+
+    private LastN lastN(Order order, Product product) {
+        int productId = product != null ? product.id() : -1;
+        if (productId < 0) {
+            LastN lastN = this.monitor.get(order.symbol());
+            if (lastN == null) {
+                lastN = new LastN();
+                this.monitor.put(order.symbol(), lastN);
+            }
+            return lastN;
+        }
+        if (productId >= this.monitorById.length) {
+            this.monitorById = Arrays.copyOf(this.monitorById, Math.max(productId + 1, this.monitorById.length * 2));
+        }
+        LastN lastN = this.monitorById[productId];
         if (lastN == null) {
             lastN = new LastN();
-            monitor.put(order.symbol(),lastN);
+            this.monitorById[productId] = lastN;
         }
-        return lastN.check(order.timestamp());
+        return lastN;
     }
 
     @Override
@@ -104,4 +199,25 @@ public class OrderThrottleRule implements Engine.Rule {
 
     @Override
     public String ruleDescription() { return this.description; }
+
+    /**
+     * The monitor is state so every Engine needs its own instance.
+     *
+     * @return
+     */
+    @Override
+    public Engine.Rule newInstance() {
+        return new OrderThrottleRule(this.frequency, this.durationMS, this.scope);
+    }
+
+    /**
+     * A GLOBAL window split over partitions would let each one through at
+     * the full rate.
+     *
+     * @return
+     */
+    @Override
+    public boolean isPartitionable() {
+        return this.scope != Scope.GLOBAL;
+    }
 }
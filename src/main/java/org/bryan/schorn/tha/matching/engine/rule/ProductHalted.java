@@ -27,6 +27,8 @@ package org.bryan.schorn.tha.matching.engine.rule;
 
 import org.bryan.schorn.tha.matching.engine.Engine;
 import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Product;
 import org.bryan.schorn.tha.matching.product.Products;
 
 
@@ -37,9 +39,20 @@ public class ProductHalted implements Engine.Rule {
 
     static public ProductHalted PRODUCTED_HALTED = new ProductHalted();
 
+    /**
+     * Cancels are let through so resting orders can be pulled while halted
+     */
     @Override
     public boolean test(Order order) {
-        return !Products.isHalted(order.symbol());
+        return order.orderType() == OrderType.CANCEL || !Products.isHalted(order);
+    }
+
+    /**
+     * Unknown products are halted (see Products.isHalted)
+     */
+    @Override
+    public boolean test(Order order, Product product) {
+        return order.orderType() == OrderType.CANCEL || (product != null && !product.isHalted());
     }
 
     @Override
@@ -0,0 +1,420 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.mock;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Price;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.bryan.schorn.tha.matching.util.IdleStrategy;
+import org.bryan.schorn.tha.matching.util.RingBuffer;
+import org.bryan.schorn.tha.matching.util.SymbolTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Properties;
+
+/**
+ * Memory-Mapped Order Feed (from file)
+ *
+ * Same file format and Orders as MockOrderFeed (columns from the
+ * OrderFileHeader property, optional quantity column) but the file is
+ * memory-mapped and the fields are parsed straight from the mapped bytes:
+ * no line Strings, no split(), symbols interned through a SymbolTable and
+ * numbers parsed digit by digit (prices straight into ticks of the
+ * Product's price scale). Files larger than a mapping window are
+ * mapped one window at a time.
+ *
+ * OrderFeed=org.bryan.schorn.tha.matching.mock.MappedOrderFeed
+ */
+public class MappedOrderFeed extends OrderFeed.AbstractOrderFeed {
+
+    static private final Logger LGR = LoggerFactory.getLogger(MappedOrderFeed.class);
+
+    // bytes mapped at a time
+    static private final long WINDOW_SIZE = 1L << 28;
+    // ticks past this could overflow (Price.parse() checks)
+    static private final long MAX_TICKS = Long.MAX_VALUE / 100 / Price.unit(Price.MAX_SCALE);
+    static private final byte[] HEADER_PREFIX = "symbol".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Members
+     */
+    private Properties properties;
+    private RingBuffer<Order> ring = new RingBuffer<>(RingBuffer.DEFAULT_CAPACITY);
+    private final IdleStrategy backpressure = new IdleStrategy.Backoff();
+    private final SymbolTable symbolTable = new SymbolTable();
+    private long windowSize = WINDOW_SIZE;
+    private Path orderFilePath = null;
+    // column of each field (-1 when not in the header)
+    private int idColumn, symbolColumn, sideColumn, typeColumn, priceColumn, timestampColumn, quantityColumn;
+    // field positions of the current line
+    private int[] fieldStarts;
+    private int[] fieldEnds;
+
+    /**
+     * Config
+     * @param properties
+     * @throws Exception
+     */
+    @Override
+    public void setProperties(Properties properties) throws Exception {
+        this.properties = properties;
+        String header = properties.getProperty("OrderFileHeader");
+        if (header == null) {
+            throw new Exception(String.format("%s requires OrderFileHeader", MappedOrderFeed.class.getSimpleName()));
+        }
+        String[] fields = header.split(",");
+        this.idColumn = column(fields, "id");
+        this.symbolColumn = column(fields, "symbol");
+        this.sideColumn = column(fields, "side");
+        this.typeColumn = column(fields, "type");
+        this.priceColumn = column(fields, "price");
+        this.timestampColumn = column(fields, "timestamp");
+        this.quantityColumn = column(fields, "quantity");
+        this.fieldStarts = new int[fields.length];
+        this.fieldEnds = new int[fields.length];
+        String ringSize = properties.getProperty(RING_SIZE);
+        if (ringSize != null) {
+            this.ring = new RingBuffer<>(Integer.parseInt(ringSize.trim()));
+        }
+    }
+
+    // smaller windows (tests)
+    void setWindowSize(long windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    static private int column(String[] fields, String name) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].trim().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Connect
+     *
+     * @throws Exception
+     */
+    @Override
+    public void connect() throws Exception {
+        String orderFile = this.properties.getProperty("OrderFile");
+        if (orderFile == null) {
+            throw new Exception(String.format("There was no file order file specified.\n"
+                    +"Please specify the order file in application.properties:\n"
+                    +"Order.File=<filepath>\n"));
+        }
+        this.orderFilePath = Paths.get(orderFile);
+        if (!Files.exists(this.orderFilePath)) {
+            throw new Exception(String.format("%s file not found: %s",
+                    MappedOrderFeed.class.getSimpleName(),
+                    orderFile));
+        }
+        // the Products' symbols are the interned instances
+        for (Product product : Products.findAll()) {
+            this.symbolTable.intern(product.symbol());
+        }
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        int records = 0;
+        try (FileChannel channel = FileChannel.open(this.orderFilePath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = 0;
+            while (position < fileSize) {
+                long windowSize = Math.min(this.windowSize, fileSize - position);
+                boolean lastWindow = position + windowSize == fileSize;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int limit = (int) windowSize;
+                int lineStart = 0;
+                while (lineStart < limit) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                        ++lineEnd;
+                    }
+                    if (lineEnd == limit && !lastWindow) {
+                        // the line continues in the next window
+                        break;
+                    }
+                    Order order = parse(buffer, lineStart, lineEnd);
+                    if (order != null) {
+                        if (!this.ring.put(order, this.backpressure, this::isAborted)) {
+                            throw abortedException(records);
+                        }
+                        ++records;
+                        notifyListener();
+                    }
+                    lineStart = lineEnd + 1;
+                }
+                if (lineStart == 0 && !lastWindow) {
+                    throw new Exception(String.format("%s line longer than %d bytes at %d",
+                            MappedOrderFeed.class.getSimpleName(), this.windowSize, position));
+                }
+                position += Math.min(lineStart, limit);
+            }
+        }
+        // return the count of records read
+        return records;
+    }
+
+    /**
+     * Get next Order (Supplier interface)
+     *
+     * @return
+     */
+    @Override
+    public Order get() {
+        return this.ring.poll();
+    }
+
+    /**
+     * Order from the line buffer[start..end) (null for header/blank lines)
+     */
+    private Order parse(MappedByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            --end;
+        }
+        if (end == start || startsWith(buffer, start, end, HEADER_PREFIX)) {
+            return null;
+        }
+        int fields = this.fieldStarts.length;
+        int field = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end && field < fields; i++) {
+            if (i == end || buffer.get(i) == ',') {
+                this.fieldStarts[field] = fieldStart;
+                this.fieldEnds[field] = i;
+                ++field;
+                fieldStart = i + 1;
+            }
+        }
+        // missing trailing fields are empty
+        for (; field < fields; field++) {
+            this.fieldStarts[field] = end;
+            this.fieldEnds[field] = end;
+        }
+        String symbol = symbol(buffer, this.symbolColumn);
+        Product product = symbol != null ? Products.find(symbol) : null;
+        int priceScale = product != null ? product.priceScale() : Price.DEFAULT_SCALE;
+        Side side = side(buffer, this.sideColumn);
+        return Order.create(
+                orderId(buffer, this.idColumn),
+                product != null ? product.id() : -1,
+                timestamp(buffer, this.timestampColumn),
+                symbol,
+                side,
+                orderType(buffer, this.typeColumn),
+                priceTicks(buffer, this.priceColumn, priceScale, side),
+                priceScale,
+                quantity(buffer, this.quantityColumn));
+    }
+
+    private String symbol(MappedByteBuffer buffer, int column) {
+        if (column < 0) {
+            return null;
+        }
+        return this.symbolTable.intern(buffer, this.fieldStarts[column], this.fieldEnds[column]);
+    }
+
+    // as Side.parse (first letter)
+    private Side side(MappedByteBuffer buffer, int column) {
+        if (column < 0 || this.fieldStarts[column] == this.fieldEnds[column]) {
+            return Side.UNKNOWN;
+        }
+        switch (lower(buffer.get(this.fieldStarts[column]))) {
+            case 'b':
+                return Side.BUY;
+            case 's':
+                return Side.SELL;
+        }
+        return Side.UNKNOWN;
+    }
+
+    // as OrderType.parse (first two letters)
+    private OrderType orderType(MappedByteBuffer buffer, int column) {
+        if (column < 0 || this.fieldEnds[column] - this.fieldStarts[column] < 2) {
+            return OrderType.UNKNOWN;
+        }
+        int c0 = lower(buffer.get(this.fieldStarts[column]));
+        int c1 = lower(buffer.get(this.fieldStarts[column] + 1));
+        if (c0 == 'm' && (c1 == 'a' || c1 == 'k')) {
+            return OrderType.MARKET;
+        }
+        if (c0 == 'l' && (c1 == 'i' || c1 == 'm')) {
+            return OrderType.LIMIT;
+        }
+        if (c0 == 'c' && (c1 == 'a' || c1 == 'x')) {
+            return OrderType.CANCEL;
+        }
+        if (c0 == 'r' && (c1 == 'e' || c1 == 'p')) {
+            return OrderType.REPLACE;
+        }
+        return OrderType.UNKNOWN;
+    }
+
+    // order id digits (0 when empty)
+    private long orderId(MappedByteBuffer buffer, int column) {
+        if (column < 0 || this.fieldStarts[column] == this.fieldEnds[column]) {
+            return 0L;
+        }
+        long orderId = 0L;
+        for (int i = this.fieldStarts[column]; i < this.fieldEnds[column]; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                // anything else as Long.parseLong (throws)
+                return Long.parseLong(string(buffer, this.fieldStarts[column], this.fieldEnds[column]));
+            }
+            orderId = orderId * 10 + (b - '0');
+        }
+        return orderId;
+    }
+
+    /**
+     * Price in ticks of the scale (0 when empty), digits beyond the scale
+     * are rounded toward the side's passive side as Price.parse() does
+     */
+    private long priceTicks(MappedByteBuffer buffer, int column, int scale, Side side) {
+        if (column < 0 || this.fieldStarts[column] == this.fieldEnds[column]) {
+            return 0L;
+        }
+        int start = this.fieldStarts[column];
+        int end = this.fieldEnds[column];
+        boolean negative = buffer.get(start) == '-';
+        long ticks = 0;
+        int decimals = -1;
+        boolean roundUp = false;
+        boolean remainder = false;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b >= '0' && b <= '9' && decimals < scale && ticks < MAX_TICKS) {
+                ticks = ticks * 10 + (b - '0');
+                if (decimals >= 0) {
+                    ++decimals;
+                }
+            } else if (b >= '0' && b <= '9' && decimals == scale) {
+                roundUp = b >= '5';
+                remainder |= b != '0';
+                ++decimals;
+            } else if (b >= '0' && b <= '9' && decimals > scale) {
+                remainder |= b != '0';
+            } else {
+                // anything else (and overflow) as Price.parse()
+                return Price.parse(string(buffer, start, end), scale, side);
+            }
+        }
+        ticks *= Price.unit(scale - Math.min(Math.max(decimals, 0), scale));
+        if (Price.roundUp(side, negative, roundUp, remainder)) {
+            ++ticks;
+        }
+        return negative ? -ticks : ticks;
+    }
+
+    /**
+     * seconds.fraction where the fraction digits are read as a number of
+     * nanoseconds (as MockOrderFeedParser does)
+     */
+    private Instant timestamp(MappedByteBuffer buffer, int column) {
+        if (column < 0 || this.fieldStarts[column] == this.fieldEnds[column]) {
+            return null;
+        }
+        long seconds = 0;
+        long nanos = 0;
+        boolean fraction = false;
+        for (int i = this.fieldStarts[column]; i < this.fieldEnds[column]; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && !fraction) {
+                fraction = true;
+            } else if (b >= '0' && b <= '9') {
+                if (fraction) {
+                    nanos = nanos * 10 + (b - '0');
+                } else {
+                    seconds = seconds * 10 + (b - '0');
+                }
+            } else {
+                LGR.error("Failed to parse timestamp.");
+                return null;
+            }
+        }
+        return Instant.ofEpochSecond(seconds, nanos);
+    }
+
+    // optional (1 when the header has no quantity field or it is empty)
+    private Integer quantity(MappedByteBuffer buffer, int column) {
+        if (column < 0 || this.fieldStarts[column] == this.fieldEnds[column]) {
+            return 1;
+        }
+        int quantity = 0;
+        for (int i = this.fieldStarts[column]; i < this.fieldEnds[column]; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return Integer.valueOf(string(buffer, this.fieldStarts[column], this.fieldEnds[column]));
+            }
+            quantity = quantity * 10 + (b - '0');
+        }
+        return quantity;
+    }
+
+    static private int lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    static private boolean startsWith(MappedByteBuffer buffer, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static private String string(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
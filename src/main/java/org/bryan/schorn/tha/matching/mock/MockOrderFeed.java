@@ -28,6 +28,8 @@ package org.bryan.schorn.tha.matching.mock;
 import org.bryan.schorn.tha.matching.model.Order;
 import org.bryan.schorn.tha.matching.order.OrderFeed;
 import org.bryan.schorn.tha.matching.util.ClassLocator;
+import org.bryan.schorn.tha.matching.util.IdleStrategy;
+import org.bryan.schorn.tha.matching.util.RingBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,12 +37,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Mock Order Feed (from file)
+ *
+ * Orders are handed to the Engine through a bounded RingBuffer (size from
+ * the OrderRingSize property). When the Engine falls behind, reading the
+ * file waits for room instead of buffering the rest of the file.
  */
 public class MockOrderFeed extends OrderFeed.AbstractOrderFeed {
 
@@ -58,7 +63,8 @@ public class MockOrderFeed extends OrderFeed.AbstractOrderFeed {
      * Members
      */
     private Properties properties;
-    private Queue<Order> queue = new ConcurrentLinkedQueue<>();
+    private RingBuffer<Order> ring = new RingBuffer<>(RingBuffer.DEFAULT_CAPACITY);
+    private final IdleStrategy backpressure = new IdleStrategy.Backoff();
     private List<Exception> exceptions = new ArrayList<>();
     private MockOrderParser parser = null;
     private Path orderFilePath = null;
@@ -74,6 +80,10 @@ public class MockOrderFeed extends OrderFeed.AbstractOrderFeed {
         ClassLocator classLocator = ClassLocator.create(properties);
         this.parser = (MockOrderParser) classLocator.newInstance(MockOrderParser.class.getSimpleName());
         this.parser.setHeader(properties.getProperty("OrderFileHeader"));
+        String ringSize = properties.getProperty(RING_SIZE);
+        if (ringSize != null) {
+            this.ring = new RingBuffer<>(Integer.parseInt(ringSize.trim()));
+        }
     }
 
     /**
@@ -101,19 +111,25 @@ public class MockOrderFeed extends OrderFeed.AbstractOrderFeed {
 
     @Override
     public Integer call() throws Exception {
-        final AtomicInteger records = new AtomicInteger(0);
+        int records = 0;
         Predicate<String> skipHeader = (s) -> !s.startsWith("symbol");
         Predicate<Order> skipNulls = (o) -> o != null;
-        Files.lines(this.orderFilePath)
-                .filter(skipHeader)
-                .map(this.parser)
-                .filter(skipNulls)
-                .forEachOrdered(o -> {
-                    records.incrementAndGet();
-                    queue.add(o);
-                });
+        try (Stream<String> lines = Files.lines(this.orderFilePath)) {
+            Iterator<Order> orders = lines
+                    .filter(skipHeader)
+                    .map(this.parser)
+                    .filter(skipNulls)
+                    .iterator();
+            while (orders.hasNext()) {
+                if (!this.ring.put(orders.next(), this.backpressure, this::isAborted)) {
+                    throw abortedException(records);
+                }
+                ++records;
+                notifyListener();
+            }
+        }
         // return the count of records read
-        return records.get();
+        return records;
     }
 
 
@@ -124,7 +140,7 @@ public class MockOrderFeed extends OrderFeed.AbstractOrderFeed {
      */
     @Override
     public Order get() {
-        return this.queue.poll();
+        return this.ring.poll();
     }
 
 
@@ -27,7 +27,10 @@ package org.bryan.schorn.tha.matching.mock;
 
 import org.bryan.schorn.tha.matching.model.Order;
 import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Price;
+import org.bryan.schorn.tha.matching.model.Product;
 import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.product.Products;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,14 +72,30 @@ public class MockOrderFeedParser implements MockOrderFeed.MockOrderParser {
         } catch (DateTimeParseException ex) {
             LGR.error("Failed to parse timestamp.");
         }
-        return Order.create(timestamp,
-            values[fieldMap.get("symbol")],
-            Side.parse(values[fieldMap.get("side")]),
+        // quantity is optional (1 when the header has no quantity field)
+        Integer quantityIndex = fieldMap.get("quantity");
+        Integer orderQty = quantityIndex != null && quantityIndex < values.length && values[quantityIndex].length() > 0
+                ? Integer.valueOf(values[quantityIndex])
+                : 1;
+        // price in ticks of the product's price scale
+        String symbol = values[fieldMap.get("symbol")];
+        Product product = Products.find(symbol);
+        int priceScale = product != null ? product.priceScale() : Price.DEFAULT_SCALE;
+        // order id is optional (0 when the header has no id field)
+        Integer idIndex = fieldMap.get("id");
+        long orderId = idIndex != null && idIndex < values.length && values[idIndex].length() > 0
+                ? Long.parseLong(values[idIndex])
+                : 0L;
+        Side side = Side.parse(values[fieldMap.get("side")]);
+        return Order.create(orderId,
+            product != null ? product.id() : -1,
+            timestamp,
+            symbol,
+            side,
             OrderType.parse(values[fieldMap.get("type")]),
-            values[fieldMap.get("price")].length() > 0
-                ? Double.valueOf(values[fieldMap.get("price")])
-                : 0.0,
-            1);
+            Price.parse(values[fieldMap.get("price")], priceScale, side),
+            priceScale,
+            orderQty);
     }
 
     static final Function<String, Instant> parseEpochNanoTimestamp = (timeStr) -> {
@@ -0,0 +1,127 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.mock;
+
+import org.bryan.schorn.tha.matching.product.ProductControlFeed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mock Product Control Feed (from file)
+ *
+ * One event per line in CSV format: action,symbol,is_halted,price_scale
+ * where action is HALT, RESUME or ADD and the last two are optional (only
+ * used by ADD, default not halted and the default price scale).
+ *
+ * Properties:
+ *   ProductControlFile=<filepath>
+ */
+public class MockProductControlFeed extends ProductControlFeed.AbstractProductControlFeed {
+
+    static private final Logger LGR = LoggerFactory.getLogger(MockProductControlFeed.class);
+
+    private Properties properties;
+    private Path controlFilePath = null;
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void setProperties(Properties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void connect() throws Exception {
+        String controlFile = this.properties.getProperty("ProductControlFile");
+        if (controlFile == null) {
+            throw new Exception(String.format("There was no product control file specified.\n"
+                    +"Please specify the product control file in application.properties:\n"
+                    +"ProductControlFile=<filepath>\n"));
+        }
+        this.controlFilePath = Paths.get(controlFile);
+        if (!Files.exists(this.controlFilePath)) {
+            throw new Exception(String.format("%s file not found: %s",
+                    MockProductControlFeed.class.getSimpleName(),
+                    controlFile));
+        }
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        final AtomicInteger records = new AtomicInteger(0);
+        Files.lines(this.controlFilePath)
+                .filter(s -> !s.startsWith("action") && !s.isBlank())
+                .forEachOrdered(line -> {
+                    Event event = parse(line);
+                    if (event != null) {
+                        records.incrementAndGet();
+                        this.queue.add(event);
+                        notifyListener();
+                    }
+                });
+        // return the count of records read
+        return records.get();
+    }
+
+    /**
+     * Parse a line (null when it is not a valid event)
+     *
+     * @param line
+     * @return
+     */
+    static Event parse(String line) {
+        try {
+            String[] values = line.split(",");
+            Action action = Action.parse(values[0]);
+            if (action == null || values.length < 2 || values[1].isBlank()) {
+                throw new Exception("Expecting action,symbol[,is_halted,price_scale]");
+            }
+            Boolean halted = values.length > 2 && !values[2].isBlank() ? Boolean.valueOf(values[2].trim()) : null;
+            Integer priceScale = values.length > 3 && !values[3].isBlank() ? Integer.valueOf(values[3].trim()) : null;
+            return Event.create(action, values[1].trim(), halted, priceScale);
+        } catch (Exception ex) {
+            LGR.error(String.format("%s,%s", line, ex.getMessage()));
+        }
+        return null;
+    }
+
+    /**
+     * Get next Event (Supplier interface)
+     *
+     * @return
+     */
+    @Override
+    public Event get() {
+        return this.queue.poll();
+    }
+}
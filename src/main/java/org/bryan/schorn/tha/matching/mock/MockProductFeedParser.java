@@ -37,11 +37,13 @@ import java.util.Map;
 
 /**
  * Product Parser Implementation for a line in CSV format
+ *
+ * price_scale (decimal places of a price tick) is optional (default 2).
  */
 public class MockProductFeedParser implements ProductParser {
     static private final Logger LGR = LoggerFactory.getLogger(MockProductFeedParser.class);
 
-    static final String HEADER = "symbol,is_halted";
+    static final String HEADER = "symbol,is_halted,price_scale";
     static final Map<String,Integer> FIELD_MAP = new HashMap<>();
     static {
         String[] fields = HEADER.split(",");
@@ -65,7 +67,10 @@ public class MockProductFeedParser implements ProductParser {
             if (values.length != 2 && values.length != FIELD_MAP.size()) {
                 throw new Exception(String.format("Found %d fields was expecting %d fields", values.length, FIELD_MAP.size()));
             }
-            Product product = Product.create(values[FIELD_MAP.get("symbol")]);
+            Integer scaleIndex = FIELD_MAP.get("price_scale");
+            Product product = scaleIndex < values.length && values[scaleIndex].length() > 0
+                    ? Product.create(values[FIELD_MAP.get("symbol")], Integer.parseInt(values[scaleIndex].trim()))
+                    : Product.create(values[FIELD_MAP.get("symbol")]);
             product.setHalted(Boolean.valueOf(values[FIELD_MAP.get("is_halted")]));
             return product;
         } catch (Exception ex) {
@@ -33,45 +33,135 @@ import java.util.StringJoiner;
  *
  */
 public interface Order {
+    /**
+     * Id of the order (0 when it has none). A CANCEL or REPLACE has the id
+     * of the resting order it cancels or replaces.
+     *
+     * @return
+     */
+    long orderId();
     Instant timestamp();
     String symbol();
+
+    /**
+     * Registry id of the symbol's product resolved when the order was
+     * parsed (see Product.id), -1 when it was not resolved
+     *
+     * @return
+     */
+    int productId();
     OrderType orderType();
     Side side();
-    Double price();
     Integer orderQty();
 
+    /**
+     * Price in ticks of priceScale() (0 when there is no price)
+     *
+     * @return
+     */
+    long priceTicks();
+    int priceScale();
+
+    /**
+     * Price as a double (view of priceTicks/priceScale)
+     *
+     * @return
+     */
+    default Double price() {
+        return Price.toDouble(priceTicks(), priceScale());
+    }
+
 
+    /**
+     * Create with a double price (kept at the smallest scale that holds it,
+     * see Price.scaleOf)
+     */
     static Order create(Instant timestamp,
                         String symbol,
                         Side side,
                         OrderType orderType,
                         Double price,
                         Integer orderQty) {
-        return new Impl(timestamp, symbol, side, orderType, price, orderQty);
+        int priceScale = price == null ? Price.DEFAULT_SCALE : Price.scaleOf(price);
+        long priceTicks = price == null ? 0L : Price.toTicks(price, priceScale);
+        return new Impl(0L, -1, timestamp, symbol, side, orderType, priceTicks, priceScale, orderQty);
+    }
+
+    /**
+     * Create with a fixed-point price
+     */
+    static Order create(Instant timestamp,
+                        String symbol,
+                        Side side,
+                        OrderType orderType,
+                        long priceTicks,
+                        int priceScale,
+                        Integer orderQty) {
+        return new Impl(0L, -1, timestamp, symbol, side, orderType, priceTicks, priceScale, orderQty);
+    }
+
+    /**
+     * Create with an order id and a fixed-point price
+     */
+    static Order create(long orderId,
+                        Instant timestamp,
+                        String symbol,
+                        Side side,
+                        OrderType orderType,
+                        long priceTicks,
+                        int priceScale,
+                        Integer orderQty) {
+        return new Impl(orderId, -1, timestamp, symbol, side, orderType, priceTicks, priceScale, orderQty);
+    }
+
+    /**
+     * Create with an order id, the product's registry id and a fixed-point price
+     */
+    static Order create(long orderId,
+                        int productId,
+                        Instant timestamp,
+                        String symbol,
+                        Side side,
+                        OrderType orderType,
+                        long priceTicks,
+                        int priceScale,
+                        Integer orderQty) {
+        return new Impl(orderId, productId, timestamp, symbol, side, orderType, priceTicks, priceScale, orderQty);
     }
 
     class Impl implements Order {
+        private final long orderId;
+        private final int productId;
         private final Instant timestamp;
         private final String symbol;
         private final Side side;
         private final OrderType orderType;
-        private final Double price;
+        private final long priceTicks;
+        private final int priceScale;
         private final Integer orderQty;
 
-        private Impl(Instant timestamp,
+        private Impl(long orderId,
+                         int productId,
+                         Instant timestamp,
                          String symbol,
                          Side side,
                          OrderType orderType,
-                         Double price,
+                         long priceTicks,
+                         int priceScale,
                          Integer orderQty) {
+            this.orderId = orderId;
+            this.productId = productId;
             this.timestamp = timestamp;
             this.symbol = symbol;
             this.side = side;
             this.orderType = orderType;
-            this.price = price;
+            this.priceTicks = priceTicks;
+            this.priceScale = priceScale;
             this.orderQty = orderQty;
         }
 
+        public long orderId() { return this.orderId; }
+        public int productId() { return this.productId; }
         public Instant timestamp() { return this.timestamp; }
         public String symbol() {
             return this.symbol;
@@ -82,8 +172,11 @@ public interface Order {
         public Side side() {
             return this.side;
         }
-        public Double price() {
-            return this.price;
+        public long priceTicks() {
+            return this.priceTicks;
+        }
+        public int priceScale() {
+            return this.priceScale;
         }
         public OrderType orderType() {
             return this.orderType;
@@ -93,11 +186,11 @@ public interface Order {
         public String toString() {
             StringJoiner joiner = new StringJoiner("\n","","");
             //symbol,side,type,price,timestamp
-            joiner.add(String.format("%s,%s,%s,%.2f,%d.%d",
+            joiner.add(String.format("%s,%s,%s,%s,%d.%d",
                     this.symbol,
                     this.side.name(),
                     this.orderType.name(),
-                    this.price,
+                    Price.toString(this.priceTicks, this.priceScale),
                     this.timestamp.getEpochSecond(),
                     this.timestamp.getNano()));
             return joiner.toString();
@@ -106,27 +199,32 @@ public interface Order {
     }
 
     static Reject reject(Order order, String reason) {
-        return new Reject(order, reason);
+        return new Reject.Impl(order, reason);
     }
     /**
      * Reject Order
      */
-    class Reject {
+    interface Reject {
+        Order order();
+        String reason();
 
-        private final Order order;
-        private final String reason;
+        class Impl implements Reject {
 
-        private Reject(Order order, String reason) {
-            this.order = order;
-            this.reason = reason;
-        }
-        public Order order() { return this.order; }
+            private final Order order;
+            private final String reason;
 
-        public String reason() { return this.reason; }
+            private Impl(Order order, String reason) {
+                this.order = order;
+                this.reason = reason;
+            }
+            public Order order() { return this.order; }
 
-        @Override
-        public String toString() {
-            return String.format("%s,%s", this.order.toString(), this.reason());
+            public String reason() { return this.reason; }
+
+            @Override
+            public String toString() {
+                return String.format("%s,%s", this.order.toString(), this.reason());
+            }
         }
     }
 
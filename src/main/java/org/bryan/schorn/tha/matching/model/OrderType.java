@@ -25,8 +25,13 @@
 
 package org.bryan.schorn.tha.matching.model;
 
+/**
+ * CANCEL and REPLACE refer to a resting order by its id (see Order.orderId):
+ * a cancel removes it from the book, a replace (cancel-replace) removes it
+ * and enters the replacement as a limit order with the same id.
+ */
 public enum OrderType {
-    MARKET, LIMIT, UNKNOWN;
+    MARKET, LIMIT, CANCEL, REPLACE, UNKNOWN;
 
     static public OrderType parse(String text) {
         if (text.toLowerCase().startsWith("ma") || text.toLowerCase().startsWith("mk")) {
@@ -35,6 +40,12 @@ public enum OrderType {
         if (text.toLowerCase().startsWith("li") || text.toLowerCase().startsWith("lm")) {
             return OrderType.LIMIT;
         }
+        if (text.toLowerCase().startsWith("ca") || text.toLowerCase().startsWith("cx")) {
+            return OrderType.CANCEL;
+        }
+        if (text.toLowerCase().startsWith("re") || text.toLowerCase().startsWith("rp")) {
+            return OrderType.REPLACE;
+        }
         return OrderType.UNKNOWN;
     }
 }
@@ -0,0 +1,255 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.model;
+
+/**
+ * Fixed-Point Price
+ *
+ * Prices are carried as a long number of ticks along with a scale (the
+ * decimal places of a tick), e.g. 131.57 at scale 2 is 13157 ticks. Each
+ * Product has its own scale. Comparing and matching prices is then exact
+ * long arithmetic, and the text is written without going through a
+ * double (no %.2f rounding).
+ *
+ * A price of 0 ticks means no price (market orders).
+ */
+public final class Price {
+
+    static public final int DEFAULT_SCALE = 2;
+    static public final int MAX_SCALE = 9;
+
+    static private final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    private Price() {
+    }
+
+    /**
+     * 10^scale (ticks per unit)
+     *
+     * @param scale
+     * @return
+     */
+    static public long unit(int scale) {
+        return POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * Ticks of a double price (rounded half-up to the tick)
+     *
+     * @param price
+     * @param scale
+     * @return
+     */
+    static public long toTicks(double price, int scale) {
+        return Math.round(price * POWERS_OF_TEN[scale]);
+    }
+
+    /**
+     * Ticks of a double price at the smallest scale (from DEFAULT_SCALE up
+     * to MAX_SCALE) that holds it exactly
+     *
+     * @param price
+     * @return
+     */
+    static public int scaleOf(double price) {
+        for (int scale = DEFAULT_SCALE; scale < MAX_SCALE; scale++) {
+            if (toDouble(toTicks(price, scale), scale) == price) {
+                return scale;
+            }
+        }
+        return MAX_SCALE;
+    }
+
+    /**
+     * Double of ticks (the same double as parsing the decimal text)
+     *
+     * @param ticks
+     * @param scale
+     * @return
+     */
+    static public double toDouble(long ticks, int scale) {
+        return ticks / (double) POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * Ticks at another scale (rounded half-up when the scale is reduced)
+     *
+     * @param ticks
+     * @param fromScale
+     * @param toScale
+     * @return
+     */
+    static public long rescale(long ticks, int fromScale, int toScale) {
+        if (fromScale == toScale) {
+            return ticks;
+        }
+        if (toScale > fromScale) {
+            return ticks * POWERS_OF_TEN[toScale - fromScale];
+        }
+        long unit = POWERS_OF_TEN[fromScale - toScale];
+        long half = ticks < 0 ? -(unit / 2) : unit / 2;
+        return (ticks + half) / unit;
+    }
+
+    /**
+     * Ticks of a side's limit price at another scale, rounded toward the
+     * passive side when the scale is reduced (a BUY down, a SELL up) so the
+     * order is never more aggressive than its price (half-up without a side)
+     *
+     * @param ticks
+     * @param fromScale
+     * @param toScale
+     * @param side
+     * @return
+     */
+    static public long rescale(long ticks, int fromScale, int toScale, Side side) {
+        if (toScale >= fromScale || (side != Side.BUY && side != Side.SELL)) {
+            return rescale(ticks, fromScale, toScale);
+        }
+        long unit = POWERS_OF_TEN[fromScale - toScale];
+        return side == Side.BUY ? Math.floorDiv(ticks, unit) : -Math.floorDiv(-ticks, unit);
+    }
+
+    /**
+     * Ticks of decimal text, e.g. "131.57" (digits beyond the scale are
+     * rounded half-up, empty text is 0)
+     *
+     * @param text
+     * @param scale
+     * @return
+     * @throws NumberFormatException
+     */
+    static public long parse(CharSequence text, int scale) {
+        return parse(text, scale, null);
+    }
+
+    /**
+     * Ticks of a side's limit price text, digits beyond the scale are
+     * rounded toward the passive side (a BUY down, a SELL up) so the order
+     * is never more aggressive than its price, e.g. a BUY at "130.005" is
+     * 130.00 and a SELL is 130.01 (half-up without a side)
+     *
+     * @param text
+     * @param scale
+     * @param side
+     * @return
+     * @throws NumberFormatException
+     */
+    static public long parse(CharSequence text, int scale, Side side) {
+        int length = text.length();
+        if (length == 0) {
+            return 0L;
+        }
+        int i = 0;
+        boolean negative = text.charAt(0) == '-';
+        if (negative || text.charAt(0) == '+') {
+            ++i;
+        }
+        long ticks = 0L;
+        int decimals = -1;
+        boolean roundUp = false;
+        boolean remainder = false;
+        boolean digits = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                if (decimals < scale) {
+                    ticks = Math.addExact(Math.multiplyExact(ticks, 10L), c - '0');
+                    if (decimals >= 0) {
+                        ++decimals;
+                    }
+                } else if (decimals == scale) {
+                    // first digit beyond the tick decides the rounding half-up
+                    roundUp = c >= '5';
+                    remainder |= c != '0';
+                    decimals = scale + 1;
+                } else if (decimals > scale) {
+                    remainder |= c != '0';
+                }
+            } else {
+                throw new NumberFormatException(String.format("Invalid price: '%s'", text));
+            }
+        }
+        if (!digits) {
+            throw new NumberFormatException(String.format("Invalid price: '%s'", text));
+        }
+        ticks = Math.multiplyExact(ticks, POWERS_OF_TEN[scale - Math.min(Math.max(decimals, 0), scale)]);
+        if (roundUp(side, negative, roundUp, remainder)) {
+            ++ticks;
+        }
+        return negative ? -ticks : ticks;
+    }
+
+    /**
+     * Is the magnitude of a price rounded up: toward the passive side of the
+     * side's limit price (a BUY down, a SELL up) or half-up without a side
+     *
+     * @param side
+     * @param negative
+     * @param half the first digit beyond the scale is 5 or more
+     * @param remainder there are non-zero digits beyond the scale
+     * @return
+     */
+    static public boolean roundUp(Side side, boolean negative, boolean half, boolean remainder) {
+        if (side == Side.BUY) {
+            return negative && remainder;
+        }
+        if (side == Side.SELL) {
+            return !negative && remainder;
+        }
+        return half;
+    }
+
+    /**
+     * Decimal text of ticks with the scale's decimal places, e.g. 131.50
+     *
+     * @param ticks
+     * @param scale
+     * @return
+     */
+    static public String toString(long ticks, int scale) {
+        StringBuilder builder = new StringBuilder(24);
+        if (ticks < 0) {
+            builder.append('-');
+            ticks = -ticks;
+        }
+        builder.append(ticks / POWERS_OF_TEN[scale]);
+        if (scale > 0) {
+            builder.append('.');
+            String fraction = Long.toString(ticks % POWERS_OF_TEN[scale]);
+            for (int i = fraction.length(); i < scale; i++) {
+                builder.append('0');
+            }
+            builder.append(fraction);
+        }
+        return builder.toString();
+    }
+}
@@ -31,16 +31,53 @@ package org.bryan.schorn.tha.matching.model;
 public interface Product {
 
     String symbol();
+
+    /**
+     * Dense id given by the product registry (see Products) so the Engine
+     * and its rules can keep per product state in arrays (-1 until registered)
+     *
+     * @return
+     */
+    int id();
+    void setId(int id);
+
+    /**
+     * Halted products take no orders. It can be changed while the Engine is
+     * running (see Products.halt/resume) and is read by the rules' threads.
+     *
+     * @return
+     */
     Boolean isHalted();
     void setHalted(Boolean halted);
 
+    /**
+     * Decimal places of a price tick (see Price)
+     *
+     * @return
+     */
+    int priceScale();
+
     /**
      *
      * @param symbol
      * @return
      */
     static Product create(String symbol) {
-        return new Impl(symbol);
+        return new Impl(symbol, Price.DEFAULT_SCALE);
+    }
+
+    /**
+     *
+     * @param symbol
+     * @param priceScale
+     * @return
+     */
+    static Product create(String symbol, int priceScale) {
+        if (priceScale < 0 || priceScale > Price.MAX_SCALE) {
+            throw new IllegalArgumentException(String.format("%s price scale must be 0..%d: %d",
+                    symbol, Price.MAX_SCALE, priceScale));
+        }
+        return new Impl(symbol, priceScale);
     }
 
     /**
@@ -48,10 +85,14 @@ public interface Product {
      */
     class Impl implements Product {
         private final String symbol;
-        private Boolean isHalted;
+        private final int priceScale;
+        private int id = -1;
+        // written by the product control thread, read by the Engine's
+        private volatile boolean isHalted;
 
-        private Impl(String symbol) {
+        private Impl(String symbol, int priceScale) {
             this.symbol = symbol;
+            this.priceScale = priceScale;
             this.isHalted = true;
         }
 
@@ -59,17 +100,30 @@ public interface Product {
             return this.symbol;
         }
 
+        public int id() {
+            return this.id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
         public Boolean isHalted() {
             return this.isHalted;
         }
 
         public void setHalted(Boolean halted)  {
-            this.isHalted = halted;
+            // unknown is halted
+            this.isHalted = halted == null || halted;
+        }
+
+        public int priceScale() {
+            return this.priceScale;
         }
 
         @Override
         public String toString() {
-            return String.format("%s,%s",this.symbol,this.isHalted.toString());
+            return String.format("%s,%s",this.symbol,Boolean.toString(this.isHalted));
         }
     }
 }
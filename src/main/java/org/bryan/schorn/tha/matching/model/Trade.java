@@ -36,9 +36,25 @@ public interface Trade {
 
     Instant timestamp();
     String symbol();
-    Double price();
     Integer quantity();
 
+    /**
+     * Price in ticks of priceScale()
+     *
+     * @return
+     */
+    long priceTicks();
+    int priceScale();
+
+    /**
+     * Price as a double (view of priceTicks/priceScale)
+     *
+     * @return
+     */
+    default Double price() {
+        return Price.toDouble(priceTicks(), priceScale());
+    }
+
     /**
      * Create Trade
      *
@@ -49,7 +65,22 @@ public interface Trade {
      * @return
      */
     static Trade create(String symbol, Integer quantity, Double tradePrice, Instant timestamp) {
-        return new Impl(symbol, quantity, tradePrice, timestamp);
+        int priceScale = Price.scaleOf(tradePrice);
+        return new Impl(symbol, quantity, Price.toTicks(tradePrice, priceScale), priceScale, timestamp);
+    }
+
+    /**
+     * Create Trade (fixed-point price)
+     *
+     * @param symbol
+     * @param quantity
+     * @param priceTicks
+     * @param priceScale
+     * @param timestamp
+     * @return
+     */
+    static Trade create(String symbol, Integer quantity, long priceTicks, int priceScale, Instant timestamp) {
+        return new Impl(symbol, quantity, priceTicks, priceScale, timestamp);
     }
 
 
@@ -60,13 +91,15 @@ public interface Trade {
 
         private final String symbol;
         private final Integer quantity;
-        private final Double tradePrice;
+        private final long priceTicks;
+        private final int priceScale;
         private final Instant timestamp;
 
-        private Impl(String symbol, Integer quantity, Double tradePrice, Instant timestamp) {
+        private Impl(String symbol, Integer quantity, long priceTicks, int priceScale, Instant timestamp) {
             this.symbol = symbol;
             this.quantity = quantity;
-            this.tradePrice = tradePrice;
+            this.priceTicks = priceTicks;
+            this.priceScale = priceScale;
             this.timestamp = timestamp;
         }
 
@@ -76,8 +109,12 @@ public interface Trade {
             return this.quantity;
         }
 
-        public Double price() {
-            return this.tradePrice;
+        public long priceTicks() {
+            return this.priceTicks;
+        }
+
+        public int priceScale() {
+            return this.priceScale;
         }
 
         public Instant timestamp() {
@@ -87,9 +124,9 @@ public interface Trade {
 
         @Override
         public String toString() {
-            return String.format("%s,%.2f,%d.%d",
+            return String.format("%s,%s,%d.%d",
                     this.symbol,
-                    this.tradePrice,
+                    Price.toString(this.priceTicks, this.priceScale),
                     this.timestamp.getEpochSecond(),
                     this.timestamp.getNano());
         }
@@ -37,11 +37,32 @@ import java.util.function.Supplier;
  * Order Feed Interface
  */
 public interface OrderFeed extends Supplier<Order>, Callable<Integer> {
+
+    // size of the bounded order channels (see util.RingBuffer)
+    String RING_SIZE = "OrderRingSize";
+
     @Override
     Order get();
 
     void connect() throws Exception;
 
+    /**
+     * Listener is run each time an order is made available (so that an idle
+     * consumer can be woken up)
+     *
+     * @param listener
+     */
+    default void setListener(Runnable listener) {
+    }
+
+    /**
+     * The consumer has gone away (e.g. the Engine has failed): a feed
+     * waiting for room in its ring gives up and call() ends with an
+     * Exception instead of waiting forever.
+     */
+    default void abort() {
+    }
+
     static OrderFeed create(Properties properties) throws Exception {
         ClassLocator classLocator = ClassLocator.create(properties);
         AbstractOrderFeed orderFeed = (AbstractOrderFeed) classLocator.newInstance(OrderFeed.class.getSimpleName());
@@ -50,7 +71,35 @@ public interface OrderFeed extends Supplier<Order>, Callable<Integer> {
     }
 
     abstract class AbstractOrderFeed implements OrderFeed {
+        private Runnable listener = () -> {};
+        private volatile boolean aborted = false;
+
         protected abstract void setProperties(Properties properties) throws Exception;
+
+        @Override
+        public void setListener(Runnable listener) {
+            this.listener = listener;
+        }
+
+        // tell the listener that an order is available
+        protected void notifyListener() {
+            this.listener.run();
+        }
+
+        @Override
+        public void abort() {
+            this.aborted = true;
+        }
+
+        protected boolean isAborted() {
+            return this.aborted;
+        }
+
+        // call() ending early (see abort)
+        protected Exception abortedException(int records) {
+            return new Exception(String.format("%s aborted after %d orders (the consumer has stopped)",
+                    getClass().getSimpleName(), records));
+        }
     }
 
     /**
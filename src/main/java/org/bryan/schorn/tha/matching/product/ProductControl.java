@@ -0,0 +1,91 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.product;
+
+import org.bryan.schorn.tha.matching.util.IdleStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Product Control
+ *
+ * Applies the events of a ProductControlFeed to the product registry (see
+ * Products.apply) in its own thread until stopped. It waits for the feed's
+ * listener when there is nothing to apply.
+ */
+public class ProductControl implements Callable<Integer> {
+    static private final Logger LGR = LoggerFactory.getLogger(ProductControl.class);
+
+    private final ProductControlFeed controlFeed;
+    private final IdleStrategy idleStrategy = new IdleStrategy.Blocking();
+    private volatile boolean keepLooping = true;
+
+    // ctor
+    public ProductControl(ProductControlFeed controlFeed) {
+        this.controlFeed = controlFeed;
+        this.controlFeed.setListener(this.idleStrategy::signal);
+    }
+
+    public void stop() {
+        this.keepLooping = false;
+        this.idleStrategy.signal();
+    }
+
+    @Override
+    public Integer call() {
+        int eventCount = 0;
+        while (this.keepLooping) {
+            int workCount = apply();
+            eventCount += workCount;
+            this.idleStrategy.idle(workCount);
+        }
+        // events that came in before stop() was called
+        eventCount += apply();
+        return eventCount;
+    }
+
+    /**
+     * Applies events until the feed has no more
+     *
+     * @return number of events applied
+     */
+    private int apply() {
+        int eventCount = 0;
+        ProductControlFeed.Event event = this.controlFeed.get();
+        while (event != null) {
+            ++eventCount;
+            if (Products.apply(event)) {
+                LGR.info("Product control applied: {}", event);
+            } else {
+                LGR.warn("Product control not applied: {}", event);
+            }
+            event = this.controlFeed.get();
+        }
+        return eventCount;
+    }
+}
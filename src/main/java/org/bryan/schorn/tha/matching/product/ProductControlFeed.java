@@ -0,0 +1,184 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.product;
+
+import org.bryan.schorn.tha.matching.util.ClassLocator;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Product Control Feed Interface
+ *
+ * Halt, resume and add-symbol events that change the products while the
+ * service is running (e.g. circuit-breaker halts). The events are applied to
+ * the product registry by ProductControl (see Products.apply).
+ *
+ * Properties:
+ *   ProductControlFeed=<implementation class> (no control feed when not set)
+ */
+public interface ProductControlFeed extends Supplier<ProductControlFeed.Event>, Callable<Integer> {
+
+    /**
+     * What an event does
+     */
+    enum Action {
+        HALT,
+        RESUME,
+        ADD;
+
+        /**
+         * Parse (case insensitive)
+         *
+         * @param action
+         * @return null when it is not an action
+         */
+        static public Action parse(String action) {
+            for (Action value : values()) {
+                if (value.name().equalsIgnoreCase(action.trim())) {
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Product Control Event
+     */
+    interface Event {
+        Action action();
+        String symbol();
+
+        /**
+         * Whether an added product starts halted
+         *
+         * @return
+         */
+        Boolean isHalted();
+
+        /**
+         * Price scale of an added product (see Product.priceScale)
+         *
+         * @return
+         */
+        Integer priceScale();
+
+        static Event create(Action action, String symbol) {
+            return new Impl(action, symbol, null, null);
+        }
+
+        static Event create(Action action, String symbol, Boolean halted, Integer priceScale) {
+            return new Impl(action, symbol, halted, priceScale);
+        }
+
+        /**
+         * Event Implementation
+         */
+        class Impl implements Event {
+            private final Action action;
+            private final String symbol;
+            private final Boolean halted;
+            private final Integer priceScale;
+
+            private Impl(Action action, String symbol, Boolean halted, Integer priceScale) {
+                this.action = action;
+                this.symbol = symbol;
+                this.halted = halted;
+                this.priceScale = priceScale;
+            }
+
+            public Action action() {
+                return this.action;
+            }
+
+            public String symbol() {
+                return this.symbol;
+            }
+
+            public Boolean isHalted() {
+                return this.halted;
+            }
+
+            public Integer priceScale() {
+                return this.priceScale;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("%s,%s", this.action, this.symbol);
+            }
+        }
+    }
+
+    @Override
+    Event get();
+
+    void connect() throws Exception;
+
+    /**
+     * Listener is run each time an event is made available
+     *
+     * @param listener
+     */
+    default void setListener(Runnable listener) {
+    }
+
+    /**
+     * Is a control feed configured in properties
+     *
+     * @param properties
+     * @return
+     */
+    static boolean isConfigured(Properties properties) {
+        return properties.getProperty(ProductControlFeed.class.getSimpleName()) != null;
+    }
+
+    static ProductControlFeed create(Properties properties) throws Exception {
+        ClassLocator classLocator = ClassLocator.create(properties);
+        AbstractProductControlFeed controlFeed = (AbstractProductControlFeed) classLocator.newInstance(
+                ProductControlFeed.class.getSimpleName());
+        controlFeed.setProperties(properties);
+        return controlFeed;
+    }
+
+    abstract class AbstractProductControlFeed implements ProductControlFeed {
+        private Runnable listener = () -> {};
+
+        protected abstract void setProperties(Properties properties) throws Exception;
+
+        @Override
+        public void setListener(Runnable listener) {
+            this.listener = listener;
+        }
+
+        // tell the listener that an event is available
+        protected void notifyListener() {
+            this.listener.run();
+        }
+    }
+}
@@ -22,17 +22,30 @@
  * THE SOFTWARE.
  *
  */
-
 package org.bryan.schorn.tha.matching.product;
 
+import org.bryan.schorn.tha.matching.model.Order;
 import org.bryan.schorn.tha.matching.model.Product;
 import org.bryan.schorn.tha.matching.product.ProductFeed;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  *  Products Container
+ *
+ *  Also the registry of the products' ids: each symbol is given a dense int
+ *  id (0, 1, 2, ...) when it is first loaded (see Product.id) which orders
+ *  carry from when they are parsed (see Order.productId), so the Engine and
+ *  its rules find per product state by array index rather than by hashing
+ *  the symbol. A symbol that is loaded again keeps its id.
+ *
+ *  Products are loaded on the main thread before any activity is started.
+ *  While running, products can be halted, resumed and added by the product
+ *  control thread (see ProductControl) which the other threads see without
+ *  locking: the halted flag is volatile (see Product.isHalted) and a new
+ *  product is in the id table before it can be found by its symbol.
  */
 public class Products {
 
@@ -42,12 +55,125 @@ public class Products {
         HELPER.set(productFeed);
     }
 
+    /**
+     * Applies a product control event
+     *
+     * @param event
+     * @return false when the symbol is unknown (or already known for ADD)
+     */
+    static public boolean apply(ProductControlFeed.Event event) {
+        switch (event.action()) {
+            case HALT:
+                return halt(event.symbol());
+            case RESUME:
+                return resume(event.symbol());
+            case ADD:
+                Product product = event.priceScale() != null
+                        ? Product.create(event.symbol(), event.priceScale())
+                        : Product.create(event.symbol());
+                product.setHalted(event.isHalted() != null ? event.isHalted() : false);
+                return add(product);
+        }
+        return false;
+    }
+
+    /**
+     * Halts a product (orders for it are rejected, see ProductHalted)
+     *
+     * @param symbol
+     * @return false when the symbol is unknown
+     */
+    static public boolean halt(String symbol) {
+        Product product = find(symbol);
+        if (product == null) {
+            return false;
+        }
+        product.setHalted(true);
+        return true;
+    }
+
+    /**
+     * Resumes a halted product
+     *
+     * @param symbol
+     * @return false when the symbol is unknown
+     */
+    static public boolean resume(String symbol) {
+        Product product = find(symbol);
+        if (product == null) {
+            return false;
+        }
+        product.setHalted(false);
+        return true;
+    }
+
+    /**
+     * Adds a product while running (the Engine opens its OrderBook with the
+     * first order for it)
+     *
+     * @param product
+     * @return false when the symbol is already known
+     */
+    static public boolean add(Product product) {
+        return HELPER.add(product);
+    }
+
+    /**
+     * Forgets all the products and their ids (tests)
+     */
+    static void clear() {
+        HELPER.clear();
+    }
+
     static public boolean isHalted(String symbol) {
-        Product product = HELPER.products.get(symbol);
+        Product product = find(symbol);
         return product != null ? product.isHalted() : true;
     }
+
+    /**
+     * Is the product of an order halted (unknown products are)
+     *
+     * @param order
+     * @return
+     */
+    static public boolean isHalted(Order order) {
+        Product product = find(order);
+        return product != null ? product.isHalted() : true;
+    }
+
     static public Product find(String symbol) {
-        return HELPER.products.get(symbol);
+        return symbol == null ? null : HELPER.products.get(symbol);
+    }
+
+    /**
+     * Product by registry id
+     *
+     * @param productId
+     * @return null when there is no product with the id
+     */
+    static public Product find(int productId) {
+        Product[] byId = HELPER.byId;
+        return productId >= 0 && productId < byId.length ? byId[productId] : null;
+    }
+
+    /**
+     * Product of an order (by its product id when it has one)
+     *
+     * @param order
+     * @return null when the symbol is unknown
+     */
+    static public Product find(Order order) {
+        int productId = order.productId();
+        return productId >= 0 ? find(productId) : find(order.symbol());
+    }
+
+    /**
+     * Number of ids given out (ids are 0 to count-1)
+     *
+     * @return
+     */
+    static public int idCount() {
+        return HELPER.products.size();
     }
 
     static public List<Product> findAll() {
@@ -55,13 +181,38 @@ public class Products {
     }
 
     static public class Helper {
-        final private Map<String, Product> products = new HashMap<>();
-        void set(ProductFeed productFeed) {
+        final private Map<String, Product> products = new ConcurrentHashMap<>();
+        private volatile Product[] byId = new Product[0];
+        synchronized void set(ProductFeed productFeed) {
             Product product = productFeed.get();
             while (product != null) {
-                products.put(product.symbol(), product);
+                register(product);
                 product = productFeed.get();
             }
         }
+        synchronized boolean add(Product product) {
+            if (this.products.containsKey(product.symbol())) {
+                return false;
+            }
+            register(product);
+            return true;
+        }
+        synchronized void clear() {
+            this.byId = new Product[0];
+            this.products.clear();
+        }
+        private void register(Product product) {
+            Product previous = this.products.get(product.symbol());
+            int productId = previous != null ? previous.id() : this.products.size();
+            product.setId(productId);
+            Product[] byId = this.byId;
+            if (productId >= byId.length) {
+                byId = Arrays.copyOf(byId, Math.max(16, byId.length * 2));
+            }
+            byId[productId] = product;
+            // by id before by symbol
+            this.byId = byId;
+            this.products.put(product.symbol(), product);
+        }
     }
 }
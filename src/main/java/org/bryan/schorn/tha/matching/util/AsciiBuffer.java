@@ -0,0 +1,196 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * Ascii Buffer
+ *
+ * Reusable byte buffer for building text records (CSV lines) without
+ * Strings, StringBuilders or Formatters: numbers are written digit by digit
+ * and prices as fixed-point decimals. It grows when a record does not fit
+ * and is written out and cleared by its owner.
+ *
+ */
+public final class AsciiBuffer {
+
+    static private final byte[] NULL = {'n', 'u', 'l', 'l'};
+    static private final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    private byte[] bytes;
+    private int length = 0;
+
+    public AsciiBuffer(int capacity) {
+        this.bytes = new byte[Math.max(capacity, 64)];
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public void clear() {
+        this.length = 0;
+    }
+
+    /**
+     * Writes the buffer out (the buffer is not cleared)
+     *
+     * @param outputStream
+     * @throws IOException
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(this.bytes, 0, this.length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.bytes, 0, this.length, StandardCharsets.UTF_8);
+    }
+
+    public AsciiBuffer put(byte b) {
+        ensure(1);
+        this.bytes[this.length++] = b;
+        return this;
+    }
+
+    public AsciiBuffer put(byte[] src) {
+        ensure(src.length);
+        System.arraycopy(src, 0, this.bytes, this.length, src.length);
+        this.length += src.length;
+        return this;
+    }
+
+    /**
+     * Characters (non-ascii characters are written as UTF-8)
+     *
+     * @param chars
+     * @return
+     */
+    public AsciiBuffer put(CharSequence chars) {
+        if (chars == null) {
+            return put(NULL);
+        }
+        int n = chars.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = chars.charAt(i);
+            if (c >= 0x80) {
+                this.length -= i;
+                return put(chars.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            this.bytes[this.length++] = (byte) c;
+        }
+        return this;
+    }
+
+    /**
+     * Decimal integer (as %d)
+     *
+     * @param value
+     * @return
+     */
+    public AsciiBuffer put(long value) {
+        if (value == Long.MIN_VALUE) {
+            return put(Long.toString(value));
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            ++digits;
+        }
+        ensure(digits);
+        int end = this.length + digits;
+        for (int i = end - 1; i >= this.length; i--) {
+            this.bytes[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        this.length = end;
+        return this;
+    }
+
+    /**
+     * Fixed-point decimal of scaled value, e.g. (13157, 2) is 131.57
+     *
+     * @param scaledValue
+     * @param decimals
+     * @return
+     */
+    public AsciiBuffer putFixed(long scaledValue, int decimals) {
+        if (decimals == 0) {
+            return put(scaledValue);
+        }
+        long unit = POWERS_OF_TEN[decimals];
+        if (scaledValue < 0) {
+            put((byte) '-');
+            scaledValue = -scaledValue;
+        }
+        put(scaledValue / unit);
+        put((byte) '.');
+        long fraction = scaledValue % unit;
+        ensure(decimals);
+        for (int i = this.length + decimals - 1; i >= this.length; i--) {
+            this.bytes[i] = (byte) ('0' + (fraction % 10));
+            fraction /= 10;
+        }
+        this.length += decimals;
+        return this;
+    }
+
+    /**
+     * Double rounded (half-up) to the number of decimals (as %.2f for
+     * values that have no more than the given decimals)
+     *
+     * @param value
+     * @param decimals 0..9
+     * @return
+     */
+    public AsciiBuffer putFixed(double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return put(Double.toString(value));
+        }
+        long scaled = Math.round(Math.abs(value) * POWERS_OF_TEN[decimals]);
+        if (value < 0 && scaled != 0) {
+            put((byte) '-');
+        }
+        return putFixed(scaled, decimals);
+    }
+
+    private void ensure(int more) {
+        if (this.length + more > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length << 1, this.length + more));
+        }
+    }
+}
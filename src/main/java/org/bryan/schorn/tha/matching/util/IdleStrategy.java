@@ -0,0 +1,211 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * Idle Strategy
+ *
+ * What a polling consumer (e.g. the Engine's order loop) does when a poll
+ * found nothing to do. The choice is between latency and CPU:
+ *
+ *  busy-spin  - never gives up the core (lowest latency, burns a core)
+ *  yield      - Thread.yield() between polls
+ *  backoff    - spin, then yield, then park with exponential backoff
+ *  blocking   - park until the producer signals (or maxWait elapses)
+ *
+ * An instance keeps state for a single consumer thread. Producers call
+ * signal() after publishing (only 'blocking' needs it, it costs nothing
+ * for the others).
+ *
+ */
+public interface IdleStrategy {
+
+    /**
+     * Create by name (busy-spin, yield, backoff, blocking)
+     *
+     * @param name
+     * @return
+     * @throws Exception
+     */
+    static IdleStrategy create(String name) throws Exception {
+        switch (name == null ? "" : name.trim().toLowerCase()) {
+            case "busy-spin":
+            case "":
+                return new BusySpin();
+            case "yield":
+                return new Yield();
+            case "backoff":
+                return new Backoff();
+            case "blocking":
+                return new Blocking();
+        }
+        throw new Exception(String.format("%s.create() - there is no idle strategy '%s' "
+                + "(busy-spin, yield, backoff, blocking)", IdleStrategy.class.getSimpleName(), name));
+    }
+
+    /**
+     * Called after every poll with the amount of work that was done.
+     *
+     * @param workCount
+     */
+    default void idle(int workCount) {
+        if (workCount > 0) {
+            reset();
+        } else {
+            idle();
+        }
+    }
+
+    /**
+     * Nothing to do
+     */
+    void idle();
+
+    /**
+     * There was work (back to the start of the backoff)
+     */
+    default void reset() {
+    }
+
+    /**
+     * Wake up the consumer (producer side)
+     */
+    default void signal() {
+    }
+
+    /**
+     * Busy Spin
+     */
+    class BusySpin implements IdleStrategy {
+        @Override
+        public void idle() {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Yield
+     */
+    class Yield implements IdleStrategy {
+        @Override
+        public void idle() {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Spin, Yield then Park (doubling the park time up to maxParkNanos)
+     */
+    class Backoff implements IdleStrategy {
+        private final long maxSpins;
+        private final long maxYields;
+        private final long minParkNanos;
+        private final long maxParkNanos;
+        private long spins = 0;
+        private long yields = 0;
+        private long parkNanos;
+
+        public Backoff() {
+            this(100, 10, TimeUnit.MICROSECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        public Backoff(long maxSpins, long maxYields, long minParkNanos, long maxParkNanos) {
+            this.maxSpins = maxSpins;
+            this.maxYields = maxYields;
+            this.minParkNanos = minParkNanos;
+            this.maxParkNanos = maxParkNanos;
+            this.parkNanos = minParkNanos;
+        }
+
+        @Override
+        public void idle() {
+            if (this.spins < this.maxSpins) {
+                ++this.spins;
+                Thread.onSpinWait();
+            } else if (this.yields < this.maxYields) {
+                ++this.yields;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this.parkNanos);
+                this.parkNanos = Math.min(this.parkNanos << 1, this.maxParkNanos);
+            }
+        }
+
+        @Override
+        public void reset() {
+            this.spins = 0;
+            this.yields = 0;
+            this.parkNanos = this.minParkNanos;
+        }
+    }
+
+    /**
+     * Blocking
+     *
+     * Parks the consumer until a producer calls signal(). A signal that comes
+     * in between the consumer's last poll and its park is not lost (the flag
+     * is checked after the consumer has registered as the waiter). maxWait
+     * bounds the park for producers that do not signal.
+     */
+    class Blocking implements IdleStrategy {
+        private final long maxWaitNanos;
+        private volatile Thread waiter = null;
+        private volatile boolean signalled = false;
+
+        public Blocking() {
+            this(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        public Blocking(long maxWaitNanos) {
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        @Override
+        public void idle() {
+            this.waiter = Thread.currentThread();
+            if (!this.signalled) {
+                LockSupport.parkNanos(this, this.maxWaitNanos);
+            }
+            this.waiter = null;
+            this.signalled = false;
+        }
+
+        @Override
+        public void signal() {
+            if (!this.signalled) {
+                this.signalled = true;
+            }
+            Thread thread = this.waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+}
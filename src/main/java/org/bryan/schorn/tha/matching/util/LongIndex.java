@@ -0,0 +1,170 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.util;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Long Index
+ *
+ * Map of primitive long keys (e.g. order ids) to values without boxing the
+ * keys or creating an entry per mapping. Open addressing with linear probing;
+ * removal shifts the following entries back so lookups never see tombstones.
+ * Key 0 is reserved (means no key). Not thread-safe.
+ *
+ */
+public final class LongIndex<V> {
+
+    static private final long NO_KEY = 0L;
+
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    public LongIndex() {
+        this(64);
+    }
+
+    public LongIndex(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+        this.keys = new long[slots];
+        this.values = new Object[slots];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Value of a key
+     *
+     * @param key
+     * @return null when the key is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = this.keys.length - 1;
+        for (int slot = hash(key) & mask; this.keys[slot] != NO_KEY; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                return (V) this.values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps a key to a value
+     *
+     * @param key (not 0)
+     * @param value
+     * @return the previous value of the key (null when there was none)
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == NO_KEY) {
+            throw new IllegalArgumentException("key 0 is reserved");
+        }
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; this.keys[slot] != NO_KEY; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                V previous = (V) this.values[slot];
+                this.values[slot] = value;
+                return previous;
+            }
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size * 2 > this.keys.length) {
+            grow();
+        }
+        return null;
+    }
+
+    /**
+     * Unmaps a key
+     *
+     * @param key
+     * @return the value of the key (null when there was none)
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        while (this.keys[slot] != key) {
+            if (this.keys[slot] == NO_KEY) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+        V value = (V) this.values[slot];
+        --this.size;
+        // shift back the entries that probed past the removed slot
+        int gap = slot;
+        for (int next = (gap + 1) & mask; this.keys[next] != NO_KEY; next = (next + 1) & mask) {
+            int home = hash(this.keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+        }
+        this.keys[gap] = NO_KEY;
+        this.values[gap] = null;
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, NO_KEY);
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    private void grow() {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        this.keys = new long[keys.length << 1];
+        this.values = new Object[keys.length << 1];
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != NO_KEY) {
+                int slot = hash(keys[i]) & mask;
+                while (this.keys[slot] != NO_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = keys[i];
+                this.values[slot] = values[i];
+            }
+        }
+    }
+
+    static private int hash(long key) {
+        // ids are often sequential so spread them over the slots
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
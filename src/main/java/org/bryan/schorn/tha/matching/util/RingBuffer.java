@@ -0,0 +1,170 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ *
+ * Ring Buffer (single producer, single consumer)
+ *
+ * Bounded channel between exactly one producer thread and one consumer
+ * thread. The slots are preallocated (capacity is rounded up to a power of
+ * two) so nothing is allocated per element, and memory stays flat no matter
+ * how far the producer gets ahead: when the ring is full the producer is held
+ * back (backpressure) until the consumer makes room.
+ *
+ * The producer publishes a slot with an ordered store of the tail and the
+ * consumer releases it with an ordered store of the head. Each side caches
+ * its last read of the other side's index so it only touches the shared
+ * cache line when it looks full (producer) or empty (consumer).
+ *
+ * @param <E>
+ */
+public final class RingBuffer<E> {
+
+    static public final int DEFAULT_CAPACITY = 1 << 16;
+
+    // head/tail on their own cache lines (the padding keeps them apart)
+    @SuppressWarnings("unused")
+    static private final class Sequence extends AtomicLong {
+        // never serialized (AtomicLong is Serializable)
+        static private final long serialVersionUID = 1L;
+        long p1, p2, p3, p4, p5, p6, p7, p8, p9, p10, p11, p12, p13, p14, p15;
+    }
+
+    private final Object[] slots;
+    private final int mask;
+    // next slot to read (written by the consumer)
+    private final Sequence head = new Sequence();
+    // next slot to write (written by the producer)
+    private final Sequence tail = new Sequence();
+    // producer's last view of the head
+    private long headCache = 0;
+    // consumer's last view of the tail
+    private long tailCache = 0;
+
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException(String.format("%s capacity must be 1..2^30: %d",
+                    RingBuffer.class.getSimpleName(), capacity));
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Object[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return this.slots.length;
+    }
+
+    /**
+     * Producer: add if there is room
+     *
+     * @param element
+     * @return false when full
+     */
+    public boolean offer(E element) {
+        long tail = this.tail.get();
+        if (tail - this.headCache >= this.slots.length) {
+            this.headCache = this.head.get();
+            if (tail - this.headCache >= this.slots.length) {
+                return false;
+            }
+        }
+        this.slots[(int) tail & this.mask] = element;
+        this.tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Producer: add, idling while the ring is full (backpressure) unless the
+     * consumer has gone away
+     *
+     * @param element
+     * @param idleStrategy
+     * @param aborted checked while the ring is full (e.g. the consumer has stopped)
+     * @return false when aborted (the element was not added)
+     */
+    public boolean put(E element, IdleStrategy idleStrategy, BooleanSupplier aborted) {
+        while (!offer(element)) {
+            if (aborted.getAsBoolean()) {
+                idleStrategy.reset();
+                return false;
+            }
+            idleStrategy.idle();
+        }
+        idleStrategy.reset();
+        return true;
+    }
+
+    /**
+     * Consumer: remove the next element
+     *
+     * @return null when empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long head = this.head.get();
+        if (head >= this.tailCache) {
+            this.tailCache = this.tail.get();
+            if (head >= this.tailCache) {
+                return null;
+            }
+        }
+        int index = (int) head & this.mask;
+        E element = (E) this.slots[index];
+        this.slots[index] = null;
+        this.head.lazySet(head + 1);
+        return element;
+    }
+
+    /**
+     * Number of elements in the ring (a snapshot when called by neither side)
+     *
+     * @return
+     */
+    public int size() {
+        long head = this.head.get();
+        return (int) Math.max(0, Math.min(this.tail.get() - head, this.slots.length));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Consumer: discard everything in the ring
+     */
+    public void clear() {
+        while (poll() != null) {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * Symbol Table
+ *
+ * Interns symbols read as bytes (e.g. from a mapped file) so each distinct
+ * symbol is one String instance and a lookup does not create a String.
+ * Open addressing over the bytes' hash. Not thread-safe (one per reader).
+ *
+ */
+public final class SymbolTable {
+
+    private byte[][] keys;
+    private String[] symbols;
+    private int[] hashes;
+    private int size = 0;
+
+    public SymbolTable() {
+        this(64);
+    }
+
+    public SymbolTable(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+        this.keys = new byte[slots][];
+        this.symbols = new String[slots];
+        this.hashes = new int[slots];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Interned symbol for a String (e.g. to seed the table with known
+     * symbols so they are the same instances as the Products')
+     *
+     * @param symbol
+     * @return
+     */
+    public String intern(String symbol) {
+        byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(bytes), 0, bytes.length, symbol);
+    }
+
+    /**
+     * Interned symbol for the bytes buffer[start..end)
+     *
+     * @param buffer
+     * @param start
+     * @param end
+     * @return
+     */
+    public String intern(ByteBuffer buffer, int start, int end) {
+        return intern(buffer, start, end, null);
+    }
+
+    private String intern(ByteBuffer buffer, int start, int end, String symbol) {
+        int hash = hash(buffer, start, end);
+        int mask = this.keys.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            byte[] key = this.keys[slot];
+            if (key == null) {
+                if (symbol == null) {
+                    byte[] bytes = new byte[end - start];
+                    for (int i = 0; i < bytes.length; i++) {
+                        bytes[i] = buffer.get(start + i);
+                    }
+                    symbol = new String(bytes, StandardCharsets.UTF_8);
+                }
+                return add(slot, hash, buffer, start, end, symbol);
+            }
+            if (this.hashes[slot] == hash && equals(key, buffer, start, end)) {
+                return this.symbols[slot];
+            }
+        }
+    }
+
+    private String add(int slot, int hash, ByteBuffer buffer, int start, int end, String symbol) {
+        byte[] key = new byte[end - start];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = buffer.get(start + i);
+        }
+        this.keys[slot] = key;
+        this.symbols[slot] = symbol;
+        this.hashes[slot] = hash;
+        if (++this.size * 2 > this.keys.length) {
+            grow();
+        }
+        return symbol;
+    }
+
+    private void grow() {
+        byte[][] keys = this.keys;
+        String[] symbols = this.symbols;
+        int[] hashes = this.hashes;
+        this.keys = new byte[keys.length << 1][];
+        this.symbols = new String[keys.length << 1];
+        this.hashes = new int[keys.length << 1];
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                int slot = hashes[i] & mask;
+                while (this.keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = keys[i];
+                this.symbols[slot] = symbols[i];
+                this.hashes[slot] = hashes[i];
+            }
+        }
+    }
+
+    static private int hash(ByteBuffer buffer, int start, int end) {
+        int hash = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ buffer.get(i)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    static private boolean equals(byte[] key, ByteBuffer buffer, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * DepthView Tests (run against each OrderBook implementation)
+ */
+public class DepthViewTest {
+
+    static private final Instant TIMESTAMP = Instant.ofEpochSecond(1608917400, 7614357);
+
+    OrderBook createOrderBook(String bookType, int levels) throws Exception {
+        Product product = Product.create("AAPL");
+        Properties properties = new Properties();
+        properties.setProperty("OrderBook", "org.bryan.schorn.tha.matching.engine." + bookType);
+        OrderBook orderBook = OrderBook.create(product, properties);
+        orderBook.setDepthView(new DepthView(orderBook, levels));
+        return orderBook;
+    }
+
+    Order limit(Side side, long priceTicks, int quantity) {
+        return Order.create(TIMESTAMP, "AAPL", side, OrderType.LIMIT, priceTicks, 2, quantity);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void topLevels(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType, 2);
+        orderBook.accept(limit(Side.SELL, 13158L, 2));
+        orderBook.accept(limit(Side.SELL, 13157L, 5));
+        orderBook.accept(limit(Side.SELL, 13157L, 3));
+        orderBook.accept(limit(Side.SELL, 13160L, 1));
+        orderBook.accept(limit(Side.BUY, 13048L, 1));
+
+        DepthView.Depth depth = orderBook.getDepthView().read(null);
+        assertAll("depth",
+                () -> assertEquals("AAPL,1@130.48,8@131.57|2@131.58", depth.toString()),
+                () -> assertEquals(2, depth.orders(Side.SELL, 0)),
+                () -> assertEquals(1, depth.levels(Side.BUY)),
+                () -> assertEquals(5L, depth.version()));
+
+        orderBook.take(Side.SELL, 9, 0L);
+        assertSame(depth, orderBook.getDepthView().read(depth));
+        assertAll("after take",
+                () -> assertEquals("AAPL,1@130.48,1@131.58|1@131.60", depth.toString()),
+                () -> assertEquals(6L, depth.version()));
+    }
+
+    /**
+     * The book only ever holds sells one tick apart with one lot each, so
+     * any copy that mixes two versions of the book would show otherwise
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void consistentWhileMatching(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType, 8);
+        DepthView depthView = orderBook.getDepthView();
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> matching = executorService.submit(() -> {
+                for (int i = 0; i < 200_000; i++) {
+                    orderBook.accept(limit(Side.SELL, 13157L + i % 8, 1));
+                    if (i % 8 == 7) {
+                        orderBook.take(Side.SELL, 8, 0L);
+                    }
+                }
+                return 0;
+            });
+            DepthView.Depth depth = null;
+            long version = 0L;
+            int reads = 0;
+            while (!matching.isDone() || reads == 0) {
+                depth = depthView.read(depth);
+                assertTrue(depth.version() >= version);
+                version = depth.version();
+                for (int level = 0; level < depth.levels(Side.SELL); level++) {
+                    assertEquals(13157L + level, depth.priceTicks(Side.SELL, level));
+                    assertEquals(1, depth.quantity(Side.SELL, level));
+                    assertEquals(1, depth.orders(Side.SELL, level));
+                }
+                assertEquals(0, depth.levels(Side.BUY));
+                ++reads;
+            }
+            matching.get();
+            assertEquals(225_000L, depthView.read(depth).version());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
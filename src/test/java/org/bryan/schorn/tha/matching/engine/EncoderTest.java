@@ -0,0 +1,89 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.util.AsciiBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+/**
+ * Encoder Tests (records match the entities' toString())
+ */
+public class EncoderTest {
+
+    static <E> String encode(Encoder<E> encoder, E entity) {
+        AsciiBuffer buffer = new AsciiBuffer(64);
+        encoder.encode(entity, buffer);
+        return buffer.toString();
+    }
+
+    @Test
+    void encodeTrade() throws Exception {
+        Encoder<Trade> encoder = Encoder.create(Trade.class, "symbol,price,timestamp");
+        for (double price : new double[]{131.57, 3171.8, 0.05, 100.0}) {
+            Trade trade = Trade.create("AAPL", 2, price, Instant.ofEpochSecond(1609723805L, 4_500_100L));
+            assertEquals(trade.toString(), encode(encoder, trade));
+        }
+        Trade trade = Trade.create("AAPL", 2, 131.6, Instant.ofEpochSecond(1609723805L, 0));
+        assertEquals("AAPL,131.60,1609723805.0", encode(encoder, trade));
+        assertEquals("AAPL,2,131.60",
+                encode(Encoder.create(Trade.class, "symbol, quantity, price"), trade));
+    }
+
+    @Test
+    void encodeReject() throws Exception {
+        Encoder<Order.Reject> encoder = Encoder.create(Order.Reject.class,
+                "symbol,side,type,price,timestamp,reason");
+        Order order = Order.create(Instant.ofEpochSecond(1609723805L, 907_000_000L),
+                "TSLA", Side.BUY, OrderType.LIMIT, 659.7, 1);
+        Order.Reject reject = Order.reject(order, "order throttled");
+        assertEquals(reject.toString(), encode(encoder, reject));
+        assertEquals(order.toString(), encode(Encoder.create(Order.class,
+                "symbol,side,type,price,timestamp"), order));
+    }
+
+    @Test
+    void encodePriceLevel() throws Exception {
+        Encoder<OrderBook.PriceLevel> encoder = Encoder.create(OrderBook.PriceLevel.class,
+                "symbol,price,buys,sells");
+        OrderBook.PriceLevel priceLevel = new OrderBook.PriceLevel("AAPL", 13170L, 2, 2, 0);
+        assertEquals(priceLevel.toString(), encode(encoder, priceLevel));
+    }
+
+    @Test
+    void unknownColumn() {
+        assertThrows(Exception.class, () -> Encoder.create(Trade.class, "symbol,venue"));
+        assertThrows(Exception.class, () -> Encoder.create(String.class, "symbol"));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.FutureTask;
+
+/**
+ * EngineLog Tests (lines handed over to the EngineLog's thread)
+ */
+public class EngineLogTest {
+
+    static private final Order ORDER = Order.create(Instant.ofEpochSecond(1609723805L, 907_000_000L),
+            "TSLA", Side.BUY, OrderType.LIMIT, 659.7, 1);
+    static private final Trade TRADE = Trade.create("TSLA", 1, 659.7, Instant.ofEpochSecond(1609723806L));
+
+    EngineLog engineLog(String sampling) {
+        Properties properties = new Properties();
+        properties.setProperty(EngineLog.SAMPLING, sampling);
+        properties.setProperty(EngineLog.RING_SIZE, "8");
+        return new EngineLog(properties);
+    }
+
+    int send(EngineLog.Channel channel, int count) {
+        for (int i = 0; i < count; i++) {
+            channel.order(ORDER);
+            channel.trade(TRADE);
+            channel.reject(Order.reject(ORDER, "no-match"));
+        }
+        return 3 * count;
+    }
+
+    @Test
+    void everyLine() throws Exception {
+        EngineLog engineLog = engineLog("1");
+        EngineLog.Channel channel = engineLog.newChannel();
+        int sent = send(channel, 2);
+        engineLog.stop();
+        assertEquals(sent, engineLog.call());
+    }
+
+    @Test
+    void sampled() throws Exception {
+        EngineLog engineLog = engineLog("4");
+        EngineLog.Channel first = engineLog.newChannel();
+        EngineLog.Channel second = engineLog.newChannel();
+        send(first, 8);
+        send(second, 3);
+        engineLog.stop();
+        // every 4th of each kind and channel
+        assertEquals(3 * 2, engineLog.call());
+
+        EngineLog off = engineLog("0");
+        send(off.newChannel(), 8);
+        off.stop();
+        assertEquals(0, off.call());
+    }
+
+    @Test
+    void entriesAreRecycled() throws Exception {
+        EngineLog engineLog = engineLog("1");
+        EngineLog.Channel channel = engineLog.newChannel();
+        FutureTask<Integer> task = new FutureTask<>(engineLog);
+        new Thread(task).start();
+        // many more lines than the ring holds (dropped when the log falls behind)
+        int sent = send(channel, 100);
+        engineLog.stop();
+        assertEquals(sent, task.get() + engineLog.dropped());
+    }
+
+    /**
+     * The matching thread does not wait when the log is not running
+     */
+    @Test
+    void droppedWhenFull() throws Exception {
+        EngineLog engineLog = engineLog("1");
+        EngineLog.Channel channel = engineLog.newChannel();
+        int sent = send(channel, 100);
+        assertEquals(sent - 8, engineLog.dropped());
+        engineLog.stop();
+        assertEquals(8, engineLog.call());
+        // room again
+        send(channel, 1);
+        assertEquals(sent - 8, engineLog.dropped());
+    }
+}
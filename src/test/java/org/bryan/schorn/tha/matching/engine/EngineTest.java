@@ -26,6 +26,8 @@
 package org.bryan.schorn.tha.matching.engine;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import org.bryan.schorn.tha.matching.TestProperties;
 import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
@@ -40,9 +42,11 @@ import org.bryan.schorn.tha.matching.product.ProductFeed;
 import org.bryan.schorn.tha.matching.product.Products;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 public class EngineTest {
@@ -136,6 +140,144 @@ public class EngineTest {
         }
     }
 
+    /**
+     * Test E: Partial fills (multi-lot orders)
+     */
+    @Test
+    void sendTestOrdersE() {
+        try {
+            this.properties.setProperty("OrderFileHeader", "symbol,side,type,price,timestamp,quantity");
+            prepareOrders("inputs-test/orders-e.csv");
+        } catch (Exception ex) {
+            fail("Failed when testing orders 'e' ", ex);
+        }
+        try {
+            runEngine();
+            List<Trade> trades = getTrades();
+            assertEquals(4, trades.size());
+            // buy 4 @ 131.60 against sells 3 @ 131.57 and 2 @ 131.60
+            assertEquals(3, trades.get(0).quantity());
+            assertEquals(131.57, trades.get(0).price());
+            assertEquals(1, trades.get(1).quantity());
+            assertEquals(131.60, trades.get(1).price());
+            // buy 5 @ 131.70 takes the 1 left @ 131.60 and rests 4
+            assertEquals(1, trades.get(2).quantity());
+            assertEquals(131.60, trades.get(2).price());
+            // sell market 2 against the resting buy
+            assertEquals(2, trades.get(3).quantity());
+            assertEquals(131.70, trades.get(3).price());
+            assertEquals(0, getRejects().size());
+            Supplier<OrderBook.PriceLevel> pls = this.engine.getSupplier(OrderBook.PriceLevel.class);
+            assertEquals("AAPL,131.70,2,0", pls.get().toString());
+            assertEquals(null, pls.get());
+        } catch (Exception ex) {
+            fail("", ex);
+        }
+    }
+
+    /**
+     * Test E2: Cancel and cancel-replace by order id
+     */
+    @Test
+    void sendTestOrdersCancelReplace() {
+        try {
+            this.properties.setProperty("OrderFileHeader", "symbol,side,type,price,timestamp,quantity,id");
+            prepareOrders("inputs-test/orders-f.csv");
+        } catch (Exception ex) {
+            fail("Failed when testing orders 'f' ", ex);
+        }
+        try {
+            runEngine();
+            // the buy takes 1 from the replacement (the cancelled sell is gone)
+            List<Trade> trades = getTrades();
+            assertEquals(1, trades.size());
+            assertEquals(1, trades.get(0).quantity());
+            assertEquals(131.58, trades.get(0).price());
+            List<Order.Reject> rejects = getRejects();
+            assertEquals(2, rejects.size());
+            assertEquals("unknown-order-id", rejects.get(0).reason());
+            assertEquals(1L, rejects.get(0).order().orderId());
+            assertEquals("duplicate-order-id", rejects.get(1).reason());
+            Supplier<OrderBook.PriceLevel> pls = this.engine.getSupplier(OrderBook.PriceLevel.class);
+            assertEquals("AAPL,131.58,0,3", pls.get().toString());
+            assertEquals(null, pls.get());
+        } catch (Exception ex) {
+            fail("", ex);
+        }
+    }
+
+    /**
+     * Test F: Trades drained in batches and the listener told of each one
+     */
+    @Test
+    void drainTradesInBatches() {
+        try {
+            this.properties.setProperty("OrderFileHeader", "symbol,side,type,price,timestamp,quantity");
+            prepareOrders("inputs-test/orders-e.csv");
+        } catch (Exception ex) {
+            fail("Failed when testing orders 'e' ", ex);
+        }
+        try {
+            // own throttle state (the orders are the same as test E)
+            this.engine = new Engine(Products.findAll());
+            this.engine.addRule(OrderThrottleRule.MAX_THREE_PER_SECOND.newInstance());
+            Engine.Outbound<Trade> outbound = this.engine.getSupplier(Trade.class);
+            AtomicInteger signals = new AtomicInteger();
+            outbound.setListener(signals::incrementAndGet);
+            runEngine();
+            outbound.setListener(() -> {});
+            assertEquals(4, signals.get());
+            List<Trade> trades = new ArrayList<>();
+            assertEquals(3, outbound.drainTo(trades::add, 3));
+            assertEquals(1, outbound.drainTo(trades::add, 3));
+            assertEquals(0, outbound.drainTo(trades::add, 3));
+            assertEquals(4, trades.size());
+            assertEquals(131.57, trades.get(0).price());
+            assertEquals(131.70, trades.get(3).price());
+        } catch (Exception ex) {
+            fail("", ex);
+        }
+    }
+
+    /**
+     * Test G: Outbound events are reused once the reader releases them
+     */
+    @Test
+    void releasedEventsAreReused() {
+        EventPool<EventPool.PooledTrade> pool = new EventPool<>(EventPool.PooledTrade::new);
+        Engine.OutboundQueue<Trade> outbound = new Engine.OutboundQueue<>();
+        Instant timestamp = Instant.ofEpochSecond(1609723805L);
+        EventPool.PooledTrade first = pool.acquire().set("AAPL", 2, 13157L, 2, timestamp);
+        outbound.offer(first);
+        assertNotSame(first, pool.acquire());
+        Trade trade = outbound.get();
+        assertEquals("AAPL,131.57,1609723805.0", trade.toString());
+        outbound.release(trade);
+        assertSame(first, pool.acquire());
+    }
+
+    /**
+     * Test H: Outbound queue keeps the order when the reader falls behind
+     */
+    @Test
+    void outboundOverflowKeepsOrder() {
+        Engine.OutboundQueue<Integer> outbound = new Engine.OutboundQueue<>(4);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 7; i++) {
+                outbound.offer(next++);
+            }
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected++, outbound.get());
+            }
+        }
+        for (Integer value = outbound.get(); value != null; value = outbound.get()) {
+            assertEquals(expected++, value);
+        }
+        assertEquals(next, expected);
+    }
+
     Engine engine;
     Properties properties;
 
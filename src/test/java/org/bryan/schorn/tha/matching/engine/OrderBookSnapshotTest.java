@@ -0,0 +1,164 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.TestProperties;
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.OrderThrottleRule;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.product.ProductFeed;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * OrderBookSnapshot Tests
+ */
+public class OrderBookSnapshotTest {
+
+    static private final long JOURNAL_ID = 42L;
+
+    Path tempFile(String suffix) throws Exception {
+        Path path = Files.createTempFile("order_book", suffix);
+        path.toFile().deleteOnExit();
+        return path;
+    }
+
+    @Test
+    void restingOrdersKeepTheirPlace() throws Exception {
+        Product product = Product.create("AAPL");
+        OrderBook orderBook = new LadderOrderBook(product);
+        Instant timestamp = Instant.ofEpochSecond(1608917400, 7614357);
+        for (int i = 0; i < 6; i++) {
+            orderBook.accept(Order.create(timestamp.plusNanos(i), "AAPL", i % 2 == 0 ? Side.SELL : Side.BUY,
+                    OrderType.LIMIT, (i % 2 == 0 ? 13157L : 13050L) + i / 4, 2, 5));
+        }
+        // partially filled, keeps its place with 2 left
+        orderBook.take(Side.SELL, 3, 0L);
+
+        Path path = tempFile(".snapshot");
+        Files.delete(path);
+        OrderBookSnapshot snapshot = new OrderBookSnapshot(path, 1);
+        assertTrue(snapshot.take(Collections.singletonList(orderBook), JOURNAL_ID, 1234L, true));
+        snapshot.close();
+
+        OrderBook loaded = new TreeOrderBook(product);
+        assertEquals(1234L, new OrderBookSnapshot(path, 1).load((symbol, priceScale) -> loaded, JOURNAL_ID));
+        for (Side side : new Side[]{Side.SELL, Side.BUY}) {
+            List<String> expected = new ArrayList<>();
+            orderBook.forEach(side, o -> expected.add(o.toString() + "," + o.leavesQty() + "," + o.orderQty()));
+            List<String> actual = new ArrayList<>();
+            loaded.forEach(side, o -> actual.add(o.toString() + "," + o.leavesQty() + "," + o.orderQty()));
+            assertEquals(expected, actual);
+        }
+        List<RestingOrder> sells = new ArrayList<>();
+        loaded.forEach(Side.SELL, sells::add);
+        assertAll("partially filled",
+                () -> assertEquals(timestamp, sells.get(0).timestamp()),
+                () -> assertEquals(13157L, sells.get(0).priceTicks()),
+                () -> assertEquals(2, sells.get(0).leavesQty()),
+                () -> assertEquals(5, sells.get(0).orderQty()));
+
+        // not a snapshot of this journal
+        assertEquals(-1L, new OrderBookSnapshot(path, 1).load((symbol, priceScale) -> new TreeOrderBook(product), 7L));
+    }
+
+    @Test
+    void restartFromSnapshot() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        ProductFeed productFeed = ProductFeed.create(properties);
+        productFeed.connect();
+        Products.setFeed(productFeed);
+        OrderFeed orderFeed = OrderFeed.create(properties);
+        orderFeed.connect();
+        orderFeed.call();
+        List<Order> orders = new ArrayList<>();
+        for (Order order = orderFeed.get(); order != null; order = orderFeed.get()) {
+            orders.add(order);
+        }
+        Properties journalProperties = new Properties();
+        journalProperties.setProperty(OrderJournal.FILE, tempFile(".journal").toString());
+        Path snapshotPath = tempFile(".snapshot");
+        Files.delete(snapshotPath);
+        journalProperties.setProperty(OrderBookSnapshot.FILE, snapshotPath.toString());
+        journalProperties.setProperty(OrderBookSnapshot.ORDERS, "1000");
+
+        Engine engine = new Engine(Products.findAll());
+        engine.addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
+        engine.addRule(ProductHalted.PRODUCTED_HALTED);
+        engine.addRule(OrderThrottleRule.MAX_THREE_PER_SECOND.newInstance());
+        engine.openJournal(journalProperties);
+        Iterator<Order> iterator = orders.iterator();
+        engine.setOrderSupplier(() -> iterator.hasNext() ? iterator.next() : null);
+        engine.stop();
+        engine.call();
+        assertTrue(Files.exists(snapshotPath));
+
+        // the last snapshot is taken when the engine stops so there is no tail
+        journalProperties.setProperty(OrderJournal.REPLAY, "true");
+        Engine restarted = new Engine(Products.findAll());
+        assertAll("restart",
+                () -> assertEquals(0, restarted.openJournal(journalProperties)),
+                () -> assertEquals(OrderJournalTest.priceLevels(engine), OrderJournalTest.priceLevels(restarted)));
+
+        // an order journaled after the snapshot is replayed on top of it
+        Path journalPath = Path.of(journalProperties.getProperty(OrderJournal.FILE));
+        try (OrderJournal journal = new OrderJournal(journalPath, 0, 1, 1L << 26, true)) {
+            journal.replay(order -> {});
+            journal.append(Order.create(Instant.ofEpochSecond(1609723805L), "AAPL", Side.BUY,
+                    OrderType.LIMIT, 100L, 2, 7));
+        }
+        Engine tail = new Engine(Products.findAll());
+        assertEquals(1, tail.openJournal(journalProperties));
+        List<String> priceLevels = OrderJournalTest.priceLevels(engine);
+        priceLevels.add("AAPL,1.00,7,0");
+        priceLevels.sort(String::compareTo);
+        assertEquals(priceLevels, OrderJournalTest.priceLevels(tail));
+
+        // without the snapshot the whole journal is replayed to the same book
+        Files.delete(snapshotPath);
+        Engine replayed = new Engine(Products.findAll());
+        assertTrue(replayed.openJournal(journalProperties) > 0);
+        assertEquals(priceLevels, OrderJournalTest.priceLevels(replayed));
+    }
+}
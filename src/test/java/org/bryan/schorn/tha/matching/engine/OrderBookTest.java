@@ -0,0 +1,421 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Price;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * OrderBook Tests (run against each OrderBook implementation)
+ */
+public class OrderBookTest {
+
+    static private final Instant TIMESTAMP = Instant.ofEpochSecond(1608917400, 7614357);
+
+    // orders get their own timestamp so they can be told apart
+    private int sequence = 0;
+
+    OrderBook createOrderBook(String bookType) throws Exception {
+        Product product = Product.create("AAPL");
+        product.setHalted(false);
+        Properties properties = new Properties();
+        properties.setProperty("OrderBook", "org.bryan.schorn.tha.matching.engine." + bookType);
+        return OrderBook.create(product, properties);
+    }
+
+    Order limit(Side side, double price) {
+        return limit(side, price, 1);
+    }
+
+    Order limit(Side side, double price, int quantity) {
+        return Order.create(TIMESTAMP.plusNanos(this.sequence++), "AAPL", side, OrderType.LIMIT, price, quantity);
+    }
+
+    /**
+     * The book keeps its own copy of a resting order so the fills are views
+     * of the copy rather than the accepted instance
+     */
+    void assertOrder(Order expected, Order actual) {
+        assertAll("order",
+                () -> assertEquals(expected.toString(), actual.toString()),
+                () -> assertEquals(expected.timestamp(), actual.timestamp()),
+                () -> assertEquals(expected.orderQty(), actual.orderQty()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void takeInPriceTimePriority(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        Order sell1 = limit(Side.SELL, 131.02);
+        Order sell2 = limit(Side.SELL, 130.99);
+        Order sell3 = limit(Side.SELL, 131.02);
+        Order sell4 = limit(Side.SELL, 131.05);
+        orderBook.accept(sell1);
+        orderBook.accept(sell2);
+        orderBook.accept(sell3);
+        orderBook.accept(sell4);
+
+        List<OrderBook.Fill> taken = orderBook.take(Side.SELL, 3, 131.02);
+        assertAll("take",
+                () -> assertEquals(3, taken.size()),
+                () -> assertOrder(sell2, taken.get(0).order()),
+                () -> assertOrder(sell1, taken.get(1).order()),
+                () -> assertOrder(sell3, taken.get(2).order()));
+
+        assertTrue(orderBook.take(Side.SELL, 1, 131.04).isEmpty());
+        assertOrder(sell4, orderBook.take(Side.SELL, 5, 0.0).get(0).order());
+        assertTrue(orderBook.take(Side.SELL, 1, 0.0).isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void takeBuysHighestFirst(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        Order buy1 = limit(Side.BUY, 130.48);
+        Order buy2 = limit(Side.BUY, 130.06);
+        Order buy3 = limit(Side.BUY, 130.50);
+        orderBook.accept(buy1);
+        orderBook.accept(buy2);
+        orderBook.accept(buy3);
+
+        List<OrderBook.Fill> taken = orderBook.take(Side.BUY, 2, 130.10);
+        assertAll("take",
+                () -> assertEquals(2, taken.size()),
+                () -> assertOrder(buy3, taken.get(0).order()),
+                () -> assertOrder(buy1, taken.get(1).order()));
+        assertTrue(orderBook.take(Side.BUY, 1, 130.10).isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void priceLevels(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        orderBook.accept(limit(Side.SELL, 131.57));
+        orderBook.accept(limit(Side.SELL, 131.86));
+        orderBook.accept(limit(Side.SELL, 131.57));
+        orderBook.accept(limit(Side.BUY, 130.06));
+        orderBook.accept(limit(Side.BUY, 130.48));
+        // far away from the other levels (ladder has to grow)
+        orderBook.accept(limit(Side.BUY, 13.01));
+
+        List<OrderBook.PriceLevel> priceLevels = orderBook.getPriceLevels();
+        assertAll("priceLevels",
+                () -> assertEquals(5, priceLevels.size()),
+                () -> assertEquals("AAPL,131.86,0,1", priceLevels.get(0).toString()),
+                () -> assertEquals("AAPL,131.57,0,2", priceLevels.get(1).toString()),
+                () -> assertEquals("AAPL,130.48,1,0", priceLevels.get(2).toString()),
+                () -> assertEquals("AAPL,130.06,1,0", priceLevels.get(3).toString()),
+                () -> assertEquals("AAPL,13.01,1,0", priceLevels.get(4).toString()));
+
+        orderBook.recycle();
+        assertTrue(orderBook.getPriceLevels().isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void topOfBook(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        assertEquals(0.0, orderBook.bestPrice(Side.SELL));
+        orderBook.accept(limit(Side.SELL, 131.58));
+        orderBook.accept(limit(Side.SELL, 131.57));
+        orderBook.accept(limit(Side.SELL, 131.57));
+        orderBook.accept(limit(Side.BUY, 130.48));
+        assertAll("before take",
+                () -> assertEquals(131.57, orderBook.bestPrice(Side.SELL)),
+                () -> assertEquals(2, orderBook.bestQuantity(Side.SELL)),
+                () -> assertEquals(130.48, orderBook.bestPrice(Side.BUY)),
+                () -> assertEquals(1, orderBook.bestQuantity(Side.BUY)));
+
+        orderBook.take(Side.SELL, 2, 0.0);
+        assertAll("after take",
+                () -> assertEquals(131.58, orderBook.bestPrice(Side.SELL)),
+                () -> assertEquals(1, orderBook.bestQuantity(Side.SELL)),
+                () -> assertEquals("AAPL,131.58,0,1", orderBook.getPriceLevels().get(0).toString()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void partialFills(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        Order sell1 = limit(Side.SELL, 131.57, 5);
+        Order sell2 = limit(Side.SELL, 131.57, 3);
+        orderBook.accept(sell1);
+        orderBook.accept(sell2);
+
+        List<OrderBook.Fill> fills = orderBook.take(Side.SELL, 2, 131.57);
+        assertAll("first take",
+                () -> assertEquals(1, fills.size()),
+                () -> assertOrder(sell1, fills.get(0).order()),
+                () -> assertEquals(2, fills.get(0).quantity()),
+                () -> assertEquals(131.57, fills.get(0).price()),
+                () -> assertEquals(6, orderBook.bestQuantity(Side.SELL)));
+
+        // sell1 keeps its place in the queue with 3 left
+        List<OrderBook.Fill> fills2 = orderBook.take(Side.SELL, 4, 0.0);
+        assertAll("second take",
+                () -> assertEquals(2, fills2.size()),
+                () -> assertOrder(sell1, fills2.get(0).order()),
+                () -> assertEquals(3, fills2.get(0).quantity()),
+                () -> assertOrder(sell2, fills2.get(1).order()),
+                () -> assertEquals(1, fills2.get(1).quantity()),
+                () -> assertEquals("AAPL,131.57,0,2", orderBook.getPriceLevels().get(0).toString()));
+
+        // accept leaves quantity only
+        orderBook.accept(limit(Side.BUY, 130.00, 10), 4);
+        assertEquals(4, orderBook.bestQuantity(Side.BUY));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void restingOrderView(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        Order sell = limit(Side.SELL, 131.57, 5);
+        orderBook.accept(sell);
+        Order resting = orderBook.take(Side.SELL, 5, 0.0).get(0).order();
+        assertAll("view",
+                () -> assertEquals("AAPL", resting.symbol()),
+                () -> assertEquals(Side.SELL, resting.side()),
+                () -> assertEquals(OrderType.LIMIT, resting.orderType()),
+                () -> assertEquals(13157L, resting.priceTicks()),
+                () -> assertEquals(2, resting.priceScale()),
+                () -> assertEquals(5, resting.orderQty()),
+                () -> assertEquals(sell.timestamp(), resting.timestamp()));
+
+        // a filled order can be put back (the book copies it again)
+        orderBook.accept(resting);
+        assertEquals(5, orderBook.bestQuantity(Side.SELL));
+        assertOrder(sell, orderBook.take(Side.SELL, 5, 0.0).get(0).order());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void productPriceScale(String bookType) throws Exception {
+        Product product = Product.create("EURUSD", 5);
+        Properties properties = new Properties();
+        properties.setProperty("OrderBook", "org.bryan.schorn.tha.matching.engine." + bookType);
+        OrderBook orderBook = OrderBook.create(product, properties);
+        // one tick apart at 5 decimals
+        orderBook.accept(Order.create(TIMESTAMP, "EURUSD", Side.SELL, OrderType.LIMIT, 121735L, 5, 1));
+        orderBook.accept(Order.create(TIMESTAMP, "EURUSD", Side.SELL, OrderType.LIMIT, 121734L, 5, 1));
+        assertEquals(121734L, orderBook.bestPriceTicks(Side.SELL));
+        List<OrderBook.Fill> fills = orderBook.take(Side.SELL, 2, 121734L);
+        assertAll("take",
+                () -> assertEquals(1, fills.size()),
+                () -> assertEquals(121734L, fills.get(0).priceTicks()),
+                () -> assertEquals(5, fills.get(0).priceScale()),
+                () -> assertEquals("EURUSD,1.21735,0,1", orderBook.getPriceLevels().get(0).toString()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void marketData(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        MarketData.Publisher publisher = new MarketData.Publisher();
+        orderBook.setListener(publisher);
+        orderBook.accept(limit(Side.SELL, 131.57, 5));
+        orderBook.accept(limit(Side.SELL, 131.57, 3));
+        orderBook.accept(limit(Side.SELL, 131.58, 2));
+        orderBook.accept(limit(Side.BUY, 130.48, 1));
+        orderBook.take(Side.SELL, 9, 0.0);
+        orderBook.take(Side.BUY, 1, 130.49);
+
+        List<String> levelUpdates = new ArrayList<>();
+        publisher.levelUpdates.drainTo(levelUpdate -> levelUpdates.add(levelUpdate.toString()), 100);
+        List<String> topOfBooks = new ArrayList<>();
+        publisher.topOfBooks.drainTo(topOfBook -> topOfBooks.add(topOfBook.toString()), 100);
+        assertAll("market data",
+                () -> assertEquals(List.of(
+                        "AAPL,SELL,ADD,131.57,5,1",
+                        "AAPL,SELL,CHANGE,131.57,8,2",
+                        "AAPL,SELL,ADD,131.58,2,1",
+                        "AAPL,BUY,ADD,130.48,1,1",
+                        "AAPL,SELL,DELETE,131.57,0,0",
+                        "AAPL,SELL,CHANGE,131.58,1,1"), levelUpdates),
+                // the level behind the best offer and a take outside the bid do not change the top
+                () -> assertEquals(List.of(
+                        "AAPL,0.00,0,131.57,5",
+                        "AAPL,0.00,0,131.57,8",
+                        "AAPL,130.48,1,131.57,8",
+                        "AAPL,130.48,1,131.58,1"), topOfBooks));
+    }
+
+    /**
+     * Takes that cross empty ticks in between levels only publish the levels
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void marketDataAcrossEmptyTicks(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        MarketData.Publisher publisher = new MarketData.Publisher();
+        orderBook.setListener(publisher);
+        orderBook.accept(limit(Side.SELL, 131.57, 2));
+        orderBook.accept(limit(Side.SELL, 131.60, 3));
+        orderBook.accept(limit(Side.BUY, 130.50, 1));
+        orderBook.accept(limit(Side.BUY, 130.45, 4));
+        orderBook.take(Side.SELL, 4, 0.0);
+        orderBook.take(Side.BUY, 2, 130.40);
+
+        List<String> levelUpdates = new ArrayList<>();
+        publisher.levelUpdates.drainTo(levelUpdate -> levelUpdates.add(levelUpdate.toString()), 100);
+        assertEquals(List.of(
+                "AAPL,SELL,ADD,131.57,2,1",
+                "AAPL,SELL,ADD,131.60,3,1",
+                "AAPL,BUY,ADD,130.50,1,1",
+                "AAPL,BUY,ADD,130.45,4,1",
+                "AAPL,SELL,DELETE,131.57,0,0",
+                "AAPL,SELL,CHANGE,131.60,1,1",
+                "AAPL,BUY,DELETE,130.50,0,0",
+                "AAPL,BUY,CHANGE,130.45,3,1"), levelUpdates);
+    }
+
+    /**
+     * A far-away price (beyond the LadderOrderBook's maximum span) rests
+     * alongside the prices near the touch, on either side of them.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void farOutPrice(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        orderBook.accept(limit(Side.SELL, 131.00, 2));
+        orderBook.accept(limit(Side.SELL, 10_000_000.00, 1));
+        orderBook.accept(limit(Side.BUY, 130.00, 3));
+        List<String> priceLevels = new ArrayList<>();
+        orderBook.getPriceLevels().forEach(priceLevel -> priceLevels.add(priceLevel.toString()));
+        assertEquals(List.of("AAPL,10000000.00,0,1", "AAPL,131.00,0,2", "AAPL,130.00,3,0"), priceLevels);
+        long[] priceTicks = new long[3];
+        assertEquals(2, orderBook.depth(Side.SELL, priceTicks, new int[3], new int[3]));
+        assertEquals(13100L, priceTicks[0]);
+        assertEquals(1_000_000_000L, priceTicks[1]);
+
+        assertEquals(2, orderBook.take(Side.SELL, 3, 0.0).size());
+        assertEquals(0.0, orderBook.bestPrice(Side.SELL));
+
+        // the far-out price first, then near ones (better than it)
+        Order far = Order.create(1L, TIMESTAMP.plusNanos(this.sequence++), "AAPL", Side.SELL,
+                OrderType.LIMIT, Price.toTicks(10_000_000.00, 2), 2, 1);
+        orderBook.accept(far);
+        orderBook.accept(limit(Side.SELL, 131.01, 1));
+        orderBook.accept(limit(Side.SELL, 131.00, 1));
+        assertEquals(131.00, orderBook.bestPrice(Side.SELL));
+        assertEquals(1, orderBook.take(Side.SELL, 2, 131.00).size());
+        assertEquals(131.01, orderBook.bestPrice(Side.SELL));
+        assertTrue(orderBook.cancel(1L));
+        assertEquals("AAPL,131.01,0,1", orderBook.getPriceLevels().get(0).toString());
+        assertEquals(1, orderBook.take(Side.SELL, 5, 0.0).size());
+        assertEquals(0.0, orderBook.bestPrice(Side.SELL));
+        assertEquals(130.00, orderBook.bestPrice(Side.BUY));
+    }
+
+
+    /**
+     * Levels beyond the ladder's maximum span go to its overflow (better and
+     * worse than the ladder) and back into the ladder once it is re-centered.
+     */
+    @Test
+    void ladderOverflow() throws Exception {
+        Product product = Product.create("AAPL");
+        product.setHalted(false);
+        Properties properties = new Properties();
+        properties.setProperty("OrderBook", LadderOrderBook.class.getName());
+        properties.setProperty(LadderOrderBook.LADDER_SIZE, "4");
+        properties.setProperty(LadderOrderBook.LADDER_MAX_SIZE, "8");
+        OrderBook orderBook = OrderBook.create(product, properties);
+        orderBook.accept(limit(Side.BUY, 100.00, 1));
+        orderBook.accept(limit(Side.BUY, 100.05, 2));
+        orderBook.accept(limit(Side.BUY, 100.20, 3));
+        orderBook.accept(limit(Side.BUY, 99.50, 4));
+        long[] priceTicks = new long[4];
+        int[] quantities = new int[4];
+        assertEquals(4, orderBook.depth(Side.BUY, priceTicks, quantities, new int[4]));
+        assertArrayEquals(new long[]{10020L, 10005L, 10000L, 9950L}, priceTicks);
+        assertArrayEquals(new int[]{3, 2, 1, 4}, quantities);
+        assertEquals(100.20, orderBook.bestPrice(Side.BUY));
+
+        assertEquals(3, orderBook.take(Side.BUY, 10, 100.00).size());
+        assertEquals(99.50, orderBook.bestPrice(Side.BUY));
+        orderBook.accept(limit(Side.BUY, 99.52, 5));
+        assertEquals(2, orderBook.depth(Side.BUY, priceTicks, quantities, new int[4]));
+        assertEquals(9952L, priceTicks[0]);
+        assertEquals(9950L, priceTicks[1]);
+        assertEquals(2, orderBook.take(Side.BUY, 9, 0.0).size());
+        assertTrue(orderBook.getPriceLevels().isEmpty());
+    }
+
+
+    @ParameterizedTest
+    @ValueSource(strings = {"TreeOrderBook", "LadderOrderBook"})
+    void cancelById(String bookType) throws Exception {
+        OrderBook orderBook = createOrderBook(bookType);
+        long orderId = 0L;
+        for (double price : new double[]{131.57, 131.57, 131.57, 131.58, 131.60}) {
+            orderBook.accept(Order.create(++orderId, TIMESTAMP.plusNanos(this.sequence++), "AAPL", Side.SELL,
+                    OrderType.LIMIT, Price.toTicks(price, 2), 2, 2));
+        }
+        // middle, head and tail of a level, then the best and the worst levels
+        assertTrue(orderBook.cancel(2L));
+        assertTrue(orderBook.cancel(1L));
+        assertEquals(2, orderBook.bestQuantity(Side.SELL));
+        assertTrue(orderBook.cancel(3L));
+        assertEquals(131.58, orderBook.bestPrice(Side.SELL));
+        assertTrue(orderBook.cancel(5L));
+        assertTrue(orderBook.contains(4L));
+        assertFalse(orderBook.contains(5L));
+        assertFalse(orderBook.cancel(5L));
+        assertEquals(1, orderBook.getPriceLevels().size());
+
+        // a filled order can not be cancelled, a partially filled one can
+        orderBook.accept(Order.create(6L, TIMESTAMP.plusNanos(this.sequence++), "AAPL", Side.SELL,
+                OrderType.LIMIT, 13158L, 2, 2));
+        orderBook.take(Side.SELL, 3, 0L);
+        assertFalse(orderBook.cancel(4L));
+        assertTrue(orderBook.cancel(6L));
+        assertEquals(0.0, orderBook.bestPrice(Side.SELL));
+        assertTrue(orderBook.getPriceLevels().isEmpty());
+
+        // the emptied side takes new orders
+        orderBook.accept(Order.create(7L, TIMESTAMP.plusNanos(this.sequence++), "AAPL", Side.SELL,
+                OrderType.LIMIT, 13200L, 2, 1));
+        assertEquals(132.00, orderBook.bestPrice(Side.SELL));
+    }
+
+}
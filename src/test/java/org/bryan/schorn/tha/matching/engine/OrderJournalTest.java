@@ -0,0 +1,226 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.TestProperties;
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.OrderThrottleRule;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.product.ProductFeed;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * OrderJournal Tests
+ */
+public class OrderJournalTest {
+
+    static private final long REGION_SIZE = 512;
+
+    Path tempJournal() throws Exception {
+        Path path = Files.createTempFile("orders", ".journal");
+        path.toFile().deleteOnExit();
+        return path;
+    }
+
+    List<Order> replay(OrderJournal journal) throws Exception {
+        List<Order> orders = new ArrayList<>();
+        journal.replay(orders::add);
+        return orders;
+    }
+
+    @Test
+    void appendAndReplay() throws Exception {
+        Path path = tempJournal();
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            orders.add(Order.create(Instant.ofEpochSecond(1609723805L, i * 1_000_001L),
+                    i % 2 == 0 ? "AAPL" : "EURUSD", i % 3 == 0 ? Side.BUY : Side.SELL,
+                    i % 5 == 0 ? OrderType.MARKET : OrderType.LIMIT, 13100L + i, 2, i + 1));
+        }
+        // small regions so records go over region boundaries
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, false)) {
+            for (Order order : orders) {
+                journal.append(order);
+            }
+        }
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, true)) {
+            List<Order> replayed = replay(journal);
+            assertEquals(orders.size(), replayed.size());
+            for (int i = 0; i < orders.size(); i++) {
+                assertEquals(orders.get(i).toString(), replayed.get(i).toString());
+                assertEquals(orders.get(i).orderQty(), replayed.get(i).orderQty());
+            }
+            // appending goes on after the replayed orders
+            journal.append(orders.get(0));
+        }
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, true)) {
+            assertEquals(orders.size() + 1, replay(journal).size());
+        }
+        // a new journal (not kept)
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, false)) {
+            assertTrue(replay(journal).isEmpty());
+        }
+    }
+
+    @Test
+    void missingFields() throws Exception {
+        Path path = tempJournal();
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, false)) {
+            journal.append(Order.create(null, "AAPL", null, OrderType.MARKET, null, null));
+        }
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, true)) {
+            Order order = replay(journal).get(0);
+            assertNull(order.timestamp());
+            assertNull(order.side());
+            assertNull(order.orderQty());
+            assertEquals(OrderType.MARKET, order.orderType());
+        }
+    }
+
+    /**
+     * A long record cut short by a crash (no length) followed by a shorter
+     * one appended after the replay: what is left of the long one (here it
+     * looks like a record) is not replayed.
+     */
+    @Test
+    void appendAfterCutShortRecord() throws Exception {
+        Path path = tempJournal();
+        Order order = Order.create(Instant.ofEpochSecond(1609723805L), "AAPL", Side.BUY,
+                OrderType.LIMIT, 13100L, 2, 1);
+        // the bytes of a record (length 33, symbol "Z") after the first symbol character
+        ByteBuffer stale = ByteBuffer.allocate(4 + 33 + 4);
+        stale.putInt(33).putLong(7L).putLong(1609723806_000_000_000L).putLong(13000L)
+                .put((byte) 2).put((byte) Side.BUY.ordinal()).put((byte) OrderType.LIMIT.ordinal())
+                .putInt(5).put((byte) 1).put((byte) 'Z').putInt(0);
+        StringBuilder symbol = new StringBuilder("X");
+        for (byte b : stale.array()) {
+            symbol.append((char) (b & 0xff));
+        }
+        long cutShort;
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, false)) {
+            journal.append(order);
+            cutShort = journal.position();
+            journal.append(Order.create(Instant.ofEpochSecond(1609723806L), symbol.toString(), Side.SELL,
+                    OrderType.LIMIT, 13200L, 2, 1));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4), cutShort);
+        }
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, true)) {
+            assertEquals(1, replay(journal).size());
+            journal.append(Order.create(Instant.ofEpochSecond(1609723807L), "T", Side.SELL,
+                    OrderType.LIMIT, 13300L, 2, 1));
+        }
+        try (OrderJournal journal = new OrderJournal(path, 0, 1, REGION_SIZE, true)) {
+            List<Order> replayed = replay(journal);
+            assertEquals(2, replayed.size());
+            assertEquals("T", replayed.get(1).symbol());
+        }
+    }
+
+    @Test
+    void otherPartition() throws Exception {
+        Path path = tempJournal();
+        new OrderJournal(path, 1, 2, REGION_SIZE, false).close();
+        assertThrows(Exception.class, () -> new OrderJournal(path, 0, 2, REGION_SIZE, true));
+        assertThrows(Exception.class, () -> new OrderJournal(path, 0, 1, REGION_SIZE, true));
+        new OrderJournal(path, 1, 2, REGION_SIZE, true).close();
+    }
+
+    @Test
+    void replayRebuildsOrderBooks() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        ProductFeed productFeed = ProductFeed.create(properties);
+        productFeed.connect();
+        Products.setFeed(productFeed);
+        OrderFeed orderFeed = OrderFeed.create(properties);
+        orderFeed.connect();
+        orderFeed.call();
+        List<Order> orders = new ArrayList<>();
+        for (Order order = orderFeed.get(); order != null; order = orderFeed.get()) {
+            orders.add(order);
+        }
+        Properties journalProperties = new Properties();
+        journalProperties.setProperty(OrderJournal.FILE, tempJournal().toString());
+
+        Engine engine = new Engine(Products.findAll());
+        engine.addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
+        engine.addRule(ProductHalted.PRODUCTED_HALTED);
+        engine.addRule(OrderThrottleRule.MAX_THREE_PER_SECOND.newInstance());
+        assertEquals(0, engine.openJournal(journalProperties));
+        Iterator<Order> iterator = orders.iterator();
+        engine.setOrderSupplier(() -> iterator.hasNext() ? iterator.next() : null);
+        engine.stop();
+        engine.call();
+
+        journalProperties.setProperty(OrderJournal.REPLAY, "true");
+        Engine restarted = new Engine(Products.findAll());
+        int replayed = restarted.openJournal(journalProperties);
+        // orders rejected by the rules are not journaled (unmatched market orders are)
+        int rejected = 0;
+        Engine.Outbound<Order.Reject> rejects = engine.getSupplier(Order.Reject.class);
+        for (Order.Reject reject = rejects.get(); reject != null; reject = rejects.get()) {
+            if (!"no-match".equals(reject.reason())) ++rejected;
+        }
+        assertEquals(orders.size() - rejected, replayed);
+        // the book is back but nothing is sent out again
+        assertEquals(priceLevels(engine), priceLevels(restarted));
+        assertNull(restarted.getSupplier(Trade.class).get());
+        assertNull(restarted.getSupplier(Order.Reject.class).get());
+    }
+
+    static List<String> priceLevels(Engine engine) throws Exception {
+        List<String> priceLevels = new ArrayList<>();
+        Engine.Outbound<OrderBook.PriceLevel> outbound = engine.getSupplier(OrderBook.PriceLevel.class);
+        for (OrderBook.PriceLevel priceLevel = outbound.get(); priceLevel != null; priceLevel = outbound.get()) {
+            priceLevels.add(priceLevel.toString());
+        }
+        priceLevels.sort(String::compareTo);
+        return priceLevels;
+    }
+}
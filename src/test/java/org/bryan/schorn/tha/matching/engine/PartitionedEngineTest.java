@@ -0,0 +1,142 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.TestProperties;
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.OrderThrottleRule;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.order.Orders;
+import org.bryan.schorn.tha.matching.product.ProductFeed;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * PartitionedEngine Tests
+ *
+ * The same orders through a single Engine and through a PartitionedEngine
+ * must produce the same trades and rejects for every symbol.
+ */
+public class PartitionedEngineTest {
+
+    @Test
+    void sameResultsAsSingleEngine() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        ProductFeed productFeed = ProductFeed.create(properties);
+        productFeed.connect();
+        Products.setFeed(productFeed);
+        List<Order> orders = loadOrders(properties);
+
+        Engine single = new Engine(Products.findAll(), properties);
+        Map<String, List<String>> singleResults = run(single, orders);
+
+        Engine partitioned = new PartitionedEngine(Products.findAll(), 3, properties);
+        Map<String, List<String>> partitionedResults = run(partitioned, orders);
+
+        assertTrue(singleResults.size() > 1);
+        assertEquals(singleResults, partitionedResults);
+    }
+
+    @Test
+    void globalThrottleRefused() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        ProductFeed productFeed = ProductFeed.create(properties);
+        productFeed.connect();
+        Products.setFeed(productFeed);
+        PartitionedEngine partitioned = new PartitionedEngine(Products.findAll(), 3, properties);
+        assertTrue(partitioned.addRule(new OrderThrottleRule(3, 1000)));
+        assertThrows(IllegalArgumentException.class, () -> partitioned.addRule(
+                new OrderThrottleRule(3, 1000, OrderThrottleRule.Scope.GLOBAL)));
+    }
+
+    List<Order> loadOrders(Properties properties) throws Exception {
+        OrderFeed orderFeed = OrderFeed.create(properties);
+        orderFeed.connect();
+        orderFeed.call();
+        List<Order> orders = new ArrayList<>();
+        for (Order order = orderFeed.get(); order != null; order = orderFeed.get()) {
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * Runs all the orders through the engine and collects the trades,
+     * rejects and price levels by symbol.
+     */
+    Map<String, List<String>> run(Engine engine, List<Order> orders) throws Exception {
+        engine.addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
+        engine.addRule(ProductHalted.PRODUCTED_HALTED);
+        engine.addRule(new OrderThrottleRule(3, 1000));
+        Iterator<Order> iterator = orders.iterator();
+        Orders.setFeed(new OrderFeed() {
+            @Override
+            public Order get() {
+                if (iterator.hasNext()) {
+                    return iterator.next();
+                }
+                engine.stop();
+                return null;
+            }
+            @Override
+            public void connect() {
+            }
+            @Override
+            public Integer call() {
+                return orders.size();
+            }
+        });
+        assertEquals(orders.size(), engine.call());
+
+        Map<String, List<String>> results = new TreeMap<>();
+        Supplier<Trade> trades = engine.getSupplier(Trade.class);
+        for (Trade trade = trades.get(); trade != null; trade = trades.get()) {
+            results.computeIfAbsent(trade.symbol(), k -> new ArrayList<>())
+                    .add(String.format("%d@%.2f", trade.quantity(), trade.price()));
+        }
+        Supplier<Order.Reject> rejects = engine.getSupplier(Order.Reject.class);
+        for (Order.Reject reject = rejects.get(); reject != null; reject = rejects.get()) {
+            results.computeIfAbsent(String.valueOf(reject.order().symbol()), k -> new ArrayList<>())
+                    .add(reject.toString());
+        }
+        Supplier<OrderBook.PriceLevel> priceLevels = engine.getSupplier(OrderBook.PriceLevel.class);
+        for (OrderBook.PriceLevel priceLevel = priceLevels.get(); priceLevel != null; priceLevel = priceLevels.get()) {
+            results.computeIfAbsent(priceLevel.symbol, k -> new ArrayList<>())
+                    .add(priceLevel.toString());
+        }
+        return results;
+    }
+}
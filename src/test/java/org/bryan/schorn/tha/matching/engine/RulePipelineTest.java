@@ -0,0 +1,200 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.TestProperties;
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.OrderThrottleRule;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.product.ProductFeed;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * RulePipeline Tests
+ */
+public class RulePipelineTest {
+
+    static private final Instant TIMESTAMP = Instant.ofEpochSecond(1608917400);
+
+    /**
+     * Rule from a predicate (stateful ones count the orders they pass)
+     */
+    static class TestRule implements Engine.Rule {
+        final String name;
+        final Predicate<Order> predicate;
+        final boolean stateless;
+        int passed = 0;
+        TestRule(String name, Predicate<Order> predicate, boolean stateless) {
+            this.name = name;
+            this.predicate = predicate;
+            this.stateless = stateless;
+        }
+        @Override
+        public boolean test(Order order) {
+            boolean test = this.predicate.test(order);
+            if (test && !this.stateless) {
+                ++this.passed;
+            }
+            return test;
+        }
+        @Override
+        public String getReason(Order order) {
+            return this.name;
+        }
+        @Override
+        public String ruleDescription() {
+            return this.name;
+        }
+        @Override
+        public boolean isStateless() {
+            return this.stateless;
+        }
+    }
+
+    static Order order(int orderQty) {
+        return Order.create(TIMESTAMP, "AAPL", Side.BUY, OrderType.LIMIT, 13157L, 2, orderQty);
+    }
+
+    @Test
+    void rejectingRulesGoFirst() {
+        TestRule rarely = new TestRule("rarely", o -> o.orderQty() % 100 != 0, true);
+        TestRule often = new TestRule("often", o -> o.orderQty() % 2 != 0, true);
+        TestRule counter = new TestRule("counter", o -> true, false);
+        TestRule last = new TestRule("last", o -> o.orderQty() % 3 != 0, true);
+        RulePipeline pipeline = new RulePipeline();
+        pipeline.add(rarely);
+        pipeline.add(often);
+        pipeline.add(counter);
+        pipeline.add(last);
+        for (int i = 1; i <= RulePipeline.REORDER_EVERY; i++) {
+            pipeline.check(order(i));
+        }
+        Engine.Rule[] rules = pipeline.rules();
+        assertSame(often, rules[0]);
+        assertSame(rarely, rules[1]);
+        // stateful rules stay where they were added
+        assertSame(counter, rules[2]);
+        assertSame(last, rules[3]);
+        // and see the same orders (the ones that passed the rules before it)
+        assertEquals(RulePipeline.REORDER_EVERY / 2, counter.passed);
+    }
+
+    @Test
+    void sameRejectsAsAdded() {
+        List<TestRule> added = new ArrayList<>();
+        added.add(new TestRule("by7", o -> o.orderQty() % 7 != 0, true));
+        added.add(new TestRule("by5", o -> o.orderQty() % 5 != 0, true));
+        added.add(new TestRule("by2", o -> o.orderQty() % 2 != 0, true));
+        added.add(new TestRule("counter", o -> true, false));
+        added.add(new TestRule("by11", o -> o.orderQty() % 11 != 0, true));
+        added.add(new TestRule("by3", o -> o.orderQty() % 3 != 0, true));
+        RulePipeline pipeline = new RulePipeline();
+        added.forEach(pipeline::add);
+        Random random = new Random(42);
+        int passed = 0;
+        int reachedCounter = 0;
+        for (int i = 0; i < RulePipeline.REORDER_EVERY * 4; i++) {
+            Order order = order(1 + random.nextInt(1000));
+            String expected = null;
+            for (TestRule rule : added) {
+                if (rule.name.equals("counter") && expected == null) {
+                    ++reachedCounter;
+                }
+                if (!rule.predicate.test(order)) {
+                    expected = rule.name;
+                    break;
+                }
+            }
+            Engine.Rule rule = pipeline.check(order);
+            if (expected == null) {
+                assertNull(rule);
+                ++passed;
+            } else {
+                assertEquals(expected, rule.getReason(order));
+            }
+        }
+        assertEquals(reachedCounter, added.get(3).passed);
+        assertTrue(passed > 0);
+    }
+
+    @Test
+    void builtInRulesSameAsInterface() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        ProductFeed productFeed = ProductFeed.create(properties);
+        productFeed.connect();
+        Products.setFeed(productFeed);
+        List<String> symbols = new ArrayList<>();
+        Products.findAll().stream().map(Product::symbol).forEach(symbols::add);
+        symbols.add("UNKNOWN");
+        TestRule by7 = new TestRule("by7", o -> o.orderQty() % 7 != 0, true);
+        RulePipeline pipeline = new RulePipeline();
+        pipeline.add(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
+        pipeline.add(ProductHalted.PRODUCTED_HALTED);
+        pipeline.add(by7);
+        pipeline.add(new OrderThrottleRule(3, 1000));
+        List<Engine.Rule> added = List.of(CheckRequiredFields.CHECK_REQUIRED_FIELDS,
+                ProductHalted.PRODUCTED_HALTED, by7, new OrderThrottleRule(3, 1000));
+        Random random = new Random(42);
+        int rejected = 0;
+        for (int i = 0; i < RulePipeline.REORDER_EVERY * 2; i++) {
+            Order order = Order.create(TIMESTAMP.plusMillis(i * 50L),
+                    symbols.get(random.nextInt(symbols.size())), Side.BUY, OrderType.LIMIT,
+                    13157L, 2, random.nextInt(100));
+            String expected = null;
+            for (Engine.Rule rule : added) {
+                if (!rule.test(order)) {
+                    expected = rule.getReason(order);
+                    break;
+                }
+            }
+            Engine.Rule rule = pipeline.check(order);
+            if (expected == null) {
+                assertNull(rule);
+            } else {
+                assertEquals(expected, rule.getReason(order));
+                ++rejected;
+            }
+        }
+        assertTrue(rejected > 0);
+    }
+}
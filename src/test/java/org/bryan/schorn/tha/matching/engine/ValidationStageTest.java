@@ -0,0 +1,144 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.TestProperties;
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.OrderThrottleRule;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.bryan.schorn.tha.matching.product.ProductFeed;
+import org.bryan.schorn.tha.matching.product.Products;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * ValidationStage Tests
+ *
+ * The same orders through an Engine running all the rules and through a
+ * ValidationStage ahead of an Engine must produce the same trades (in order
+ * for each symbol) and the same rejects.
+ */
+public class ValidationStageTest {
+
+    @Test
+    void sameResultsAsEngineRules() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        ProductFeed productFeed = ProductFeed.create(properties);
+        productFeed.connect();
+        Products.setFeed(productFeed);
+        List<Order> orders = loadOrders(properties);
+
+        Engine single = new Engine(Products.findAll(), properties);
+        single.addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
+        single.addRule(ProductHalted.PRODUCTED_HALTED);
+        single.addRule(new OrderThrottleRule(3, 1000));
+        single.setOrderSupplier(supplier(orders, single::stop));
+        assertEquals(orders.size(), single.call());
+        Map<String, List<String>> singleResults = results(single.getSupplier(Trade.class),
+                single.getSupplier(Order.Reject.class));
+
+        Engine engine = new Engine(Products.findAll(), properties);
+        ValidationStage stage = new ValidationStage(3, properties);
+        assertTrue(stage.addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS));
+        assertTrue(stage.addRule(ProductHalted.PRODUCTED_HALTED));
+        // keeps state so it stays with the Engine
+        OrderThrottleRule throttle = new OrderThrottleRule(3, 1000);
+        assertFalse(stage.addRule(throttle));
+        engine.addRule(throttle);
+        stage.setOrderSupplier(supplier(orders, stage::stop));
+        stage.setListener(engine::signal);
+        engine.setOrderSupplier(stage);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> futureStage = executorService.submit(stage);
+            Future<Integer> futureEngine = executorService.submit(engine);
+            assertEquals(orders.size(), futureStage.get());
+            engine.stop();
+            futureEngine.get();
+        } finally {
+            executorService.shutdown();
+        }
+        Map<String, List<String>> stageResults = results(engine.getSupplier(Trade.class),
+                Engine.Outbound.roundRobin(List.of(stage.getRejects(), engine.getSupplier(Order.Reject.class))));
+
+        assertTrue(singleResults.size() > 1);
+        assertEquals(singleResults, stageResults);
+    }
+
+    List<Order> loadOrders(Properties properties) throws Exception {
+        OrderFeed orderFeed = OrderFeed.create(properties);
+        orderFeed.connect();
+        orderFeed.call();
+        List<Order> orders = new ArrayList<>();
+        for (Order order = orderFeed.get(); order != null; order = orderFeed.get()) {
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    Supplier<Order> supplier(List<Order> orders, Runnable stop) {
+        Iterator<Order> iterator = orders.iterator();
+        return () -> {
+            if (iterator.hasNext()) {
+                return iterator.next();
+            }
+            stop.run();
+            return null;
+        };
+    }
+
+    /**
+     * Trades by symbol (in order) and rejects by symbol (sorted, the
+     * stage's and the Engine's are not kept in order with one another)
+     */
+    Map<String, List<String>> results(Supplier<Trade> trades, Supplier<Order.Reject> rejects) {
+        Map<String, List<String>> results = new TreeMap<>();
+        for (Trade trade = trades.get(); trade != null; trade = trades.get()) {
+            results.computeIfAbsent(trade.symbol(), k -> new ArrayList<>())
+                    .add(String.format("%d@%.2f", trade.quantity(), trade.price()));
+        }
+        Map<String, List<String>> rejected = new TreeMap<>();
+        for (Order.Reject reject = rejects.get(); reject != null; reject = rejects.get()) {
+            rejected.computeIfAbsent("rejected " + reject.order().symbol(), k -> new ArrayList<>())
+                    .add(reject.toString());
+        }
+        rejected.values().forEach(Collections::sort);
+        results.putAll(rejected);
+        return results;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.engine.rule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * OrderThrottleRule Tests
+ */
+public class OrderThrottleRuleTest {
+
+    static private final Instant TIMESTAMP = Instant.ofEpochSecond(1608917400);
+
+    static Order order(String symbol, Instant timestamp) {
+        return Order.create(timestamp, symbol, Side.BUY, OrderType.LIMIT, 13157L, 2, 1);
+    }
+
+    /**
+     * The rule as it was with a TreeSet<Instant> of expiries per symbol
+     */
+    static class TreeSetThrottle {
+        final Map<String, TreeSet<Instant>> monitor = new HashMap<>();
+        boolean test(Order order, int frequency, long durationMS) {
+            TreeSet<Instant> orderTimes = this.monitor.computeIfAbsent(order.symbol(), s -> new TreeSet<>());
+            if (orderTimes.size() == frequency) {
+                if (Duration.between(orderTimes.first(), order.timestamp()).toMillis() > durationMS) {
+                    orderTimes.remove(orderTimes.first());
+                } else {
+                    return false;
+                }
+            }
+            orderTimes.add(order.timestamp().plusMillis(durationMS));
+            return true;
+        }
+    }
+
+    @Test
+    void sameAsTreeSetThrottle() {
+        OrderThrottleRule rule = new OrderThrottleRule(3, 1000);
+        TreeSetThrottle expected = new TreeSetThrottle();
+        Random random = new Random(42);
+        String[] symbols = {"AAPL", "TSLA"};
+        Instant timestamp = TIMESTAMP;
+        int passed = 0;
+        for (int i = 0; i < 100_000; i++) {
+            // mostly forward, sometimes back (and sometimes a repeat)
+            long stepNanos = random.nextInt(10) == 0 ? -random.nextInt(2_000_000_000) : random.nextInt(500_000_000);
+            timestamp = timestamp.plusNanos(random.nextInt(20) == 0 ? 0 : stepNanos);
+            Order order = order(symbols[random.nextInt(symbols.length)], timestamp);
+            boolean test = expected.test(order, 3, 1000);
+            assertEquals(test, rule.test(order), "order " + i);
+            passed += test ? 1 : 0;
+        }
+        assertTrue(passed > 0 && passed < 100_000);
+    }
+
+    @Test
+    void globalScope() {
+        OrderThrottleRule rule = new OrderThrottleRule(2, 1000, OrderThrottleRule.Scope.GLOBAL);
+        assertTrue(rule.test(order("AAPL", TIMESTAMP)));
+        assertTrue(rule.test(order("TSLA", TIMESTAMP.plusMillis(1))));
+        assertFalse(rule.test(order("FB", TIMESTAMP.plusMillis(2))));
+        assertTrue(rule.test(order("FB", TIMESTAMP.plusMillis(2001))));
+
+        // each Engine's instance counts on its own
+        OrderThrottleRule perSymbol = (OrderThrottleRule) new OrderThrottleRule(2, 1000).newInstance();
+        assertTrue(perSymbol.test(order("AAPL", TIMESTAMP)));
+        assertTrue(perSymbol.test(order("TSLA", TIMESTAMP)));
+        assertTrue(perSymbol.test(order("FB", TIMESTAMP)));
+    }
+}
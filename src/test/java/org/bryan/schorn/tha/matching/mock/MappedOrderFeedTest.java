@@ -0,0 +1,172 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.mock;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.TestProperties;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MappedOrderFeed Tests (same Orders as MockOrderFeed)
+ */
+public class MappedOrderFeedTest {
+
+    static List<Order> read(OrderFeed orderFeed) throws Exception {
+        orderFeed.connect();
+        orderFeed.call();
+        List<Order> orders = new ArrayList<>();
+        for (Order order = orderFeed.get(); order != null; order = orderFeed.get()) {
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    static void assertSameOrders(List<Order> expected, List<Order> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+            assertEquals(expected.get(i).timestamp(), actual.get(i).timestamp());
+            assertEquals(expected.get(i).price(), actual.get(i).price());
+            assertEquals(expected.get(i).orderQty(), actual.get(i).orderQty());
+            assertEquals(expected.get(i).orderId(), actual.get(i).orderId());
+        }
+    }
+
+    static MappedOrderFeed mappedOrderFeed(Properties properties) throws Exception {
+        MappedOrderFeed orderFeed = new MappedOrderFeed();
+        orderFeed.setProperties(properties);
+        return orderFeed;
+    }
+
+    @Test
+    void sameOrdersAsMockOrderFeed() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        properties.setProperty("OrderRingSize", "131072");
+        List<Order> expected = read(OrderFeed.create(properties));
+        List<Order> actual = read(mappedOrderFeed(properties));
+        assertSameOrders(expected, actual);
+        // symbols are interned
+        Map<String, String> symbols = new HashMap<>();
+        for (Order order : actual) {
+            assertSame(symbols.computeIfAbsent(order.symbol(), s -> s), order.symbol());
+        }
+        assertEquals(5, symbols.size());
+    }
+
+    @Test
+    void linesAcrossMappingWindows() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        properties.setProperty("OrderRingSize", "131072");
+        List<Order> expected = read(OrderFeed.create(properties));
+        MappedOrderFeed orderFeed = mappedOrderFeed(properties);
+        orderFeed.setWindowSize(4093);
+        assertSameOrders(expected, read(orderFeed));
+    }
+
+    @Test
+    void quantityColumn() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        properties.setProperty("OrderFileHeader", "symbol,side,type,price,timestamp,quantity");
+        properties.setProperty("OrderFile", "inputs-test/orders-e.csv");
+        List<Order> expected = read(OrderFeed.create(properties));
+        assertSameOrders(expected, read(mappedOrderFeed(properties)));
+    }
+
+    @Test
+    void orderIdColumn() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        properties.setProperty("OrderFileHeader", "symbol,side,type,price,timestamp,quantity,id");
+        properties.setProperty("OrderFile", "inputs-test/orders-f.csv");
+        List<Order> expected = read(OrderFeed.create(properties));
+        List<Order> actual = read(mappedOrderFeed(properties));
+        assertSameOrders(expected, actual);
+        assertEquals(OrderType.CANCEL, actual.get(2).orderType());
+        assertEquals(1L, actual.get(2).orderId());
+        assertEquals(OrderType.REPLACE, actual.get(3).orderType());
+    }
+
+    /**
+     * A feed waiting on a full ring gives up once aborted (nobody consumes)
+     */
+    @Test
+    void abortedWhenNotConsumed() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        properties.setProperty("OrderRingSize", "4");
+        for (OrderFeed orderFeed : List.of(OrderFeed.create(properties), mappedOrderFeed(properties))) {
+            orderFeed.connect();
+            ExecutorService executorService = Executors.newSingleThreadExecutor();
+            try {
+                Future<Integer> future = executorService.submit(orderFeed);
+                Thread.sleep(50);
+                assertFalse(future.isDone());
+                orderFeed.abort();
+                ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+                assertTrue(ex.getCause().getMessage().contains("aborted after 4 orders"));
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Prices beyond the product's scale are rounded toward the passive side
+     */
+    @Test
+    void offTickPrices() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        properties.setProperty("OrderFileHeader", "symbol,side,type,price,timestamp,quantity");
+        properties.setProperty("OrderFile", "inputs-test/orders-g.csv");
+        List<Order> expected = read(OrderFeed.create(properties));
+        List<Order> actual = read(mappedOrderFeed(properties));
+        assertSameOrders(expected, actual);
+        long[] priceTicks = new long[actual.size()];
+        for (int i = 0; i < priceTicks.length; i++) {
+            priceTicks[i] = actual.get(i).priceTicks();
+        }
+        assertArrayEquals(new long[]{13000L, 13001L, 13000L, 13001L, 13001L}, priceTicks);
+    }
+
+}
@@ -27,6 +27,7 @@ package org.bryan.schorn.tha.matching.model;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 
@@ -160,4 +161,62 @@ public class ModelTest {
         );
 
     }
+
+    @Test
+    void fixedPointPrice() {
+        assertAll("Price",
+                () -> assertEquals(13157L, Price.parse("131.57", 2)),
+                () -> assertEquals(13160L, Price.parse("131.6", 2)),
+                () -> assertEquals(13100L, Price.parse("131", 2)),
+                () -> assertEquals(5L, Price.parse(".05", 2)),
+                () -> assertEquals(0L, Price.parse("", 2)),
+                () -> assertEquals(13158L, Price.parse("131.575", 2)),
+                () -> assertEquals(13157L, Price.parse("131.5749", 2)),
+                () -> assertEquals(1315700L, Price.parse("131.57", 4)),
+                () -> assertEquals(-13157L, Price.parse("-131.57", 2)),
+                () -> assertEquals(Double.valueOf("131.57"), Price.toDouble(13157L, 2)),
+                () -> assertEquals("131.57", Price.toString(13157L, 2)),
+                () -> assertEquals("0.05", Price.toString(5L, 2)),
+                () -> assertEquals("131.5700", Price.toString(1315700L, 4)),
+                () -> assertEquals("131", Price.toString(131L, 0)),
+                () -> assertEquals(13158L, Price.rescale(1315750L, 4, 2)),
+                () -> assertEquals(1315700L, Price.rescale(13157L, 2, 4)),
+                () -> assertEquals(2, Price.scaleOf(130.98)),
+                () -> assertEquals(4, Price.scaleOf(0.0001)));
+        assertThrows(NumberFormatException.class, () -> Price.parse("13x.57", 2));
+    }
+
+    @Test
+    void offTickBuyRoundsDown() {
+        assertAll("BUY",
+                () -> assertEquals(13000L, Price.parse("130.005", 2, Side.BUY)),
+                () -> assertEquals(13000L, Price.parse("130.0099", 2, Side.BUY)),
+                () -> assertEquals(13001L, Price.parse("130.0100", 2, Side.BUY)),
+                () -> assertEquals(-13001L, Price.parse("-130.005", 2, Side.BUY)),
+                () -> assertEquals(13157L, Price.rescale(1315799L, 4, 2, Side.BUY)),
+                () -> assertEquals(1315700L, Price.rescale(13157L, 2, 4, Side.BUY)));
+    }
+
+    @Test
+    void offTickSellRoundsUp() {
+        assertAll("SELL",
+                () -> assertEquals(13001L, Price.parse("130.005", 2, Side.SELL)),
+                () -> assertEquals(13001L, Price.parse("130.0001", 2, Side.SELL)),
+                () -> assertEquals(13000L, Price.parse("130.0000", 2, Side.SELL)),
+                () -> assertEquals(-13000L, Price.parse("-130.005", 2, Side.SELL)),
+                () -> assertEquals(13158L, Price.rescale(1315701L, 4, 2, Side.SELL)),
+                () -> assertEquals(13157L, Price.rescale(1315700L, 4, 2, Side.SELL)));
+    }
+
+    @Test
+    void orderAtProductScale() {
+        Product product = Product.create("EURUSD", 5);
+        Order order = Order.create(Instant.ofEpochSecond(1608917400, 7614357), product.symbol(),
+                Side.BUY, OrderType.LIMIT, Price.parse("1.21734", product.priceScale()), product.priceScale(), 1);
+        assertAll("Order",
+                () -> assertEquals(5, product.priceScale()),
+                () -> assertEquals(121734L, order.priceTicks()),
+                () -> assertEquals(1.21734, order.price()),
+                () -> assertEquals("EURUSD,BUY,LIMIT,1.21734,1608917400.7614357", order.toString()));
+    }
 }
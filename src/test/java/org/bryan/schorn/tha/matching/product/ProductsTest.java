@@ -0,0 +1,290 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.product;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bryan.schorn.tha.matching.TestProperties;
+import org.bryan.schorn.tha.matching.engine.Engine;
+import org.bryan.schorn.tha.matching.engine.OrderBook;
+import org.bryan.schorn.tha.matching.engine.OrderBookSnapshot;
+import org.bryan.schorn.tha.matching.engine.OrderJournal;
+import org.bryan.schorn.tha.matching.engine.rule.CheckRequiredFields;
+import org.bryan.schorn.tha.matching.engine.rule.ProductHalted;
+import org.bryan.schorn.tha.matching.model.Order;
+import org.bryan.schorn.tha.matching.model.OrderType;
+import org.bryan.schorn.tha.matching.model.Product;
+import org.bryan.schorn.tha.matching.model.Side;
+import org.bryan.schorn.tha.matching.model.Trade;
+import org.bryan.schorn.tha.matching.order.OrderFeed;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * Product Registry Tests
+ */
+public class ProductsTest {
+
+    @Test
+    void denseStableIds() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        loadProducts(properties);
+        Map<String, Integer> ids = new HashMap<>();
+        for (Product product : Products.findAll()) {
+            assertTrue(product.id() >= 0 && product.id() < Products.idCount());
+            assertSame(product, Products.find(product.id()));
+            ids.put(product.symbol(), product.id());
+        }
+        assertEquals(ids.size(), Products.idCount());
+        // loading the same symbols again keeps their ids
+        loadProducts(properties);
+        for (Product product : Products.findAll()) {
+            assertEquals(ids.get(product.symbol()), product.id());
+        }
+        assertNull(Products.find(-1));
+        assertNull(Products.find(Products.idCount()));
+    }
+
+    @Test
+    void ordersResolvedAtParse() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        loadProducts(properties);
+        OrderFeed orderFeed = OrderFeed.create(properties);
+        orderFeed.connect();
+        orderFeed.call();
+        int count = 0;
+        Order order = orderFeed.get();
+        while (order != null) {
+            Product product = Products.find(order.symbol());
+            if (product != null) {
+                assertEquals(product.id(), order.productId());
+                assertSame(product, Products.find(order));
+                ++count;
+            } else {
+                assertEquals(-1, order.productId());
+            }
+            order = orderFeed.get();
+        }
+        assertTrue(count > 0);
+        // orders created without an id are found by their symbol
+        Order unresolved = Order.create(Instant.ofEpochSecond(1608917400), "AAPL",
+                Side.BUY, OrderType.LIMIT, 10000L, 2, 1);
+        assertEquals(-1, unresolved.productId());
+        assertSame(Products.find("AAPL"), Products.find(unresolved));
+    }
+
+    @Test
+    void haltResumeAdd() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        loadProducts(properties);
+        try {
+            boolean halted = Products.isHalted("AAPL");
+            assertTrue(Products.apply(ProductControlFeed.Event.create(ProductControlFeed.Action.HALT, "AAPL")));
+            assertTrue(Products.isHalted("AAPL"));
+            assertTrue(Products.apply(ProductControlFeed.Event.create(ProductControlFeed.Action.RESUME, "AAPL")));
+            assertFalse(Products.isHalted("AAPL"));
+            Products.find("AAPL").setHalted(halted);
+            // unknown symbols
+            assertFalse(Products.halt("NFLX"));
+            assertFalse(Products.resume("NFLX"));
+
+            int idCount = Products.idCount();
+            assertTrue(Products.apply(ProductControlFeed.Event.create(ProductControlFeed.Action.ADD, "NFLX", true, 3)));
+            Product added = Products.find("NFLX");
+            assertEquals(idCount, added.id());
+            assertSame(added, Products.find(idCount));
+            assertEquals(3, added.priceScale());
+            assertTrue(added.isHalted());
+            assertFalse(Products.add(Product.create("NFLX")));
+            assertEquals(idCount + 1, Products.idCount());
+        } finally {
+            Products.clear();
+            loadProducts(properties);
+        }
+    }
+
+    /**
+     * An Engine opens the OrderBook of a product added while it is running
+     * and sees the product halted and resumed between orders.
+     */
+    @Test
+    void engineSeesControlEvents() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        loadProducts(properties);
+        try {
+            Engine engine = new Engine(Products.findAll(), properties);
+            engine.addRule(CheckRequiredFields.CHECK_REQUIRED_FIELDS);
+            engine.addRule(ProductHalted.PRODUCTED_HALTED);
+            Instant timestamp = Instant.ofEpochSecond(1608917600);
+            // control events (Runnable) run by the order supplier between orders
+            Iterator<Object> steps = List.<Object>of(
+                    // before it is added (rejected)
+                    Order.create(timestamp, "NFLX", Side.SELL, OrderType.LIMIT, 50000L, 2, 10),
+                    (Runnable) () -> Products.apply(ProductControlFeed.Event.create(ProductControlFeed.Action.ADD, "NFLX")),
+                    Order.create(timestamp.plusSeconds(1), "NFLX", Side.SELL, OrderType.LIMIT, 50000L, 2, 10),
+                    (Runnable) () -> Products.halt("NFLX"),
+                    // halted (rejected)
+                    Order.create(timestamp.plusSeconds(2), "NFLX", Side.BUY, OrderType.MARKET, 0L, 2, 4),
+                    (Runnable) () -> Products.resume("NFLX"),
+                    Order.create(timestamp.plusSeconds(3), "NFLX", Side.BUY, OrderType.MARKET, 0L, 2, 4)
+            ).iterator();
+            engine.setOrderSupplier(() -> {
+                while (steps.hasNext()) {
+                    Object step = steps.next();
+                    if (step instanceof Order) {
+                        return (Order) step;
+                    }
+                    ((Runnable) step).run();
+                }
+                engine.stop();
+                return null;
+            });
+            assertEquals(4, engine.call());
+
+            Supplier<Trade> trades = engine.getSupplier(Trade.class);
+            Trade trade = trades.get();
+            assertEquals("NFLX", trade.symbol());
+            assertEquals(4, trade.quantity());
+            assertNull(trades.get());
+            Supplier<Order.Reject> rejects = engine.getSupplier(Order.Reject.class);
+            assertEquals("missing-required-field", rejects.get().reason());
+            assertEquals("product-halted", rejects.get().reason());
+            assertNull(rejects.get());
+            Supplier<OrderBook.PriceLevel> priceLevels = engine.getSupplier(OrderBook.PriceLevel.class);
+            assertEquals("NFLX,500.00,0,6", priceLevels.get().toString());
+        } finally {
+            Products.clear();
+            loadProducts(properties);
+        }
+    }
+
+    /**
+     * A product added while running is not in the product feed on restart,
+     * its book is restored from the snapshot and from the journal.
+     */
+    @Test
+    void addedProductRestored() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        loadProducts(properties);
+        try {
+            Path journalPath = Files.createTempFile("orders", ".journal");
+            journalPath.toFile().deleteOnExit();
+            Path snapshotPath = Files.createTempFile("order_book", ".snapshot");
+            snapshotPath.toFile().deleteOnExit();
+            Properties journalProperties = new Properties();
+            journalProperties.setProperty(OrderJournal.FILE, journalPath.toString());
+            journalProperties.setProperty(OrderBookSnapshot.FILE, snapshotPath.toString());
+
+            Products.apply(ProductControlFeed.Event.create(ProductControlFeed.Action.ADD, "NFLX", false, 3));
+            Instant timestamp = Instant.ofEpochSecond(1608917700);
+            Iterator<Order> orders = List.of(
+                    Order.create(timestamp, "NFLX", Side.SELL, OrderType.LIMIT, 500000L, 3, 10),
+                    Order.create(timestamp.plusSeconds(1), "NFLX", Side.SELL, OrderType.LIMIT, 501000L, 3, 5),
+                    Order.create(timestamp.plusSeconds(2), "NFLX", Side.BUY, OrderType.MARKET, 0L, 3, 4)
+            ).iterator();
+            Engine engine = new Engine(Products.findAll(), properties);
+            assertEquals(0, engine.openJournal(journalProperties));
+            engine.setOrderSupplier(() -> orders.hasNext() ? orders.next() : null);
+            engine.stop();
+            assertEquals(3, engine.call());
+            List<String> priceLevels = priceLevels(engine);
+            assertEquals(List.of("NFLX,500.000,0,6", "NFLX,501.000,0,5"), priceLevels);
+
+            // restarted with the products of the feed (no NFLX)
+            journalProperties.setProperty(OrderJournal.REPLAY, "true");
+            Products.clear();
+            loadProducts(properties);
+            Engine fromSnapshot = new Engine(Products.findAll(), properties);
+            assertEquals(0, fromSnapshot.openJournal(journalProperties));
+            assertEquals(priceLevels, priceLevels(fromSnapshot));
+            assertFalse(Products.isHalted("NFLX"));
+            assertEquals(3, Products.find("NFLX").priceScale());
+
+            journalProperties.remove(OrderBookSnapshot.FILE);
+            Products.clear();
+            loadProducts(properties);
+            Engine fromJournal = new Engine(Products.findAll(), properties);
+            assertEquals(3, fromJournal.openJournal(journalProperties));
+            assertEquals(priceLevels, priceLevels(fromJournal));
+            assertNull(fromJournal.getSupplier(Trade.class).get());
+            assertNull(fromJournal.getSupplier(Order.Reject.class).get());
+        } finally {
+            Products.clear();
+            loadProducts(properties);
+        }
+    }
+
+    /**
+     * Orders of an unknown product are rejected (no rule checks the symbol)
+     */
+    @Test
+    void unknownProductRejected() throws Exception {
+        Properties properties = TestProperties.getProperties();
+        loadProducts(properties);
+        Engine engine = new Engine(Products.findAll(), properties);
+        Iterator<Order> orders = List.of(
+                Order.create(Instant.ofEpochSecond(1608917800), "NFLX", Side.BUY, OrderType.LIMIT, 50000L, 2, 10),
+                Order.create(Instant.ofEpochSecond(1608917801), null, Side.BUY, OrderType.MARKET, 0L, 2, 10)
+        ).iterator();
+        engine.setOrderSupplier(() -> orders.hasNext() ? orders.next() : null);
+        engine.stop();
+        assertEquals(2, engine.call());
+        Supplier<Order.Reject> rejects = engine.getSupplier(Order.Reject.class);
+        assertEquals("unknown-product", rejects.get().reason());
+        assertEquals("unknown-product", rejects.get().reason());
+        assertNull(rejects.get());
+    }
+
+    static List<String> priceLevels(Engine engine) throws Exception {
+        List<String> priceLevels = new ArrayList<>();
+        Supplier<OrderBook.PriceLevel> outbound = engine.getSupplier(OrderBook.PriceLevel.class);
+        for (OrderBook.PriceLevel priceLevel = outbound.get(); priceLevel != null; priceLevel = outbound.get()) {
+            priceLevels.add(priceLevel.toString());
+        }
+        priceLevels.sort(String::compareTo);
+        return priceLevels;
+    }
+
+    void loadProducts(Properties properties) throws Exception {
+        ProductFeed productFeed = ProductFeed.create(properties);
+        productFeed.connect();
+        Products.setFeed(productFeed);
+    }
+}
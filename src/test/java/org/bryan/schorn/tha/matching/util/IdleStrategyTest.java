@@ -0,0 +1,75 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.util;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IdleStrategy Tests
+ */
+public class IdleStrategyTest {
+
+    @Test
+    void createByName() throws Exception {
+        assertTrue(IdleStrategy.create(null) instanceof IdleStrategy.BusySpin);
+        assertTrue(IdleStrategy.create("busy-spin") instanceof IdleStrategy.BusySpin);
+        assertTrue(IdleStrategy.create("yield") instanceof IdleStrategy.Yield);
+        assertTrue(IdleStrategy.create("backoff") instanceof IdleStrategy.Backoff);
+        assertTrue(IdleStrategy.create("Blocking") instanceof IdleStrategy.Blocking);
+        assertThrows(Exception.class, () -> IdleStrategy.create("sleepy"));
+    }
+
+    @Test
+    void blockingWakesOnSignal() throws Exception {
+        // a long maxWait so that only the signal can wake the consumer in time
+        IdleStrategy idleStrategy = new IdleStrategy.Blocking(TimeUnit.SECONDS.toNanos(30));
+        CountDownLatch woken = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            idleStrategy.idle(0);
+            woken.countDown();
+        });
+        consumer.start();
+        Thread.sleep(50);
+        idleStrategy.signal();
+        assertTrue(woken.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void blockingKeepsEarlySignal() throws Exception {
+        IdleStrategy idleStrategy = new IdleStrategy.Blocking(TimeUnit.SECONDS.toNanos(30));
+        // signal before the consumer goes idle is not lost
+        idleStrategy.signal();
+        long start = System.nanoTime();
+        idleStrategy.idle(0);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * LongIndex Tests
+ */
+public class LongIndexTest {
+
+    @Test
+    void putGetRemove() {
+        LongIndex<String> index = new LongIndex<>(4);
+        assertNull(index.put(7L, "a"));
+        assertEquals("a", index.put(7L, "b"));
+        assertEquals("b", index.get(7L));
+        assertNull(index.get(8L));
+        assertEquals("b", index.remove(7L));
+        assertNull(index.remove(7L));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void sameAsHashMap() {
+        LongIndex<Long> index = new LongIndex<>(8);
+        Map<Long, Long> map = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // a small key range so keys collide, are removed and come back
+            long key = 1 + random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(map.remove(key), index.remove(key));
+            } else {
+                assertEquals(map.put(key, (long) i), index.put(key, (long) i));
+            }
+        }
+        assertEquals(map.size(), index.size());
+        for (long key = 1; key <= 2_000; key++) {
+            assertEquals(map.get(key), index.get(key));
+        }
+        index.clear();
+        assertNull(index.get(map.keySet().iterator().next()));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  The MIT License
+ *
+ * Copyright 2021 bschorn.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ */
+
+package org.bryan.schorn.tha.matching.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RingBuffer Tests
+ */
+public class RingBufferTest {
+
+    @Test
+    void capacityRoundsUp() {
+        assertEquals(1, new RingBuffer<Integer>(1).capacity());
+        assertEquals(8, new RingBuffer<Integer>(5).capacity());
+        assertEquals(8, new RingBuffer<Integer>(8).capacity());
+    }
+
+    @Test
+    void boundedAndFifoAcrossWrap() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 5; round++) {
+            while (ring.offer(next)) {
+                ++next;
+            }
+            assertEquals(4, ring.size());
+            assertFalse(ring.offer(-1));
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected++, ring.poll());
+            }
+        }
+        assertEquals(1, ring.size());
+        ring.clear();
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void producerWaitsForConsumer() throws Exception {
+        final int count = 10_000;
+        RingBuffer<Integer> ring = new RingBuffer<>(16);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> producer = executorService.submit(() -> {
+                IdleStrategy backpressure = new IdleStrategy.Backoff();
+                for (int i = 0; i < count; i++) {
+                    ring.put(i, backpressure, () -> false);
+                }
+            });
+            int expected = 0;
+            while (expected < count) {
+                Integer value = ring.poll();
+                if (value != null) {
+                    assertEquals(expected++, value);
+                    assertTrue(ring.size() <= ring.capacity());
+                }
+            }
+            producer.get(10, TimeUnit.SECONDS);
+            assertNull(ring.poll());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void producerGivesUpWhenAborted() throws Exception {
+        RingBuffer<Integer> ring = new RingBuffer<>(2);
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            // nobody consumes
+            Future<Integer> producer = executorService.submit(() -> {
+                IdleStrategy backpressure = new IdleStrategy.Backoff();
+                int count = 0;
+                while (ring.put(count, backpressure, aborted::get)) {
+                    ++count;
+                }
+                return count;
+            });
+            while (ring.size() < ring.capacity()) {
+                Thread.yield();
+            }
+            assertFalse(producer.isDone());
+            aborted.set(true);
+            assertEquals(2, producer.get(10, TimeUnit.SECONDS));
+            assertEquals(0, ring.poll());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}